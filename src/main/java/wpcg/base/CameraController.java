@@ -95,4 +95,8 @@ public class CameraController extends CameraControl {
     dir = dir.mult(delta / 500.0f);
     cam.setLocation(eye.add(dir));
   }
+
+  public Camera getCamera() {
+    return cam;
+  }
 }
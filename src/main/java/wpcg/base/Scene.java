@@ -10,24 +10,73 @@ import com.jme3.light.DirectionalLight;
 import com.jme3.light.PointLight;
 import com.jme3.math.ColorRGBA;
 import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
 import com.jme3.renderer.ViewPort;
 import com.jme3.renderer.queue.RenderQueue;
 import com.jme3.scene.Node;
+import wpcg.base.mesh.AsyncMeshLoader;
+import wpcg.base.mesh.LodNode;
+import wpcg.base.mesh.ModelReloader;
+import wpcg.base.mesh.TriangleMesh;
 
 import javax.swing.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * This scene class is used to represent the scene conent.
  */
 public abstract class Scene {
 
+  /**
+   * Adaption of the LOD bias per frame if the triangle budget is exceeded.
+   */
+  private static final float LOD_BIAS_STEP = 0.9f;
+  private static final float MIN_LOD_BIAS = 0.05f;
+
+  /**
+   * The LOD bias is only raised again below this part of the budget (avoids
+   * oscillation).
+   */
+  private static final float LOD_BUDGET_MARGIN = 0.8f;
+
   /**
    * This list of tasks is scheduled to be invoked by the JME thread.
    */
   private List<Runnable> runLaterTasks;
 
+  /**
+   * Background loader for meshes, created on first use.
+   */
+  private AsyncMeshLoader meshLoader;
+
+  /**
+   * Hot reloader for edited models, created on first use.
+   */
+  private ModelReloader modelReloader;
+
+  /**
+   * Nodes whose level of detail is selected in each frame.
+   */
+  private final List<LodNode> lodNodes = new ArrayList<>();
+
+  /**
+   * Maximum number of visible LOD triangles per frame, 0 for no limit.
+   */
+  private int lodTriangleBudget = 0;
+
+  /**
+   * Screen size factor of the LOD selection, lowered if the budget is
+   * exceeded.
+   */
+  private float lodBias = 1;
+
+  /**
+   * Number of visible LOD triangles in the last frame.
+   */
+  private int numberOfLodTriangles = 0;
+
   public Scene() {
     runLaterTasks = new ArrayList<>();
   }
@@ -94,12 +143,113 @@ public abstract class Scene {
   /**
    * Enqueue a task to the list which will be processed when the jMonkey Thread is active.
    */
-  protected void runLater(Runnable task) {
+  protected synchronized void runLater(Runnable task) {
     runLaterTasks.add(task);
   }
 
-  public synchronized void invokeRunlaterTasks() {
-    runLaterTasks.forEach(task -> task.run());
-    runLaterTasks.clear();
+  /**
+   * Load an OBJ mesh in the background (see AsyncMeshLoader). The future is
+   * completed in the jMonkey thread, so it is safe to attach the mesh to the
+   * scene graph in its callbacks.
+   */
+  protected CompletableFuture<TriangleMesh> loadMeshAsync(String filename) {
+    synchronized (this) {
+      if (meshLoader == null) {
+        meshLoader = new AsyncMeshLoader(this::runLater);
+      }
+    }
+    return meshLoader.load(filename);
+  }
+
+  /**
+   * Load an OBJ model in the background and reload it whenever the OBJ file
+   * or its material files are edited (see ModelReloader). The listener is
+   * called in the jMonkey thread.
+   */
+  protected void watchModel(String filename, ModelReloader.Listener listener) {
+    synchronized (this) {
+      if (modelReloader == null) {
+        modelReloader = new ModelReloader(this::runLater);
+      }
+    }
+    modelReloader.watch(filename, listener);
+  }
+
+  /**
+   * Register a node whose level of detail is selected in each frame (see
+   * updateLevelsOfDetail()). The node still needs to be attached to the
+   * scene graph.
+   */
+  protected void addLodNode(LodNode node) {
+    lodNodes.add(node);
+  }
+
+  protected void removeLodNode(LodNode node) {
+    lodNodes.remove(node);
+  }
+
+  /**
+   * Limit the number of visible LOD triangles per frame, 0 for no limit. If
+   * the budget is exceeded, all nodes are moved to coarser levels over the
+   * next frames, so the frame time stays roughly constant for many objects.
+   */
+  protected void setLodTriangleBudget(int budget) {
+    lodTriangleBudget = budget;
+    if (budget <= 0) {
+      lodBias = 1;
+    }
+  }
+
+  /**
+   * Select the levels of detail of the registered nodes for the current
+   * camera; called once per frame after update().
+   */
+  public void updateLevelsOfDetail(CameraController cameraController) {
+    if (lodNodes.isEmpty()) {
+      numberOfLodTriangles = 0;
+      return;
+    }
+    Camera cam = cameraController.getCamera();
+    int numberOfTriangles = 0;
+    for (LodNode node : lodNodes) {
+      int nodeTriangles = node.update(cam, lodBias);
+      cam.setPlaneState(0);
+      if (cam.contains(node.getWorldBound()) != Camera.FrustumIntersect.Outside) {
+        numberOfTriangles += nodeTriangles;
+      }
+    }
+    numberOfLodTriangles = numberOfTriangles;
+
+    // Feedback for the next frame
+    if (lodTriangleBudget > 0) {
+      if (numberOfTriangles > lodTriangleBudget) {
+        lodBias = Math.max(MIN_LOD_BIAS, lodBias * LOD_BIAS_STEP);
+      } else if (numberOfTriangles < LOD_BUDGET_MARGIN * lodTriangleBudget) {
+        lodBias = Math.min(1, lodBias / LOD_BIAS_STEP);
+      }
+    }
+  }
+
+  /**
+   * Number of visible triangles of the LOD nodes in the last frame.
+   */
+  public int getNumberOfLodTriangles() {
+    return numberOfLodTriangles;
+  }
+
+  /**
+   * Tasks are taken from the list before they are run, so tasks (and other
+   * threads) can enqueue new tasks meanwhile; these run in the next frame.
+   */
+  public void invokeRunlaterTasks() {
+    List<Runnable> tasks;
+    synchronized (this) {
+      if (runLaterTasks.isEmpty()) {
+        return;
+      }
+      tasks = runLaterTasks;
+      runLaterTasks = new ArrayList<>();
+    }
+    tasks.forEach(task -> task.run());
   }
 }
@@ -0,0 +1,97 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.base.mesh;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads OBJ meshes on a fixed number of background threads. The futures are
+ * completed through the given render thread executor (usually
+ * Scene.runLater), so callbacks attached to them run in the jME thread and
+ * may modify the scene graph. Concurrent requests for the same file are
+ * imported only once.
+ */
+public class AsyncMeshLoader {
+
+  /**
+   * Default number of worker threads.
+   */
+  public static final int DEFAULT_NUMBER_OF_THREADS = Math.max(1,
+          Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+
+  private final Executor renderThread;
+  private final ExecutorService workers;
+  private final ObjMeshCache cache;
+
+  /**
+   * Imports in progress.
+   */
+  private final Map<String, CompletableFuture<TriangleMesh>> pending =
+          new ConcurrentHashMap<>();
+
+  public AsyncMeshLoader(Executor renderThread) {
+    this(renderThread, DEFAULT_NUMBER_OF_THREADS, null);
+  }
+
+  /**
+   * Loader with the given number of worker threads. If cache is not null,
+   * the meshes are read through the cache.
+   */
+  public AsyncMeshLoader(Executor renderThread, int numberOfThreads,
+                         ObjMeshCache cache) {
+    this.renderThread = renderThread;
+    this.cache = cache;
+    AtomicInteger threadCounter = new AtomicInteger();
+    this.workers = Executors.newFixedThreadPool(numberOfThreads, runnable -> {
+      Thread thread = new Thread(runnable, "mesh-loader-"
+              + threadCounter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Read the OBJ file (see ObjReader.read()) in the background. The future is
+   * completed in the render thread, with null if the file cannot be read. If
+   * the file is already being loaded, the running import is reused and the
+   * future receives a copy of its mesh.
+   */
+  public CompletableFuture<TriangleMesh> load(String filename) {
+    boolean[] created = new boolean[1];
+    CompletableFuture<TriangleMesh> future = pending.computeIfAbsent(filename,
+            key -> {
+              created[0] = true;
+              return CompletableFuture.supplyAsync(() -> read(key), workers);
+            });
+    if (created[0]) {
+      // Registered outside of computeIfAbsent: a fast import may already be
+      // done, then the callback runs at once in this thread
+      future.whenComplete((mesh, e) -> pending.remove(filename, future));
+    }
+    CompletableFuture<TriangleMesh> result = created[0] ? future
+            : future.thenApply(mesh -> mesh != null ? new TriangleMesh(mesh)
+            : null);
+    return result.thenApplyAsync(mesh -> mesh, renderThread);
+  }
+
+  /**
+   * Stop the worker threads, running imports are interrupted.
+   */
+  public void shutdown() {
+    workers.shutdownNow();
+  }
+
+  private TriangleMesh read(String filename) {
+    return cache != null ? cache.read(filename)
+            : new ObjReader().read(filename);
+  }
+}
@@ -0,0 +1,410 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.base.mesh;
+
+import com.jme3.asset.AssetManager;
+import com.jme3.texture.Texture;
+import wpcg.base.Logger;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads a batch of OBJ models with their dependencies: the material (MTL)
+ * files referenced by the models and the textures referenced by the
+ * materials. The dependency graph is resolved while loading: each model is
+ * scanned for its material files, every material file is parsed once (see
+ * {@link MaterialLibraryCache}) and every texture is loaded once with the
+ * jMonkey asset manager. A model is imported as soon as its material files
+ * are available, independent files are loaded in parallel on at most
+ * 'parallelism' threads. The time spent on each file is reported.
+ * <p>
+ * All paths are relative to the resources directory (see ObjReader),
+ * textures are loaded by their normalized path relative to the resources
+ * directory (which must be an asset root of the asset manager).
+ */
+public class BatchAssetLoader {
+
+  /**
+   * Kind of a loaded file.
+   */
+  public enum AssetType {
+    MODEL, MATERIAL_LIBRARY, TEXTURE
+  }
+
+  /**
+   * Load time of a single file.
+   */
+  public static class AssetTiming {
+    private final AssetType type;
+    private final String path;
+    private final long startNanos;
+    private final long durationNanos;
+    private final boolean success;
+
+    AssetTiming(AssetType type, String path, long startNanos,
+                long durationNanos, boolean success) {
+      this.type = type;
+      this.path = path;
+      this.startNanos = startNanos;
+      this.durationNanos = durationNanos;
+      this.success = success;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%-16s %8.1f ms (start %8.1f ms)%s %s", type,
+              durationNanos / 1e6, startNanos / 1e6, success ? "" : " FAILED",
+              path);
+    }
+
+    public AssetType getType() {
+      return type;
+    }
+
+    public String getPath() {
+      return path;
+    }
+
+    /**
+     * Start time relative to the start of the batch.
+     */
+    public long getStartNanos() {
+      return startNanos;
+    }
+
+    public long getDurationNanos() {
+      return durationNanos;
+    }
+
+    public boolean isSuccess() {
+      return success;
+    }
+  }
+
+  /**
+   * Loaded meshes and textures of a batch.
+   */
+  public static class Result {
+    private final Map<String, TriangleMesh> meshes = new LinkedHashMap<>();
+    private final Map<String, Texture> textures = new HashMap<>();
+    private final Map<String, Map<String, String>> materialTextures =
+            new HashMap<>();
+    private final List<AssetTiming> timings;
+    private final long durationNanos;
+
+    private Result(List<AssetTiming> timings, long durationNanos) {
+      this.timings = timings;
+      this.durationNanos = durationNanos;
+    }
+
+    /**
+     * Mesh of the model, null if it could not be read.
+     */
+    public TriangleMesh getMesh(String modelPath) {
+      return meshes.get(modelPath);
+    }
+
+    /**
+     * Texture by its normalized path, null if it could not be loaded.
+     */
+    public Texture getTexture(String texturePath) {
+      return textures.get(texturePath);
+    }
+
+    /**
+     * Texture of the material (by name) as used in the model, null if the
+     * material has no texture or it could not be loaded.
+     */
+    public Texture getTexture(String modelPath, String materialName) {
+      Map<String, String> paths = materialTextures.get(modelPath);
+      String texturePath = paths != null ? paths.get(materialName) : null;
+      return texturePath != null ? textures.get(texturePath) : null;
+    }
+
+    /**
+     * Per-file timings ordered by start time.
+     */
+    public List<AssetTiming> getTimings() {
+      return Collections.unmodifiableList(timings);
+    }
+
+    /**
+     * Wall-clock time of the whole batch.
+     */
+    public long getDurationNanos() {
+      return durationNanos;
+    }
+
+    /**
+     * Log the timings of all files.
+     */
+    public void logReport() {
+      long sum = 0;
+      for (AssetTiming timing : timings) {
+        Logger.getInstance().msg(timing.toString());
+        sum += timing.getDurationNanos();
+      }
+      Logger.getInstance().msg(String.format("Loaded %d files in %.1f ms "
+                      + "(%.1f ms sequential).", timings.size(),
+              durationNanos / 1e6, sum / 1e6));
+    }
+  }
+
+  private final AssetManager assetManager;
+  private final ObjMeshCache cache;
+  private final ExecutorService workers;
+
+  /**
+   * Loader with at most 'parallelism' threads. If the asset manager is null,
+   * no textures are loaded.
+   */
+  public BatchAssetLoader(AssetManager assetManager, int parallelism) {
+    this(assetManager, parallelism, null);
+  }
+
+  /**
+   * If cache is not null, the meshes are read through the cache.
+   */
+  public BatchAssetLoader(AssetManager assetManager, int parallelism,
+                          ObjMeshCache cache) {
+    this.assetManager = assetManager;
+    this.cache = cache;
+    AtomicInteger threadCounter = new AtomicInteger();
+    this.workers = Executors.newFixedThreadPool(parallelism, runnable -> {
+      Thread thread = new Thread(runnable, "asset-loader-"
+              + threadCounter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Read a manifest file: one model path per line, empty lines and lines
+   * starting with '#' are ignored. Returns null if the file cannot be read.
+   */
+  public static List<String> readManifest(String filename) {
+    List<String> modelPaths = new ArrayList<>();
+    try (BufferedReader reader = Files.newBufferedReader(
+            ObjReader.getFile(filename).toPath(), StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+        if (!line.isEmpty() && !line.startsWith("#")) {
+          modelPaths.add(line);
+        }
+      }
+    } catch (IOException e) {
+      Logger.getInstance().error("Failed to read manifest " + filename);
+      return null;
+    }
+    return modelPaths;
+  }
+
+  /**
+   * Load all models of the manifest and their dependencies, blocks until all
+   * files are loaded.
+   */
+  public Result load(List<String> modelPaths) {
+    return loadAsync(modelPaths).join();
+  }
+
+  /**
+   * Load all models of the manifest and their dependencies in the
+   * background.
+   */
+  public CompletableFuture<Result> loadAsync(List<String> modelPaths) {
+    return new Batch(modelPaths).start();
+  }
+
+  /**
+   * Stop the worker threads.
+   */
+  public void shutdown() {
+    workers.shutdownNow();
+  }
+
+  /**
+   * State of one load() call.
+   */
+  private class Batch {
+    private final List<String> modelPaths;
+    private final long startTime = System.nanoTime();
+    private final List<AssetTiming> timings =
+            Collections.synchronizedList(new ArrayList<>());
+
+    // One future per file
+    private final Map<String, CompletableFuture<MaterialLibraryCache.Library>>
+            materialLibraries = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Texture>> textures =
+            new ConcurrentHashMap<>();
+    private final Map<String, TriangleMesh> meshes = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, String>> materialTextures =
+            new ConcurrentHashMap<>();
+
+    Batch(List<String> modelPaths) {
+      this.modelPaths = modelPaths;
+    }
+
+    CompletableFuture<Result> start() {
+      List<CompletableFuture<?>> models = new ArrayList<>();
+      for (String modelPath : modelPaths) {
+        models.add(CompletableFuture
+                .supplyAsync(() -> scanModel(modelPath), workers)
+                .thenCompose(libraryPaths -> loadModel(modelPath,
+                        libraryPaths)));
+      }
+      return CompletableFuture.allOf(models.toArray(
+              new CompletableFuture<?>[0]))
+              .thenCompose(ignored -> CompletableFuture.allOf(textures.values()
+                      .toArray(new CompletableFuture<?>[0])))
+              .thenApply(ignored -> createResult());
+    }
+
+    /**
+     * Paths of the material files referenced by the model.
+     */
+    private List<String> scanModel(String modelPath) {
+      List<String> libraryPaths = new ArrayList<>();
+      try {
+        for (String library : MaterialLibraryScanner.findMaterialLibraries(
+                ObjReader.getFile(modelPath))) {
+          libraryPaths.add(ObjReader.getDirectory(modelPath) + library);
+        }
+      } catch (IOException e) {
+        // Reported by the import
+      }
+      return libraryPaths;
+    }
+
+    /**
+     * Import the model once its material files are parsed.
+     */
+    private CompletableFuture<Void> loadModel(String modelPath,
+                                              List<String> libraryPaths) {
+      List<CompletableFuture<MaterialLibraryCache.Library>> libraries =
+              new ArrayList<>();
+      for (String libraryPath : libraryPaths) {
+        libraries.add(materialLibraries.computeIfAbsent(libraryPath,
+                this::loadMaterialLibrary));
+      }
+      return CompletableFuture.allOf(libraries.toArray(
+              new CompletableFuture<?>[0])).thenRunAsync(() -> {
+        // Texture of each material name as the import resolves it
+        Map<String, String> texturePaths = new HashMap<>();
+        for (int i = 0; i < libraries.size(); i++) {
+          MaterialLibraryCache.Library library = libraries.get(i).join();
+          for (Material material : library.materials.values()) {
+            texturePaths.put(material.getName(), getTexturePath(
+                    libraryPaths.get(i), material));
+          }
+        }
+        materialTextures.put(modelPath, texturePaths);
+
+        long start = System.nanoTime();
+        TriangleMesh mesh = cache != null ? cache.read(modelPath)
+                : new ObjReader().read(modelPath);
+        addTiming(AssetType.MODEL, modelPath, start, mesh != null);
+        if (mesh != null) {
+          meshes.put(modelPath, mesh);
+        }
+      }, workers);
+    }
+
+    /**
+     * Parse the material file and start loading its textures.
+     */
+    private CompletableFuture<MaterialLibraryCache.Library> loadMaterialLibrary(
+            String libraryPath) {
+      return CompletableFuture.supplyAsync(() -> {
+        long start = System.nanoTime();
+        MaterialLibraryCache.Library library = MaterialLibraryCache
+                .getInstance().getLibrary(libraryPath);
+        addTiming(AssetType.MATERIAL_LIBRARY, libraryPath, start,
+                ObjReader.getFile(libraryPath).isFile());
+        if (assetManager != null) {
+          for (Material material : library.materials.values()) {
+            String texturePath = getTexturePath(libraryPath, material);
+            if (texturePath != null) {
+              textures.computeIfAbsent(texturePath, this::loadTexture);
+            }
+          }
+        }
+        return library;
+      }, workers);
+    }
+
+    private CompletableFuture<Texture> loadTexture(String texturePath) {
+      return CompletableFuture.supplyAsync(() -> {
+        long start = System.nanoTime();
+        Texture texture = null;
+        try {
+          texture = assetManager.loadTexture(texturePath);
+        } catch (RuntimeException e) {
+          Logger.getInstance().error("Failed to load texture " + texturePath);
+        }
+        addTiming(AssetType.TEXTURE, texturePath, start, texture != null);
+        return texture;
+      }, workers);
+    }
+
+    private void addTiming(AssetType type, String path, long start,
+                           boolean success) {
+      timings.add(new AssetTiming(type, path, start - startTime,
+              System.nanoTime() - start, success));
+    }
+
+    private Result createResult() {
+      List<AssetTiming> sortedTimings = new ArrayList<>(timings);
+      sortedTimings.sort(Comparator.comparingLong(AssetTiming::getStartNanos));
+      Result result = new Result(sortedTimings,
+              System.nanoTime() - startTime);
+      for (String modelPath : modelPaths) {
+        TriangleMesh mesh = meshes.get(modelPath);
+        if (mesh != null) {
+          result.meshes.put(modelPath, mesh);
+        }
+      }
+      for (Map.Entry<String, CompletableFuture<Texture>> entry
+              : textures.entrySet()) {
+        Texture texture = entry.getValue().join();
+        if (texture != null) {
+          result.textures.put(entry.getKey(), texture);
+        }
+      }
+      result.materialTextures.putAll(materialTextures);
+      return result;
+    }
+  }
+
+  /**
+   * Normalized path of the texture of the material (relative to the
+   * resources directory), null if the material has no texture.
+   */
+  private static String getTexturePath(String libraryPath, Material material) {
+    if (material.getTextureFilename() == null) {
+      return null;
+    }
+    return new File(ObjReader.getDirectory(libraryPath)
+            + material.getTextureFilename()).toPath().normalize().toString()
+            .replace(File.separatorChar, '/');
+  }
+}
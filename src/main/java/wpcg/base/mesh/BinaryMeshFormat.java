@@ -0,0 +1,65 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.base.mesh;
+
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Layout of the binary mesh container (little endian):
+ * <pre>
+ *  0  magic "WPCGMESH"
+ *  8  int   version
+ * 12  int   number of sections
+ * 16  int   number of vertices
+ * 20  int   number of triangles
+ * 24  int   number of texture coordinates
+ * 28  int   flags (FLAG_BOUNDS_VALID)
+ * 32  float bounds (minX, minY, minZ, maxX, maxY, maxZ)
+ * 56  float bounding sphere radius (negative if unknown)
+ * 60  int   reserved
+ * 64  section table: per section long offset, long length (bytes)
+ * </pre>
+ * The sections follow in the order of the SECTION_* constants, each starts at
+ * a multiple of SECTION_ALIGNMENT. The float and int sections contain the
+ * packed arrays of the mesh, the metadata section contains the texture name,
+ * the materials and the triangle groups (strings as int length, -1 for null,
+ * followed by UTF-8 bytes).
+ */
+final class BinaryMeshFormat {
+
+  static final byte[] MAGIC = "WPCGMESH".getBytes(StandardCharsets.US_ASCII);
+  static final int VERSION = 1;
+  static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+  static final int HEADER_SIZE = 64;
+  static final int SECTION_ENTRY_SIZE = 16;
+  static final int SECTION_ALIGNMENT = 64;
+
+  static final int FLAG_BOUNDS_VALID = 1;
+
+  static final int SECTION_VERTEX_POSITIONS = 0;
+  static final int SECTION_VERTEX_NORMALS = 1;
+  static final int SECTION_VERTEX_COLORS = 2;
+  static final int SECTION_TEXTURE_COORDINATES = 3;
+  static final int SECTION_TRIANGLE_VERTEX_INDICES = 4;
+  static final int SECTION_TRIANGLE_TEXCOORD_INDICES = 5;
+  static final int SECTION_TRIANGLE_NORMALS = 6;
+  static final int SECTION_TRIANGLE_COLORS = 7;
+  static final int SECTION_METADATA = 8;
+  static final int NUMBER_OF_SECTIONS = 9;
+
+  private BinaryMeshFormat() {
+  }
+
+  /**
+   * Round up to the section alignment.
+   */
+  static long align(long offset) {
+    return (offset + SECTION_ALIGNMENT - 1) / SECTION_ALIGNMENT
+            * SECTION_ALIGNMENT;
+  }
+}
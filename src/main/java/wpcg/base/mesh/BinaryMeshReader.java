@@ -0,0 +1,314 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.base.mesh;
+
+import com.jme3.math.ColorRGBA;
+import wpcg.base.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static wpcg.base.mesh.BinaryMeshFormat.*;
+
+/**
+ * Memory-mapped view on a binary mesh container (see {@link BinaryMeshFormat}
+ * and {@link BinaryMeshWriter}). The float and int sections are wrapped as
+ * read-only buffers on the mapped file without copying, so opening a file
+ * costs only the page faults of the data which is actually accessed.
+ * {@link #createMesh()} bulk-copies the sections into a triangle mesh.
+ */
+public class BinaryMeshReader {
+
+  private final int numberOfVertices;
+  private final int numberOfTriangles;
+  private final int numberOfTextureCoordinates;
+  private final boolean boundsValid;
+  private final float[] bounds = new float[6];
+  private final float sphereRadius;
+
+  private final FloatBuffer vertexPositions;
+  private final FloatBuffer vertexNormals;
+  private final FloatBuffer vertexColors;
+  private final FloatBuffer textureCoordinates;
+  private final IntBuffer triangleVertexIndices;
+  private final IntBuffer triangleTexCoordIndices;
+  private final FloatBuffer triangleNormals;
+  private final FloatBuffer triangleColors;
+
+  private final String textureName;
+  private final List<MeshGroup> groups = new ArrayList<>();
+
+  private BinaryMeshReader(ByteBuffer data) throws IOException {
+    data.order(BYTE_ORDER);
+    if (data.capacity() < HEADER_SIZE) {
+      throw new IOException("File too short.");
+    }
+    for (int i = 0; i < MAGIC.length; i++) {
+      if (data.get(i) != MAGIC[i]) {
+        throw new IOException("Not a binary mesh file.");
+      }
+    }
+    int version = data.getInt(8);
+    if (version != VERSION) {
+      throw new IOException("Unsupported version " + version + ".");
+    }
+    int numberOfSections = data.getInt(12);
+    if (numberOfSections < NUMBER_OF_SECTIONS || HEADER_SIZE
+            + (long) numberOfSections * SECTION_ENTRY_SIZE > data.capacity()) {
+      throw new IOException("Invalid section table.");
+    }
+    numberOfVertices = data.getInt(16);
+    numberOfTriangles = data.getInt(20);
+    numberOfTextureCoordinates = data.getInt(24);
+    boundsValid = (data.getInt(28) & FLAG_BOUNDS_VALID) != 0;
+    for (int i = 0; i < 6; i++) {
+      bounds[i] = data.getFloat(32 + 4 * i);
+    }
+    sphereRadius = data.getFloat(56);
+    if (numberOfVertices < 0 || numberOfTriangles < 0
+            || numberOfTextureCoordinates < 0) {
+      throw new IOException("Invalid header.");
+    }
+
+    vertexPositions = section(data, SECTION_VERTEX_POSITIONS,
+            3L * numberOfVertices).asFloatBuffer();
+    vertexNormals = section(data, SECTION_VERTEX_NORMALS,
+            3L * numberOfVertices).asFloatBuffer();
+    vertexColors = section(data, SECTION_VERTEX_COLORS,
+            4L * numberOfVertices).asFloatBuffer();
+    textureCoordinates = section(data, SECTION_TEXTURE_COORDINATES,
+            2L * numberOfTextureCoordinates).asFloatBuffer();
+    triangleVertexIndices = section(data, SECTION_TRIANGLE_VERTEX_INDICES,
+            3L * numberOfTriangles).asIntBuffer();
+    triangleTexCoordIndices = section(data, SECTION_TRIANGLE_TEXCOORD_INDICES,
+            3L * numberOfTriangles).asIntBuffer();
+    triangleNormals = section(data, SECTION_TRIANGLE_NORMALS,
+            3L * numberOfTriangles).asFloatBuffer();
+    triangleColors = section(data, SECTION_TRIANGLE_COLORS,
+            4L * numberOfTriangles).asFloatBuffer();
+
+    // Metadata
+    ByteBuffer metadata = section(data, SECTION_METADATA, -1);
+    try {
+      textureName = readString(metadata);
+      int numberOfMaterials = metadata.getInt();
+      List<Material> materials = new ArrayList<>();
+      for (int i = 0; i < numberOfMaterials; i++) {
+        Material material = new Material(readString(metadata));
+        material.setTextureFilename(readString(metadata));
+        material.setColor(new ColorRGBA(metadata.getFloat(),
+                metadata.getFloat(), metadata.getFloat(), metadata.getFloat()));
+        materials.add(MaterialLibraryCache.getInstance().intern(material));
+      }
+      int numberOfGroups = metadata.getInt();
+      for (int i = 0; i < numberOfGroups; i++) {
+        String name = readString(metadata);
+        int materialIndex = metadata.getInt();
+        int first = metadata.getInt();
+        int count = metadata.getInt();
+        if (first < 0 || count < 0 || first + count > numberOfTriangles) {
+          throw new IOException("Invalid group.");
+        }
+        groups.add(new MeshGroup(name,
+                materialIndex >= 0 ? materials.get(materialIndex) : null,
+                first, count));
+      }
+    } catch (RuntimeException e) {
+      throw new IOException("Invalid metadata.", e);
+    }
+  }
+
+  /**
+   * Map the binary mesh file, returns null if the file cannot be read or is
+   * not a valid binary mesh file.
+   */
+  public static BinaryMeshReader open(File file) {
+    try (FileChannel channel = FileChannel.open(file.toPath(),
+            StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("File too large.");
+      }
+      return new BinaryMeshReader(channel.map(FileChannel.MapMode.READ_ONLY,
+              0, channel.size()));
+    } catch (IOException e) {
+      Logger.getInstance().error("Failed to read binary mesh file " + file
+              + ": " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Read a binary mesh file into a triangle mesh, returns null if the file
+   * cannot be read.
+   */
+  public static TriangleMesh read(File file) {
+    BinaryMeshReader reader = open(file);
+    return reader != null ? reader.createMesh() : null;
+  }
+
+  /**
+   * Create a triangle mesh with the content of the file.
+   */
+  public TriangleMesh createMesh() {
+    TriangleMesh mesh = new TriangleMesh(numberOfVertices, numberOfTriangles);
+    VertexArrays vertices = mesh.vertices;
+    vertexPositions.duplicate().get(vertices.positions, 0,
+            3 * numberOfVertices);
+    vertexNormals.duplicate().get(vertices.normals, 0, 3 * numberOfVertices);
+    vertexColors.duplicate().get(vertices.colors, 0, 4 * numberOfVertices);
+    vertices.size = numberOfVertices;
+    if (boundsValid) {
+      System.arraycopy(bounds, 0, vertices.bounds, 0, 6);
+      vertices.boundsValid = true;
+      vertices.sphereRadius = sphereRadius;
+    } else {
+      vertices.invalidateBounds();
+    }
+
+    mesh.textureCoordinates = new float[Math.max(
+            2 * numberOfTextureCoordinates, 2)];
+    textureCoordinates.duplicate().get(mesh.textureCoordinates, 0,
+            2 * numberOfTextureCoordinates);
+    mesh.numberOfTextureCoordinates = numberOfTextureCoordinates;
+
+    TriangleArrays triangles = mesh.triangles;
+    triangleVertexIndices.duplicate().get(triangles.vertexIndices, 0,
+            3 * numberOfTriangles);
+    triangleTexCoordIndices.duplicate().get(triangles.texCoordIndices, 0,
+            3 * numberOfTriangles);
+    triangleNormals.duplicate().get(triangles.normals, 0,
+            3 * numberOfTriangles);
+    triangleColors.duplicate().get(triangles.colors, 0, 4 * numberOfTriangles);
+    triangles.size = numberOfTriangles;
+    triangles.modCount++;
+
+    for (MeshGroup group : groups) {
+      mesh.addGroup(new MeshGroup(group));
+    }
+    mesh.setTextureName(textureName);
+    return mesh;
+  }
+
+  /**
+   * Slice section 'index' from the data, checks the expected number of 4-byte
+   * elements (if not negative).
+   */
+  private static ByteBuffer section(ByteBuffer data, int index,
+                                    long expectedElements) throws IOException {
+    int entry = HEADER_SIZE + index * SECTION_ENTRY_SIZE;
+    long offset = data.getLong(entry);
+    long length = data.getLong(entry + 8);
+    if (offset < 0 || length < 0 || offset + length > data.capacity()
+            || (expectedElements >= 0 && length != 4 * expectedElements)) {
+      throw new IOException("Invalid section " + index + ".");
+    }
+    ByteBuffer section = data.duplicate();
+    section.position((int) offset);
+    section.limit((int) (offset + length));
+    return section.slice().order(BYTE_ORDER);
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  // +++ GETTER/SETTER +++++++++++++++++++++++++
+
+  public int getNumberOfVertices() {
+    return numberOfVertices;
+  }
+
+  public int getNumberOfTriangles() {
+    return numberOfTriangles;
+  }
+
+  public int getNumberOfTextureCoordinates() {
+    return numberOfTextureCoordinates;
+  }
+
+  /**
+   * Vertex positions (x, y, z), read-only view on the mapped file.
+   */
+  public FloatBuffer getVertexPositions() {
+    return vertexPositions.asReadOnlyBuffer();
+  }
+
+  /**
+   * Vertex normals (x, y, z), read-only view on the mapped file.
+   */
+  public FloatBuffer getVertexNormals() {
+    return vertexNormals.asReadOnlyBuffer();
+  }
+
+  /**
+   * Vertex colors (r, g, b, a), read-only view on the mapped file.
+   */
+  public FloatBuffer getVertexColors() {
+    return vertexColors.asReadOnlyBuffer();
+  }
+
+  /**
+   * Texture coordinates (u, v), read-only view on the mapped file.
+   */
+  public FloatBuffer getTextureCoordinates() {
+    return textureCoordinates.asReadOnlyBuffer();
+  }
+
+  /**
+   * Vertex indices (three per triangle), read-only view on the mapped file.
+   */
+  public IntBuffer getTriangleVertexIndices() {
+    return triangleVertexIndices.asReadOnlyBuffer();
+  }
+
+  /**
+   * Texture coordinate indices (three per triangle), read-only view on the
+   * mapped file.
+   */
+  public IntBuffer getTriangleTexCoordIndices() {
+    return triangleTexCoordIndices.asReadOnlyBuffer();
+  }
+
+  /**
+   * Facet normals (x, y, z), read-only view on the mapped file.
+   */
+  public FloatBuffer getTriangleNormals() {
+    return triangleNormals.asReadOnlyBuffer();
+  }
+
+  /**
+   * Triangle colors (r, g, b, a), read-only view on the mapped file.
+   */
+  public FloatBuffer getTriangleColors() {
+    return triangleColors.asReadOnlyBuffer();
+  }
+
+  public String getTextureName() {
+    return textureName;
+  }
+
+  public int getNumberOfGroups() {
+    return groups.size();
+  }
+
+  public MeshGroup getGroup(int index) {
+    return groups.get(index);
+  }
+}
@@ -0,0 +1,240 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.base.mesh;
+
+import com.jme3.math.ColorRGBA;
+import wpcg.base.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static wpcg.base.mesh.BinaryMeshFormat.*;
+
+/**
+ * Write a triangle mesh into the binary mesh container (see
+ * {@link BinaryMeshFormat}), which can be loaded with
+ * {@link BinaryMeshReader} without parsing.
+ */
+public class BinaryMeshWriter {
+
+  /**
+   * Size of the buffer used to write the sections.
+   */
+  private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+  private final ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE)
+          .order(BYTE_ORDER);
+
+  /**
+   * Write the mesh to the file. The file is written under a temporary name
+   * and renamed afterwards, so readers never see a partially written file.
+   * Returns true if the file was written successfully.
+   */
+  public boolean write(TriangleMesh mesh, File file) {
+    VertexArrays vertices = mesh.vertices;
+    TriangleArrays triangles = mesh.triangles;
+    float[] bounds = mesh.getBounds();
+    byte[] metadata = createMetadata(mesh);
+
+    // Section layout
+    long[] lengths = new long[NUMBER_OF_SECTIONS];
+    lengths[SECTION_VERTEX_POSITIONS] = 4L * 3 * vertices.size;
+    lengths[SECTION_VERTEX_NORMALS] = 4L * 3 * vertices.size;
+    lengths[SECTION_VERTEX_COLORS] = 4L * 4 * vertices.size;
+    lengths[SECTION_TEXTURE_COORDINATES] = 4L * 2
+            * mesh.numberOfTextureCoordinates;
+    lengths[SECTION_TRIANGLE_VERTEX_INDICES] = 4L * 3 * triangles.size;
+    lengths[SECTION_TRIANGLE_TEXCOORD_INDICES] = 4L * 3 * triangles.size;
+    lengths[SECTION_TRIANGLE_NORMALS] = 4L * 3 * triangles.size;
+    lengths[SECTION_TRIANGLE_COLORS] = 4L * 4 * triangles.size;
+    lengths[SECTION_METADATA] = metadata.length;
+    long[] offsets = new long[NUMBER_OF_SECTIONS];
+    long offset = HEADER_SIZE + NUMBER_OF_SECTIONS * SECTION_ENTRY_SIZE;
+    for (int i = 0; i < NUMBER_OF_SECTIONS; i++) {
+      offsets[i] = align(offset);
+      offset = offsets[i] + lengths[i];
+    }
+
+    // Unique temporary file, concurrent writers of the same file (e.g. two
+    // cache misses for the same key) must not write into the same inode
+    File tmpFile;
+    try {
+      File parent = file.getAbsoluteFile().getParentFile();
+      tmpFile = Files.createTempFile(parent.toPath(), file.getName(), ".tmp")
+              .toFile();
+    } catch (IOException e) {
+      Logger.getInstance().error("Failed to write mesh file " + file);
+      return false;
+    }
+    try (FileChannel channel = FileChannel.open(tmpFile.toPath(),
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      // Header and section table
+      buffer.clear();
+      buffer.put(MAGIC);
+      buffer.putInt(VERSION);
+      buffer.putInt(NUMBER_OF_SECTIONS);
+      buffer.putInt(vertices.size);
+      buffer.putInt(triangles.size);
+      buffer.putInt(mesh.numberOfTextureCoordinates);
+      buffer.putInt(vertices.boundsValid ? FLAG_BOUNDS_VALID : 0);
+      for (int i = 0; i < 6; i++) {
+        buffer.putFloat(bounds[i]);
+      }
+      buffer.putFloat(vertices.sphereRadius);
+      buffer.putInt(0);
+      for (int i = 0; i < NUMBER_OF_SECTIONS; i++) {
+        buffer.putLong(offsets[i]);
+        buffer.putLong(lengths[i]);
+      }
+      buffer.flip();
+      writeFully(channel, 0);
+
+      // Sections
+      writeFloats(channel, offsets[SECTION_VERTEX_POSITIONS],
+              vertices.positions, 3 * vertices.size);
+      writeFloats(channel, offsets[SECTION_VERTEX_NORMALS], vertices.normals,
+              3 * vertices.size);
+      writeFloats(channel, offsets[SECTION_VERTEX_COLORS], vertices.colors,
+              4 * vertices.size);
+      writeFloats(channel, offsets[SECTION_TEXTURE_COORDINATES],
+              mesh.textureCoordinates, 2 * mesh.numberOfTextureCoordinates);
+      writeInts(channel, offsets[SECTION_TRIANGLE_VERTEX_INDICES],
+              triangles.vertexIndices, 3 * triangles.size);
+      writeInts(channel, offsets[SECTION_TRIANGLE_TEXCOORD_INDICES],
+              triangles.texCoordIndices, 3 * triangles.size);
+      writeFloats(channel, offsets[SECTION_TRIANGLE_NORMALS],
+              triangles.normals, 3 * triangles.size);
+      writeFloats(channel, offsets[SECTION_TRIANGLE_COLORS], triangles.colors,
+              4 * triangles.size);
+      ByteBuffer metadataBuffer = ByteBuffer.wrap(metadata);
+      long position = offsets[SECTION_METADATA];
+      while (metadataBuffer.hasRemaining()) {
+        position += channel.write(metadataBuffer, position);
+      }
+    } catch (IOException e) {
+      Logger.getInstance().error("Failed to write mesh file " + file);
+      tmpFile.delete();
+      return false;
+    }
+
+    try {
+      try {
+        Files.move(tmpFile.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tmpFile.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+      }
+    } catch (IOException e) {
+      Logger.getInstance().error("Failed to write mesh file " + file);
+      tmpFile.delete();
+      return false;
+    }
+    return true;
+  }
+
+  private void writeFloats(FileChannel channel, long offset, float[] values,
+                           int count) throws IOException {
+    int maxCount = buffer.capacity() / 4;
+    for (int from = 0; from < count; from += maxCount) {
+      int n = Math.min(maxCount, count - from);
+      buffer.clear();
+      buffer.asFloatBuffer().put(values, from, n);
+      buffer.limit(4 * n);
+      writeFully(channel, offset + 4L * from);
+    }
+  }
+
+  private void writeInts(FileChannel channel, long offset, int[] values,
+                         int count) throws IOException {
+    int maxCount = buffer.capacity() / 4;
+    for (int from = 0; from < count; from += maxCount) {
+      int n = Math.min(maxCount, count - from);
+      buffer.clear();
+      buffer.asIntBuffer().put(values, from, n);
+      buffer.limit(4 * n);
+      writeFully(channel, offset + 4L * from);
+    }
+  }
+
+  /**
+   * Write the remaining content of the buffer at the given file position.
+   */
+  private void writeFully(FileChannel channel, long position)
+          throws IOException {
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+  }
+
+  /**
+   * Texture name, material table and groups.
+   */
+  private static byte[] createMetadata(TriangleMesh mesh) {
+    List<Material> materials = new ArrayList<>();
+    Map<Material, Integer> materialIndices = new IdentityHashMap<>();
+    for (int i = 0; i < mesh.getNumberOfGroups(); i++) {
+      Material material = mesh.getGroup(i).getMaterial();
+      if (material != null && !materialIndices.containsKey(material)) {
+        materialIndices.put(material, materials.size());
+        materials.add(material);
+      }
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writeString(out, mesh.getTextureName());
+    writeInt(out, materials.size());
+    for (Material material : materials) {
+      writeString(out, material.getName());
+      writeString(out, material.getTextureFilename());
+      ColorRGBA color = material.getColor();
+      writeInt(out, Float.floatToRawIntBits(color.r));
+      writeInt(out, Float.floatToRawIntBits(color.g));
+      writeInt(out, Float.floatToRawIntBits(color.b));
+      writeInt(out, Float.floatToRawIntBits(color.a));
+    }
+    writeInt(out, mesh.getNumberOfGroups());
+    for (int i = 0; i < mesh.getNumberOfGroups(); i++) {
+      MeshGroup group = mesh.getGroup(i);
+      writeString(out, group.getName());
+      writeInt(out, group.getMaterial() != null
+              ? materialIndices.get(group.getMaterial()) : -1);
+      writeInt(out, group.getFirstTriangle());
+      writeInt(out, group.getNumberOfTriangles());
+    }
+    return out.toByteArray();
+  }
+
+  private static void writeInt(ByteArrayOutputStream out, int value) {
+    out.write(value);
+    out.write(value >>> 8);
+    out.write(value >>> 16);
+    out.write(value >>> 24);
+  }
+
+  private static void writeString(ByteArrayOutputStream out, String value) {
+    if (value == null) {
+      writeInt(out, -1);
+      return;
+    }
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    writeInt(out, bytes.length);
+    out.write(bytes, 0, bytes.length);
+  }
+}
@@ -0,0 +1,289 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.base.mesh;
+
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.util.BufferUtils;
+
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * Converts a triangle mesh into a jMonkey mesh. The packed arrays of the
+ * triangle mesh are mirrored into direct NIO buffers with bulk copies, no
+ * temporary objects are created per vertex or triangle.
+ * <p>
+ * Two layouts are supported:
+ * <ul>
+ *   <li>Smooth: one jMonkey vertex per mesh vertex with vertex normals and
+ *   vertex colors and an index buffer. Indices are stored as shorts if
+ *   possible.</li>
+ *   <li>Flat: one jMonkey vertex per triangle corner with facet normals and
+ *   triangle colors, no index buffer.</li>
+ * </ul>
+ * If the texture coordinates cannot be shared per vertex (one vertex uses
+ * different texture coordinates in different triangles), the smooth layout
+ * also falls back to one vertex per triangle corner.
+ */
+public class JmeMeshConverter {
+
+  /**
+   * Largest vertex count which can be addressed with unsigned short indices.
+   */
+  private static final int MAX_SHORT_INDEX_VERTICES = 1 << 16;
+
+  private JmeMeshConverter() {
+  }
+
+  /**
+   * Create a jMonkey mesh using the smooth layout.
+   */
+  public static Mesh convert(TriangleMesh mesh) {
+    return convert(mesh, false);
+  }
+
+  /**
+   * Create a jMonkey mesh, flatShading selects the flat layout.
+   */
+  public static Mesh convert(TriangleMesh mesh, boolean flatShading) {
+    Mesh jmeMesh = new Mesh();
+    fill(mesh, jmeMesh, flatShading);
+    return jmeMesh;
+  }
+
+  /**
+   * Write the current content of the triangle mesh into an existing jMonkey
+   * mesh (e.g. after the vertices were moved). Existing buffers are reused if
+   * their size still matches.
+   */
+  public static void update(TriangleMesh mesh, Mesh jmeMesh,
+                            boolean flatShading) {
+    fill(mesh, jmeMesh, flatShading);
+  }
+
+  /**
+   * Fill the buffers of the jMonkey mesh.
+   */
+  private static void fill(TriangleMesh mesh, Mesh jmeMesh,
+                           boolean flatShading) {
+    int[] vertexToTexCoord = flatShading ? null : getSharedTexCoords(mesh);
+    if (flatShading || vertexToTexCoord == null) {
+      fillPerCorner(mesh, jmeMesh, flatShading);
+    } else {
+      fillIndexed(mesh, jmeMesh, vertexToTexCoord);
+    }
+    jmeMesh.updateCounts();
+    jmeMesh.updateBound();
+  }
+
+  /**
+   * Smooth layout with one jMonkey vertex per mesh vertex.
+   */
+  private static void fillIndexed(TriangleMesh mesh, Mesh jmeMesh,
+                                  int[] vertexToTexCoord) {
+    VertexArrays vertices = mesh.vertices;
+    TriangleArrays triangles = mesh.triangles;
+    int numberOfVertices = vertices.size;
+
+    FloatBuffer positions = floatBuffer(jmeMesh, VertexBuffer.Type.Position,
+            3, numberOfVertices);
+    positions.put(vertices.positions, 0, 3 * numberOfVertices);
+    FloatBuffer normals = floatBuffer(jmeMesh, VertexBuffer.Type.Normal, 3,
+            numberOfVertices);
+    normals.put(vertices.normals, 0, 3 * numberOfVertices);
+    FloatBuffer colors = floatBuffer(jmeMesh, VertexBuffer.Type.Color, 4,
+            numberOfVertices);
+    colors.put(vertices.colors, 0, 4 * numberOfVertices);
+    finish(jmeMesh, VertexBuffer.Type.Position, positions);
+    finish(jmeMesh, VertexBuffer.Type.Normal, normals);
+    finish(jmeMesh, VertexBuffer.Type.Color, colors);
+
+    if (vertexToTexCoord.length > 0) {
+      FloatBuffer texCoords = floatBuffer(jmeMesh, VertexBuffer.Type.TexCoord,
+              2, numberOfVertices);
+      float[] uv = mesh.textureCoordinates;
+      for (int i = 0; i < numberOfVertices; i++) {
+        int t = vertexToTexCoord[i];
+        if (t >= 0) {
+          texCoords.put(uv[2 * t]).put(uv[2 * t + 1]);
+        } else {
+          texCoords.put(0).put(0);
+        }
+      }
+      finish(jmeMesh, VertexBuffer.Type.TexCoord, texCoords);
+    } else {
+      jmeMesh.clearBuffer(VertexBuffer.Type.TexCoord);
+    }
+
+    int numberOfIndices = 3 * triangles.size;
+    if (numberOfVertices <= MAX_SHORT_INDEX_VERTICES) {
+      ShortBuffer indices = shortBuffer(jmeMesh, numberOfIndices);
+      int[] src = triangles.vertexIndices;
+      for (int i = 0; i < numberOfIndices; i++) {
+        indices.put((short) src[i]);
+      }
+      finish(jmeMesh, VertexBuffer.Type.Index, indices);
+    } else {
+      IntBuffer indices = intBuffer(jmeMesh, numberOfIndices);
+      indices.put(triangles.vertexIndices, 0, numberOfIndices);
+      finish(jmeMesh, VertexBuffer.Type.Index, indices);
+    }
+  }
+
+  /**
+   * One jMonkey vertex per triangle corner.
+   */
+  private static void fillPerCorner(TriangleMesh mesh, Mesh jmeMesh,
+                                    boolean flatShading) {
+    VertexArrays vertices = mesh.vertices;
+    TriangleArrays triangles = mesh.triangles;
+    int numberOfCorners = 3 * triangles.size;
+    boolean hasTexCoords = mesh.numberOfTextureCoordinates > 0;
+
+    FloatBuffer positions = floatBuffer(jmeMesh, VertexBuffer.Type.Position,
+            3, numberOfCorners);
+    FloatBuffer normals = floatBuffer(jmeMesh, VertexBuffer.Type.Normal, 3,
+            numberOfCorners);
+    FloatBuffer colors = floatBuffer(jmeMesh, VertexBuffer.Type.Color, 4,
+            numberOfCorners);
+    FloatBuffer texCoords = hasTexCoords ?
+            floatBuffer(jmeMesh, VertexBuffer.Type.TexCoord, 2, numberOfCorners)
+            : null;
+
+    int[] vertexIndices = triangles.vertexIndices;
+    int[] texCoordIndices = triangles.texCoordIndices;
+    float[] uv = mesh.textureCoordinates;
+    for (int tIndex = 0; tIndex < triangles.size; tIndex++) {
+      for (int corner = 0; corner < 3; corner++) {
+        int v = vertexIndices[3 * tIndex + corner];
+        positions.put(vertices.positions, 3 * v, 3);
+        if (flatShading) {
+          normals.put(triangles.normals, 3 * tIndex, 3);
+          colors.put(triangles.colors, 4 * tIndex, 4);
+        } else {
+          normals.put(vertices.normals, 3 * v, 3);
+          colors.put(vertices.colors, 4 * v, 4);
+        }
+        if (texCoords != null) {
+          int t = texCoordIndices[3 * tIndex + corner];
+          if (t >= 0 && t < mesh.numberOfTextureCoordinates) {
+            texCoords.put(uv, 2 * t, 2);
+          } else {
+            texCoords.put(0).put(0);
+          }
+        }
+      }
+    }
+    finish(jmeMesh, VertexBuffer.Type.Position, positions);
+    finish(jmeMesh, VertexBuffer.Type.Normal, normals);
+    finish(jmeMesh, VertexBuffer.Type.Color, colors);
+    if (texCoords != null) {
+      finish(jmeMesh, VertexBuffer.Type.TexCoord, texCoords);
+    } else {
+      jmeMesh.clearBuffer(VertexBuffer.Type.TexCoord);
+    }
+    jmeMesh.clearBuffer(VertexBuffer.Type.Index);
+  }
+
+  /**
+   * Returns the texture coordinate index for each vertex. Returns an empty
+   * array if the mesh does not use texture coordinates and null if at least
+   * one vertex uses different texture coordinates in different triangles.
+   */
+  private static int[] getSharedTexCoords(TriangleMesh mesh) {
+    if (mesh.numberOfTextureCoordinates == 0) {
+      return new int[0];
+    }
+    int[] vertexToTexCoord = new int[mesh.vertices.size];
+    Arrays.fill(vertexToTexCoord, -1);
+    int[] vertexIndices = mesh.triangles.vertexIndices;
+    int[] texCoordIndices = mesh.triangles.texCoordIndices;
+    for (int i = 0; i < 3 * mesh.triangles.size; i++) {
+      int t = texCoordIndices[i];
+      if (t < 0 || t >= mesh.numberOfTextureCoordinates) {
+        continue;
+      }
+      int v = vertexIndices[i];
+      if (vertexToTexCoord[v] == -1) {
+        vertexToTexCoord[v] = t;
+      } else if (vertexToTexCoord[v] != t) {
+        return null;
+      }
+    }
+    return vertexToTexCoord;
+  }
+
+  /**
+   * Returns the existing buffer of the given type if it has the required size,
+   * otherwise a new direct buffer. The buffer is cleared.
+   */
+  private static FloatBuffer floatBuffer(Mesh jmeMesh, VertexBuffer.Type type,
+                                         int components, int numberOfElements) {
+    VertexBuffer vb = jmeMesh.getBuffer(type);
+    if (vb != null && vb.getData() instanceof FloatBuffer
+            && vb.getNumComponents() == components
+            && vb.getData().capacity() == components * numberOfElements) {
+      FloatBuffer buffer = (FloatBuffer) vb.getData();
+      buffer.clear();
+      return buffer;
+    }
+    return BufferUtils.createFloatBuffer(components * numberOfElements);
+  }
+
+  private static ShortBuffer shortBuffer(Mesh jmeMesh, int numberOfIndices) {
+    VertexBuffer vb = jmeMesh.getBuffer(VertexBuffer.Type.Index);
+    if (vb != null && vb.getData() instanceof ShortBuffer
+            && vb.getData().capacity() == numberOfIndices) {
+      ShortBuffer buffer = (ShortBuffer) vb.getData();
+      buffer.clear();
+      return buffer;
+    }
+    return BufferUtils.createShortBuffer(numberOfIndices);
+  }
+
+  private static IntBuffer intBuffer(Mesh jmeMesh, int numberOfIndices) {
+    VertexBuffer vb = jmeMesh.getBuffer(VertexBuffer.Type.Index);
+    if (vb != null && vb.getData() instanceof IntBuffer
+            && vb.getData().capacity() == numberOfIndices) {
+      IntBuffer buffer = (IntBuffer) vb.getData();
+      buffer.clear();
+      return buffer;
+    }
+    return BufferUtils.createIntBuffer(numberOfIndices);
+  }
+
+  /**
+   * Flip the buffer and hand it to the mesh (or mark the existing vertex buffer
+   * for upload).
+   */
+  private static void finish(Mesh jmeMesh, VertexBuffer.Type type,
+                             Buffer buffer) {
+    buffer.flip();
+    VertexBuffer vb = jmeMesh.getBuffer(type);
+    if (vb != null && vb.getData() == buffer) {
+      vb.updateData(buffer);
+      return;
+    }
+    if (vb != null) {
+      // Size or format changed
+      jmeMesh.clearBuffer(type);
+    }
+    int components = type == VertexBuffer.Type.Index ? 3
+            : type == VertexBuffer.Type.Color ? 4
+            : type == VertexBuffer.Type.TexCoord ? 2 : 3;
+    if (buffer instanceof FloatBuffer) {
+      jmeMesh.setBuffer(type, components, (FloatBuffer) buffer);
+    } else if (buffer instanceof ShortBuffer) {
+      jmeMesh.setBuffer(type, components, (ShortBuffer) buffer);
+    } else {
+      jmeMesh.setBuffer(type, components, (IntBuffer) buffer);
+    }
+  }
+}
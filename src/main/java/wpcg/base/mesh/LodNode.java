@@ -0,0 +1,208 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.base.mesh;
+
+import com.jme3.bounding.BoundingBox;
+import com.jme3.bounding.BoundingSphere;
+import com.jme3.bounding.BoundingVolume;
+import com.jme3.material.Material;
+import com.jme3.renderer.Camera;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Node;
+
+import java.util.List;
+
+/**
+ * Scene graph node with several levels of detail of the same object, only
+ * the selected level is attached. The level is selected by the projected
+ * size of the object on the screen (see update()), e.g. from a chain created
+ * by {@link MeshSimplifier#createLodChain(TriangleMesh, int...)}.
+ * <p>
+ * By default, the triangle density on the screen is kept constant: level i
+ * is used from a screen size of FULL_DETAIL_SCREEN_SIZE *
+ * sqrt(triangles(i) / triangles(0)) on. A level only changes if the screen
+ * size leaves the switch size by more than the hysteresis, so objects near a
+ * switch size do not pop back and forth.
+ */
+public class LodNode extends Node {
+
+  /**
+   * Screen size (projected diameter relative to the screen height) from
+   * which the finest level is used by default.
+   */
+  public static final float FULL_DETAIL_SCREEN_SIZE = 0.5f;
+
+  /**
+   * Default relative hysteresis of the switch sizes.
+   */
+  public static final float DEFAULT_HYSTERESIS = 0.15f;
+
+  /**
+   * Geometries of the levels, finest first.
+   */
+  private final Geometry[] levels;
+
+  private final int[] numberOfTriangles;
+
+  /**
+   * Level i is used from this screen size on (descending).
+   */
+  private final float[] switchSizes;
+
+  private float hysteresis = DEFAULT_HYSTERESIS;
+
+  /**
+   * Index of the attached level.
+   */
+  private int currentLevel = -1;
+
+  /**
+   * Create the node from the level meshes (finest first), all levels use the
+   * given material.
+   */
+  public LodNode(String name, List<TriangleMesh> meshes, Material material) {
+    super(name);
+    levels = new Geometry[meshes.size()];
+    for (int i = 0; i < levels.length; i++) {
+      levels[i] = new Geometry(name + "-lod" + i,
+              JmeMeshConverter.convert(meshes.get(i)));
+      levels[i].setMaterial(material);
+    }
+    numberOfTriangles = new int[levels.length];
+    switchSizes = new float[levels.length];
+    init();
+  }
+
+  /**
+   * Create the node from existing geometries (finest first).
+   */
+  public LodNode(String name, Geometry... levels) {
+    super(name);
+    this.levels = levels.clone();
+    numberOfTriangles = new int[levels.length];
+    switchSizes = new float[levels.length];
+    init();
+  }
+
+  private void init() {
+    for (int i = 0; i < levels.length; i++) {
+      numberOfTriangles[i] = levels[i].getTriangleCount();
+    }
+    for (int i = 0; i < levels.length; i++) {
+      switchSizes[i] = numberOfTriangles[0] > 0
+              ? FULL_DETAIL_SCREEN_SIZE * (float) Math.sqrt(
+              numberOfTriangles[i] / (double) numberOfTriangles[0]) : 0;
+    }
+    setLevel(levels.length - 1);
+  }
+
+  /**
+   * Select the level for the camera. The screen size is multiplied by the
+   * bias (&lt; 1 prefers coarser levels). Returns the number of triangles of
+   * the selected level.
+   */
+  public int update(Camera cam, float bias) {
+    float screenSize = bias * getScreenSize(cam);
+    // Only leave the current level if the screen size is clearly outside
+    int finest = selectLevel(screenSize * (1 + hysteresis));
+    int coarsest = selectLevel(screenSize * (1 - hysteresis));
+    if (currentLevel < finest) {
+      setLevel(finest);
+    } else if (currentLevel > coarsest) {
+      setLevel(coarsest);
+    }
+    return numberOfTriangles[currentLevel];
+  }
+
+  /**
+   * Projected diameter of the finest level relative to the screen height.
+   */
+  public float getScreenSize(Camera cam) {
+    BoundingVolume bound = levels[0].getModelBound().transform(
+            getWorldTransform(), null);
+    float radius;
+    if (bound instanceof BoundingSphere) {
+      radius = ((BoundingSphere) bound).getRadius();
+    } else if (bound instanceof BoundingBox) {
+      radius = ((BoundingBox) bound).getExtent(null).length();
+    } else {
+      return Float.POSITIVE_INFINITY;
+    }
+    if (cam.isParallelProjection()) {
+      return radius / cam.getFrustumTop();
+    }
+    float distance = bound.getCenter().distance(cam.getLocation());
+    if (distance <= radius) {
+      return Float.POSITIVE_INFINITY;
+    }
+    float tanHalfFov = cam.getFrustumTop() / cam.getFrustumNear();
+    return radius / (distance * tanHalfFov);
+  }
+
+  /**
+   * Finest level whose switch size is reached.
+   */
+  private int selectLevel(float screenSize) {
+    for (int i = 0; i < levels.length - 1; i++) {
+      if (screenSize >= switchSizes[i]) {
+        return i;
+      }
+    }
+    return levels.length - 1;
+  }
+
+  private void setLevel(int level) {
+    if (level == currentLevel) {
+      return;
+    }
+    if (currentLevel >= 0) {
+      detachChild(levels[currentLevel]);
+    }
+    attachChild(levels[level]);
+    currentLevel = level;
+  }
+
+  // +++ GETTER/SETTER +++++++++++++++++++++++++
+
+  public int getNumberOfLevels() {
+    return levels.length;
+  }
+
+  public int getCurrentLevel() {
+    return currentLevel;
+  }
+
+  public Geometry getLevel(int level) {
+    return levels[level];
+  }
+
+  /**
+   * Number of triangles of the attached level.
+   */
+  public int getNumberOfTriangles() {
+    return numberOfTriangles[currentLevel];
+  }
+
+  /**
+   * Set the screen sizes from which on the levels are used (one per level,
+   * descending).
+   */
+  public void setSwitchSizes(float... sizes) {
+    if (sizes.length != levels.length) {
+      throw new IllegalArgumentException("Expected " + levels.length
+              + " switch sizes.");
+    }
+    System.arraycopy(sizes, 0, switchSizes, 0, sizes.length);
+  }
+
+  public float getHysteresis() {
+    return hysteresis;
+  }
+
+  public void setHysteresis(float hysteresis) {
+    this.hysteresis = hysteresis;
+  }
+}
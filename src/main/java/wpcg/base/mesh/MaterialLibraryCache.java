@@ -0,0 +1,311 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.base.mesh;
+
+import com.jme3.math.ColorRGBA;
+import wpcg.base.Logger;
+
+import java.io.*;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide cache for parsed material (MTL) files, keyed by the file path
+ * and validated by modification time and size, so each material file is
+ * parsed only once while it is unchanged. Materials and colors are interned:
+ * equal materials (name, texture, color) are represented by one canonical
+ * instance, no matter how often and from which file they are loaded.
+ * Implemented as singleton, thread-safe.
+ * <p>
+ * The canonical materials and colors are shared by all meshes and must not
+ * be modified.
+ */
+public class MaterialLibraryCache {
+
+  private static final String OP_MAT_NEW_MAT = "newmtl";
+  private static final String OP_MAT_KD = "Kd";
+  private static final String OP_MAT_TEXTURE = "map_Kd";
+
+  /**
+   * Singleton instance.
+   */
+  private static final MaterialLibraryCache instance =
+          new MaterialLibraryCache();
+
+  /**
+   * Content of a material file.
+   */
+  static final class Library {
+    /**
+     * Materials by name in file order.
+     */
+    final Map<String, Material> materials;
+
+    /**
+     * Last material defined in the file (the import continues with it).
+     */
+    final Material lastMaterial;
+
+    final long lastModified;
+    final long length;
+
+    Library(Map<String, Material> materials, Material lastMaterial,
+            long lastModified, long length) {
+      this.materials = Collections.unmodifiableMap(materials);
+      this.lastMaterial = lastMaterial;
+      this.lastModified = lastModified;
+      this.length = length;
+    }
+  }
+
+  private final Map<String, Library> libraries = new ConcurrentHashMap<>();
+  private final Map<MaterialKey, Material> materials =
+          new ConcurrentHashMap<>();
+  private final Map<ColorKey, ColorRGBA> colors = new ConcurrentHashMap<>();
+
+  private MaterialLibraryCache() {
+  }
+
+  public static MaterialLibraryCache getInstance() {
+    return instance;
+  }
+
+  /**
+   * Returns the content of the material file (relative to the resources
+   * directory, see ObjReader). The file is parsed if it is not cached or has
+   * changed since it was parsed. If the file cannot be read, the materials
+   * parsed so far are returned (nothing is cached).
+   */
+  Library getLibrary(String filename) {
+    File file = ObjReader.getFile(filename);
+    String key = file.toPath().toAbsolutePath().normalize().toString();
+    long lastModified = file.lastModified();
+    long length = file.length();
+    Library library = libraries.get(key);
+    if (library != null && library.lastModified == lastModified
+            && library.length == length && lastModified != 0) {
+      return library;
+    }
+
+    MaterialFileParser parser = new MaterialFileParser();
+    boolean success = parser.parse(filename);
+    Map<String, Material> canonicalMaterials = new LinkedHashMap<>();
+    for (Map.Entry<String, Material> entry : parser.materials.entrySet()) {
+      canonicalMaterials.put(entry.getKey(), intern(entry.getValue()));
+    }
+    library = new Library(canonicalMaterials, parser.currentMaterial != null
+            ? intern(parser.currentMaterial) : null, lastModified, length);
+    if (success) {
+      libraries.put(key, library);
+    }
+    return library;
+  }
+
+  /**
+   * Returns the canonical instance of a material equal to the given one
+   * (same name, texture and color). The given material must not be modified
+   * afterwards, it may become the canonical instance.
+   */
+  public Material intern(Material material) {
+    ColorRGBA color = intern(material.getColor());
+    MaterialKey key = new MaterialKey(material.getName(),
+            material.getTextureFilename(), color);
+    return materials.computeIfAbsent(key, k -> {
+      material.setColor(color);
+      return material;
+    });
+  }
+
+  /**
+   * Returns the canonical instance of a color equal to the given one.
+   */
+  public ColorRGBA intern(ColorRGBA color) {
+    return colors.computeIfAbsent(new ColorKey(color), k -> color);
+  }
+
+  /**
+   * Remove all cached files and canonical instances.
+   */
+  public void clear() {
+    libraries.clear();
+    materials.clear();
+    colors.clear();
+  }
+
+  public int getNumberOfLibraries() {
+    return libraries.size();
+  }
+
+  public int getNumberOfMaterials() {
+    return materials.size();
+  }
+
+  /**
+   * Key for canonical materials, the color is already canonical.
+   */
+  private static final class MaterialKey {
+    private final String name;
+    private final String textureFilename;
+    private final ColorRGBA color;
+
+    MaterialKey(String name, String textureFilename, ColorRGBA color) {
+      this.name = name;
+      this.textureFilename = textureFilename;
+      this.color = color;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof MaterialKey)) {
+        return false;
+      }
+      MaterialKey other = (MaterialKey) o;
+      return color == other.color && Objects.equals(name, other.name)
+              && Objects.equals(textureFilename, other.textureFilename);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(name, textureFilename,
+              System.identityHashCode(color));
+    }
+  }
+
+  /**
+   * Key for canonical colors (exact float bits).
+   */
+  private static final class ColorKey {
+    private final int r;
+    private final int g;
+    private final int b;
+    private final int a;
+
+    ColorKey(ColorRGBA color) {
+      r = Float.floatToIntBits(color.r);
+      g = Float.floatToIntBits(color.g);
+      b = Float.floatToIntBits(color.b);
+      a = Float.floatToIntBits(color.a);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof ColorKey)) {
+        return false;
+      }
+      ColorKey other = (ColorKey) o;
+      return r == other.r && g == other.g && b == other.b && a == other.a;
+    }
+
+    @Override
+    public int hashCode() {
+      return ((r * 31 + g) * 31 + b) * 31 + a;
+    }
+  }
+
+  /**
+   * Line-based parser for a single material file.
+   */
+  private static final class MaterialFileParser {
+    private final Map<String, Material> materials = new LinkedHashMap<>();
+    private Material currentMaterial = null;
+
+    /**
+     * Returns false if the file could not be read completely.
+     */
+    boolean parse(String materialFilename) {
+      //System.out.println("Trying to read material file " + materialFilename);
+      InputStream is = getInputStream(materialFilename);
+      try {
+        String strLine = "";
+        DataInputStream in = new DataInputStream(is);
+        BufferedReader br = new BufferedReader(new InputStreamReader(in));
+        while ((strLine = br.readLine()) != null) {
+          parseMaterialLine(strLine);
+        }
+        in.close();
+      } catch (Exception e) {
+        System.out.println(
+                "Error reading from the material file " + materialFilename + ".");
+        return false;
+      }
+      return true;
+    }
+
+    private void parseMaterialLine(String strLine) {
+      String line = trim(strLine);
+      String operator = getOperator(line);
+      if (operator.equals(OP_MAT_NEW_MAT)) {
+        String[] components = strLine.split("\\s+");
+        if (components.length >= 2) {
+          String materialId = components[1];
+          currentMaterial = new Material(materialId);
+          materials.put(materialId, currentMaterial);
+        }
+      } else if (operator.equals(OP_MAT_KD)) {
+        String[] components = strLine.split("\\s+");
+        if (components.length >= 4) {
+          ColorRGBA color = new ColorRGBA(Float.parseFloat(components[1]),
+                  Float.parseFloat(components[2]),
+                  Float.parseFloat(components[3]), 1);
+          currentMaterial.setColor(color);
+        }
+      } else if (operator.equals(OP_MAT_TEXTURE)) {
+        String[] components = strLine.split("\\s+");
+        if (components.length >= 2) {
+          String textureFilename = components[1];
+          if (textureFilename != null) {
+            textureFilename = textureFilename.trim();
+            if (textureFilename.length() != 0) {
+              currentMaterial.setTextureFilename(textureFilename);
+            }
+          }
+        }
+      }
+    }
+
+    /**
+     * Get in input stream from a file.
+     */
+    private static InputStream getInputStream(String filename) {
+      File initialFile = ObjReader.getFile(filename);
+      try {
+        return new FileInputStream(initialFile);
+      } catch (FileNotFoundException e) {
+        Logger.getInstance().error("Failed to read mesh file " + filename);
+        return null;
+      }
+    }
+
+    /**
+     * Entfernen doppelter Leerzeichen aus einer Zeile.
+     */
+    private static String trim(String strLine) {
+      String line = strLine.trim();
+      line = line.replaceAll("  ", " ");
+      int l = line.length();
+      while (l < line.length()) {
+        l = line.length();
+        line = line.replaceAll("  ", " ");
+      }
+      return line;
+    }
+
+    /**
+     * Extract the operator from a line.
+     */
+    private static String getOperator(String strLine) {
+      String[] components = strLine.split("\\s+");
+      if (components.length > 0) {
+        return components[0];
+      } else {
+        return "";
+      }
+    }
+  }
+}
@@ -0,0 +1,99 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.base.mesh;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the 'mtllib' lines of an OBJ file while the file content passes by
+ * block by block, without parsing the geometry.
+ */
+final class MaterialLibraryScanner {
+
+  private static final byte[] OP_MAT_LIB = "mtllib"
+          .getBytes(StandardCharsets.US_ASCII);
+  private static final int BLOCK_SIZE = 1 << 20;
+
+  private static final int SKIP_LINE = -1;
+  private static final int CAPTURE = -2;
+
+  private final List<String> materialLibraries;
+  private final ByteArrayOutputStream name = new ByteArrayOutputStream();
+
+  // Number of matched operator bytes at the start of the line, or state
+  private int state = 0;
+
+  MaterialLibraryScanner(List<String> materialLibraries) {
+    this.materialLibraries = materialLibraries;
+  }
+
+  /**
+   * Returns the material files referenced in the OBJ file (relative to the
+   * OBJ file) in file order.
+   */
+  static List<String> findMaterialLibraries(File file) throws IOException {
+    List<String> materialLibraries = new ArrayList<>();
+    MaterialLibraryScanner scanner = new MaterialLibraryScanner(
+            materialLibraries);
+    try (FileChannel channel = FileChannel.open(file.toPath(),
+            StandardOpenOption.READ)) {
+      byte[] block = new byte[BLOCK_SIZE];
+      int n;
+      while ((n = channel.read(ByteBuffer.wrap(block))) >= 0) {
+        scanner.scan(block, n);
+      }
+    }
+    scanner.endOfLine();
+    return materialLibraries;
+  }
+
+  void scan(byte[] block, int length) {
+    for (int i = 0; i < length; i++) {
+      if (state == SKIP_LINE) {
+        // Fast forward to the end of the line
+        while (i < length && block[i] != '\n' && block[i] != '\r') {
+          i++;
+        }
+        if (i == length) {
+          return;
+        }
+      }
+      byte c = block[i];
+      boolean blank = c == ' ' || c == '\t';
+      if (c == '\n' || c == '\r') {
+        endOfLine();
+      } else if (state == CAPTURE) {
+        name.write(c);
+      } else if (state == 0 && blank) {
+        // Skip leading blanks
+      } else if (state < OP_MAT_LIB.length) {
+        state = c == OP_MAT_LIB[state] ? state + 1 : SKIP_LINE;
+      } else {
+        state = blank ? CAPTURE : SKIP_LINE;
+      }
+    }
+  }
+
+  void endOfLine() {
+    if (state == CAPTURE) {
+      String[] tokens = new String(name.toByteArray(),
+              StandardCharsets.UTF_8).trim().split("\\s+");
+      if (tokens[0].length() > 0) {
+        materialLibraries.add(tokens[0]);
+      }
+    }
+    name.reset();
+    state = 0;
+  }
+}
@@ -0,0 +1,279 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.base.mesh;
+
+import java.util.Arrays;
+
+/**
+ * Neighborhood information of a triangle mesh in compressed sparse row (CSR)
+ * layout: an offset array and a flat index array, no per-vertex objects.
+ * <p>
+ * The vertex-to-triangle index is built in the constructor, the edge index is
+ * built on the first edge query. Edges are undirected and grouped by their
+ * smaller vertex index. Memory use is linear: (V + 1 + 3T) ints for the vertex
+ * index and (V + 1 + 2E + 1 + 3T) ints for the edge index.
+ * <p>
+ * An adjacency object describes the topology at the time of construction, it
+ * must not be used after the topology changed. Use TriangleMesh.getAdjacency()
+ * to get an instance which is rebuilt when needed.
+ */
+public class MeshAdjacency {
+
+  /**
+   * Number of vertices.
+   */
+  private final int numberOfVertices;
+
+  /**
+   * Triangles of vertex v: vertexTriangles[vertexOffsets[v]..vertexOffsets[v+1]-1].
+   */
+  private final int[] vertexOffsets;
+  private final int[] vertexTriangles;
+
+  /**
+   * Edges with smaller vertex v: edges vertexEdgeOffsets[v]..vertexEdgeOffsets[v+1]-1,
+   * their larger vertex is stored in edgeOtherVertex (ascending per vertex).
+   */
+  private int[] vertexEdgeOffsets;
+  private int[] edgeOtherVertex;
+
+  /**
+   * Triangles of edge e: edgeTriangles[edgeOffsets[e]..edgeOffsets[e+1]-1].
+   */
+  private int[] edgeOffsets;
+  private int[] edgeTriangles;
+
+  /**
+   * Number of edges, -1 if the edge index is not built yet.
+   */
+  private volatile int numberOfEdges;
+
+  /**
+   * Triangle vertex indices of the mesh, used to build the edge index.
+   */
+  private final int[] indices;
+
+  MeshAdjacency(TriangleMesh mesh) {
+    numberOfVertices = mesh.vertices.size;
+    int numberOfTriangles = mesh.triangles.size;
+    indices = mesh.triangles.vertexIndices;
+
+    // Count, prefix sum, fill
+    vertexOffsets = new int[numberOfVertices + 1];
+    for (int i = 0; i < 3 * numberOfTriangles; i++) {
+      int v = indices[i];
+      if (v >= 0 && v < numberOfVertices) {
+        vertexOffsets[v + 1]++;
+      }
+    }
+    for (int v = 0; v < numberOfVertices; v++) {
+      vertexOffsets[v + 1] += vertexOffsets[v];
+    }
+    vertexTriangles = new int[vertexOffsets[numberOfVertices]];
+    int[] cursor = Arrays.copyOf(vertexOffsets, numberOfVertices);
+    for (int i = 0; i < 3 * numberOfTriangles; i++) {
+      int v = indices[i];
+      if (v >= 0 && v < numberOfVertices) {
+        vertexTriangles[cursor[v]++] = i / 3;
+      }
+    }
+    numberOfEdges = -1;
+  }
+
+  // +++ VERTEX -> TRIANGLES +++++++++++++++++++
+
+  /**
+   * Number of triangles using the vertex.
+   */
+  public int getNumberOfVertexTriangles(int vertexIndex) {
+    return vertexOffsets[vertexIndex + 1] - vertexOffsets[vertexIndex];
+  }
+
+  /**
+   * Returns the i'th triangle using the vertex (triangles are sorted by index).
+   */
+  public int getVertexTriangle(int vertexIndex, int i) {
+    return vertexTriangles[vertexOffsets[vertexIndex] + i];
+  }
+
+  /**
+   * Raw CSR offsets (length V + 1), do not modify.
+   */
+  public int[] getVertexTriangleOffsets() {
+    return vertexOffsets;
+  }
+
+  /**
+   * Raw CSR triangle indices, do not modify.
+   */
+  public int[] getVertexTriangles() {
+    return vertexTriangles;
+  }
+
+  // +++ EDGES +++++++++++++++++++++++++++++++++
+
+  /**
+   * Number of distinct undirected edges.
+   */
+  public int getNumberOfEdges() {
+    buildEdgeIndex();
+    return numberOfEdges;
+  }
+
+  /**
+   * Returns the smaller (endpoint 0) or larger (endpoint 1) vertex index of
+   * the edge.
+   */
+  public int getEdgeVertex(int edgeIndex, int endpoint) {
+    buildEdgeIndex();
+    if (endpoint == 1) {
+      return edgeOtherVertex[edgeIndex];
+    }
+    // Binary search for the vertex whose edge range contains the edge
+    int lo = 0;
+    int hi = numberOfVertices - 1;
+    while (lo < hi) {
+      int mid = (lo + hi + 1) >>> 1;
+      if (vertexEdgeOffsets[mid] <= edgeIndex) {
+        lo = mid;
+      } else {
+        hi = mid - 1;
+      }
+    }
+    return lo;
+  }
+
+  /**
+   * Returns the index of the edge between the two vertices or -1 if the
+   * vertices are not connected.
+   */
+  public int findEdge(int vertexIndex1, int vertexIndex2) {
+    buildEdgeIndex();
+    int a = Math.min(vertexIndex1, vertexIndex2);
+    int b = Math.max(vertexIndex1, vertexIndex2);
+    if (a < 0 || b >= numberOfVertices) {
+      return -1;
+    }
+    int from = vertexEdgeOffsets[a];
+    int to = vertexEdgeOffsets[a + 1];
+    int pos = Arrays.binarySearch(edgeOtherVertex, from, to, b);
+    return pos >= 0 ? pos : -1;
+  }
+
+  /**
+   * Number of triangles using the edge (1 for boundary edges, 2 for manifold
+   * inner edges).
+   */
+  public int getNumberOfEdgeTriangles(int edgeIndex) {
+    buildEdgeIndex();
+    return edgeOffsets[edgeIndex + 1] - edgeOffsets[edgeIndex];
+  }
+
+  /**
+   * Returns the i'th triangle using the edge.
+   */
+  public int getEdgeTriangle(int edgeIndex, int i) {
+    buildEdgeIndex();
+    return edgeTriangles[edgeOffsets[edgeIndex] + i];
+  }
+
+  /**
+   * An edge is a boundary edge if it is used by exactly one triangle.
+   */
+  public boolean isBoundaryEdge(int edgeIndex) {
+    return getNumberOfEdgeTriangles(edgeIndex) == 1;
+  }
+
+  /**
+   * Build the edge index from the vertex index. Candidate edges of each vertex
+   * are collected in a small scratch buffer, sorted and deduplicated; the
+   * triangles of an edge are the intersection of the (sorted) triangle lists of
+   * its endpoints.
+   */
+  private void buildEdgeIndex() {
+    if (numberOfEdges < 0) {
+      synchronized (this) {
+        if (numberOfEdges < 0) {
+          buildEdgeIndexLocked();
+        }
+      }
+    }
+  }
+
+  private void buildEdgeIndexLocked() {
+    vertexEdgeOffsets = new int[numberOfVertices + 1];
+    int[] other = new int[Math.max(16, vertexTriangles.length / 2)];
+    int[] scratch = new int[16];
+    int count = 0;
+    for (int a = 0; a < numberOfVertices; a++) {
+      vertexEdgeOffsets[a] = count;
+      int n = 0;
+      for (int k = vertexOffsets[a]; k < vertexOffsets[a + 1]; k++) {
+        int t = vertexTriangles[k];
+        for (int corner = 0; corner < 3; corner++) {
+          int b = indices[3 * t + corner];
+          if (b > a && b < numberOfVertices) {
+            if (n == scratch.length) {
+              scratch = Arrays.copyOf(scratch, 2 * n);
+            }
+            scratch[n++] = b;
+          }
+        }
+      }
+      Arrays.sort(scratch, 0, n);
+      for (int i = 0; i < n; i++) {
+        if (i > 0 && scratch[i] == scratch[i - 1]) {
+          continue;
+        }
+        if (count == other.length) {
+          other = Arrays.copyOf(other, count + (count >> 1) + 1);
+        }
+        other[count++] = scratch[i];
+      }
+    }
+    vertexEdgeOffsets[numberOfVertices] = count;
+    edgeOtherVertex = count == other.length ? other : Arrays.copyOf(other, count);
+
+    // Edge -> triangles
+    edgeOffsets = new int[count + 1];
+    int[] triangles = new int[Math.max(16, vertexTriangles.length)];
+    int numberOfEntries = 0;
+    for (int a = 0; a < numberOfVertices; a++) {
+      for (int e = vertexEdgeOffsets[a]; e < vertexEdgeOffsets[a + 1]; e++) {
+        edgeOffsets[e] = numberOfEntries;
+        int b = edgeOtherVertex[e];
+        int i = vertexOffsets[a];
+        int j = vertexOffsets[b];
+        while (i < vertexOffsets[a + 1] && j < vertexOffsets[b + 1]) {
+          int ta = vertexTriangles[i];
+          int tb = vertexTriangles[j];
+          if (ta < tb) {
+            i++;
+          } else if (tb < ta) {
+            j++;
+          } else {
+            if (numberOfEntries == triangles.length) {
+              triangles = Arrays.copyOf(triangles,
+                      numberOfEntries + (numberOfEntries >> 1) + 1);
+            }
+            triangles[numberOfEntries++] = ta;
+            // Skip duplicates (degenerated triangles list a vertex twice)
+            while (i < vertexOffsets[a + 1] && vertexTriangles[i] == ta) {
+              i++;
+            }
+            while (j < vertexOffsets[b + 1] && vertexTriangles[j] == tb) {
+              j++;
+            }
+          }
+        }
+      }
+    }
+    edgeOffsets[count] = numberOfEntries;
+    edgeTriangles = numberOfEntries == triangles.length ? triangles
+            : Arrays.copyOf(triangles, numberOfEntries);
+    numberOfEdges = count;
+  }
+}
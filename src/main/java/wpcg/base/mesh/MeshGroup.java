@@ -0,0 +1,85 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.base.mesh;
+
+/**
+ * A group of consecutive triangles in a triangle mesh which share a material
+ * (e.g. an OBJ 'o'/'usemtl' section). All groups of a mesh share the vertex and
+ * texture coordinate lists of the mesh, a group only stores its triangle range.
+ */
+public class MeshGroup {
+
+  /**
+   * Name of the group (OBJ object name), may be null.
+   */
+  private final String name;
+
+  /**
+   * Material of the group, may be null.
+   */
+  private final Material material;
+
+  /**
+   * Index of the first triangle in the mesh.
+   */
+  int firstTriangle;
+
+  /**
+   * Number of triangles in the group.
+   */
+  int numberOfTriangles;
+
+  public MeshGroup(String name, Material material, int firstTriangle,
+                   int numberOfTriangles) {
+    this.name = name;
+    this.material = material;
+    this.firstTriangle = firstTriangle;
+    this.numberOfTriangles = numberOfTriangles;
+  }
+
+  /**
+   * Copy constructor.
+   */
+  public MeshGroup(MeshGroup group) {
+    this(group.name, group.material, group.firstTriangle,
+            group.numberOfTriangles);
+  }
+
+  @Override
+  public String toString() {
+    return name + " (" + material + "): triangles " + firstTriangle + " - "
+            + (firstTriangle + numberOfTriangles - 1);
+  }
+
+  // +++ GETTER/SETTER +++++++++++++++++++++++++
+
+  public String getName() {
+    return name;
+  }
+
+  public Material getMaterial() {
+    return material;
+  }
+
+  /**
+   * Texture filename of the material, null if there is none.
+   */
+  public String getTextureName() {
+    if (material == null || material.getTextureFilename() == null
+            || material.getTextureFilename().length() == 0) {
+      return null;
+    }
+    return material.getTextureFilename();
+  }
+
+  public int getFirstTriangle() {
+    return firstTriangle;
+  }
+
+  public int getNumberOfTriangles() {
+    return numberOfTriangles;
+  }
+}
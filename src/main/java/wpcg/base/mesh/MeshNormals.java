@@ -0,0 +1,156 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.base.mesh;
+
+import wpcg.base.Logger;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Parallel computation of facet and vertex normals. Both passes work directly
+ * on the packed arrays of the mesh and do not allocate inside the loops.
+ * <p>
+ * The vertex normals are gathered per vertex over its adjacent triangles (in
+ * ascending triangle order), so the result does not depend on the number of
+ * threads.
+ */
+public class MeshNormals {
+
+  private MeshNormals() {
+  }
+
+  /**
+   * Compute the (normalized) facet normals of all triangles.
+   */
+  public static void computeTriangleNormals(TriangleMesh mesh) {
+    computeTriangleNormals(mesh, null);
+  }
+
+  /**
+   * Compute the facet normals and the area-weighted vertex normals (smooth
+   * shading over all adjacent triangles).
+   */
+  public static void computeVertexNormals(TriangleMesh mesh) {
+    computeVertexNormals(mesh, (float) Math.PI);
+  }
+
+  /**
+   * Compute the facet normals and the area-weighted vertex normals. Only
+   * triangles whose normal deviates at most creaseAngle (radians) from the
+   * normal of the largest adjacent triangle contribute to a vertex normal, so
+   * hard edges are not smoothed over. Vertices are not split, a vertex on a
+   * crease gets the normal of its dominant side.
+   */
+  public static void computeVertexNormals(TriangleMesh mesh, float creaseAngle) {
+    float[] areas = new float[mesh.triangles.size];
+    computeTriangleNormals(mesh, areas);
+
+    MeshAdjacency adjacency = mesh.getAdjacency();
+    int[] offsets = adjacency.getVertexTriangleOffsets();
+    int[] vertexTriangles = adjacency.getVertexTriangles();
+    float[] facetNormals = mesh.triangles.normals;
+    float[] vertexNormals = mesh.vertices.normals;
+    float cosThreshold = creaseAngle >= Math.PI ? -2
+            : (float) Math.cos(creaseAngle);
+
+    ParallelRange.forEach(mesh.vertices.size, (from, to) -> {
+      for (int v = from; v < to; v++) {
+        int begin = offsets[v];
+        int end = offsets[v + 1];
+        if (begin == end) {
+          continue;
+        }
+
+        // Dominant (largest) adjacent triangle
+        int dominant = vertexTriangles[begin];
+        for (int k = begin + 1; k < end; k++) {
+          if (areas[vertexTriangles[k]] > areas[dominant]) {
+            dominant = vertexTriangles[k];
+          }
+        }
+        float dx = facetNormals[3 * dominant];
+        float dy = facetNormals[3 * dominant + 1];
+        float dz = facetNormals[3 * dominant + 2];
+
+        float nx = 0;
+        float ny = 0;
+        float nz = 0;
+        for (int k = begin; k < end; k++) {
+          int t = vertexTriangles[k];
+          float tx = facetNormals[3 * t];
+          float ty = facetNormals[3 * t + 1];
+          float tz = facetNormals[3 * t + 2];
+          if (tx * dx + ty * dy + tz * dz < cosThreshold) {
+            continue;
+          }
+          float w = areas[t];
+          nx += w * tx;
+          ny += w * ty;
+          nz += w * tz;
+        }
+        float norm = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (norm > 1e-12f) {
+          vertexNormals[3 * v] = nx / norm;
+          vertexNormals[3 * v + 1] = ny / norm;
+          vertexNormals[3 * v + 2] = nz / norm;
+        } else {
+          vertexNormals[3 * v] = dx;
+          vertexNormals[3 * v + 1] = dy;
+          vertexNormals[3 * v + 2] = dz;
+        }
+      }
+    });
+  }
+
+  /**
+   * Facet normal pass, optionally writes twice the triangle areas (the length
+   * of the cross product) into areas.
+   */
+  private static void computeTriangleNormals(TriangleMesh mesh, float[] areas) {
+    float[] p = mesh.vertices.positions;
+    int[] indices = mesh.triangles.vertexIndices;
+    float[] normals = mesh.triangles.normals;
+    AtomicInteger numberOfInvalid = new AtomicInteger();
+    ParallelRange.forEach(mesh.triangles.size, (from, to) -> {
+      int invalid = 0;
+      for (int t = from; t < to; t++) {
+        int a = indices[3 * t] * 3;
+        int b = indices[3 * t + 1] * 3;
+        int c = indices[3 * t + 2] * 3;
+        float ux = p[b] - p[a];
+        float uy = p[b + 1] - p[a + 1];
+        float uz = p[b + 2] - p[a + 2];
+        float vx = p[c] - p[a];
+        float vy = p[c + 1] - p[a + 1];
+        float vz = p[c + 2] - p[a + 2];
+        float nx = uy * vz - uz * vy;
+        float ny = uz * vx - ux * vz;
+        float nz = ux * vy - uy * vx;
+        float norm = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (norm > 1e-8) {
+          nx /= norm;
+          ny /= norm;
+          nz /= norm;
+        } else {
+          invalid++;
+        }
+        normals[3 * t] = nx;
+        normals[3 * t + 1] = ny;
+        normals[3 * t + 2] = nz;
+        if (areas != null) {
+          areas[t] = norm;
+        }
+      }
+      if (invalid > 0) {
+        numberOfInvalid.addAndGet(invalid);
+      }
+    });
+    if (numberOfInvalid.get() > 0) {
+      Logger.getInstance().error("Invalid triangle - cannot compute " +
+              "normal (" + numberOfInvalid.get() + " triangles).");
+    }
+  }
+}
@@ -0,0 +1,1003 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.base.mesh;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Mesh simplification with the quadric error metric (Garland and Heckbert)
+ * and half-edge collapses: a vertex is merged into one of its neighbors, the
+ * cost is the sum of both error quadrics evaluated at the position of the
+ * remaining vertex. The collapses are processed in cost order from a
+ * priority heap which holds the cheapest valid collapse of each vertex.
+ * <p>
+ * The remaining vertices keep their position, normal, color and texture
+ * coordinates, so no attributes have to be interpolated. UV seams, material
+ * (group) borders and open boundaries are preserved: a vertex on such a
+ * feature line may only slide along the line, vertices where feature lines
+ * meet, non-manifold vertices and vertices sharing their position with
+ * another vertex (split seams) are never removed. Collapses which would flip
+ * a triangle or change the topology are rejected.
+ * <p>
+ * The triangles keep their order, so each group of the result is the
+ * simplified group of the input.
+ */
+public class MeshSimplifier {
+
+  /**
+   * Weight of the constraint planes along feature lines, relative to the
+   * area-weighted plane quadrics of the triangles.
+   */
+  private static final double FEATURE_WEIGHT = 10;
+
+  /**
+   * A collapse is rejected if the normal of a moved triangle turns by more
+   * than acos(MIN_NORMAL_COS).
+   */
+  private static final double MIN_NORMAL_COS = 0.1;
+
+  /**
+   * A collapse is rejected if a moved triangle becomes a sliver: its height
+   * over the edge opposite the moved corner is less than this fraction of
+   * the edge length.
+   */
+  private static final double MIN_HEIGHT_RATIO = 1e-4;
+
+  private static final byte MANIFOLD = 0;
+  private static final byte FEATURE = 1;
+  private static final byte LOCKED = 2;
+
+  private final TriangleMesh source;
+  private final float[] positions;
+  private final int numberOfVertices;
+  private final int numberOfTriangles;
+
+  /**
+   * Current vertex and (canonical) texture coordinate per triangle corner.
+   */
+  private final int[] corners;
+  private final int[] texCoords;
+  private final float[] canonicalTexCoords;
+  private final int[] groupOfTriangle;
+  private final boolean[] removed;
+  private int numberOfRemainingTriangles;
+
+  /**
+   * Linked lists of the corners of each vertex.
+   */
+  private final int[] firstCorner;
+  private final int[] nextCorner;
+
+  private final double[] quadrics;
+  private final byte[] kinds;
+
+  /**
+   * Indexed min-heap of the vertices by the cost of their best collapse.
+   */
+  private final int[] heap;
+  private final double[] heapCost;
+  private final int[] heapPosition;
+  private final int[] target;
+  private int heapSize;
+  private boolean heapOrdered;
+
+  // Scratch buffers for the neighborhood queries
+  private final int[] mark;
+  private final int[] slot;
+  private int stamp;
+  private int[] edgeTriangles = new int[64];
+  private int[] neighbors = new int[32];
+  private int[] neighbors2 = new int[32];
+  private final int[] texMap = new int[8];
+
+  private MeshSimplifier(TriangleMesh mesh) {
+    source = mesh;
+    positions = mesh.vertices.positions;
+    numberOfVertices = mesh.vertices.size;
+    numberOfTriangles = mesh.triangles.size;
+    corners = Arrays.copyOf(mesh.triangles.vertexIndices,
+            3 * numberOfTriangles);
+    removed = new boolean[numberOfTriangles];
+    numberOfRemainingTriangles = numberOfTriangles;
+
+    groupOfTriangle = new int[numberOfTriangles];
+    Arrays.fill(groupOfTriangle, -1);
+    for (int g = 0; g < mesh.getNumberOfGroups(); g++) {
+      MeshGroup group = mesh.getGroup(g);
+      Arrays.fill(groupOfTriangle, group.firstTriangle,
+              group.firstTriangle + group.numberOfTriangles, g);
+    }
+
+    // Equal texture coordinates get the same index
+    texCoords = new int[3 * numberOfTriangles];
+    LongIntHashMap texCoordIndex = new LongIntHashMap(
+            Math.max(16, mesh.numberOfTextureCoordinates));
+    float[] uv = new float[2 * mesh.numberOfTextureCoordinates];
+    int numberOfTexCoords = 0;
+    for (int i = 0; i < 3 * numberOfTriangles; i++) {
+      int t = mesh.triangles.texCoordIndices[i];
+      if (t < 0 || t >= mesh.numberOfTextureCoordinates) {
+        texCoords[i] = -1;
+        continue;
+      }
+      float u = mesh.textureCoordinates[2 * t];
+      float v = mesh.textureCoordinates[2 * t + 1];
+      long key = ((long) Float.floatToIntBits(u) << 32)
+              | (Float.floatToIntBits(v) & 0xFFFFFFFFL);
+      int index = texCoordIndex.putIfAbsent(key, numberOfTexCoords);
+      if (index == LongIntHashMap.MISSING) {
+        index = numberOfTexCoords++;
+        uv[2 * index] = u;
+        uv[2 * index + 1] = v;
+      }
+      texCoords[i] = index;
+    }
+    canonicalTexCoords = uv;
+
+    firstCorner = new int[numberOfVertices];
+    nextCorner = new int[3 * numberOfTriangles];
+    Arrays.fill(firstCorner, -1);
+    for (int c = 3 * numberOfTriangles - 1; c >= 0; c--) {
+      int v = corners[c];
+      nextCorner[c] = firstCorner[v];
+      firstCorner[v] = c;
+    }
+    for (int t = 0; t < numberOfTriangles; t++) {
+      int a = corners[3 * t];
+      int b = corners[3 * t + 1];
+      int c = corners[3 * t + 2];
+      if (a == b || b == c || a == c) {
+        removed[t] = true;
+        numberOfRemainingTriangles--;
+      }
+    }
+
+    mark = new int[numberOfVertices];
+    slot = new int[numberOfVertices];
+    quadrics = new double[10 * numberOfVertices];
+    kinds = new byte[numberOfVertices];
+    heap = new int[numberOfVertices];
+    heapPosition = new int[numberOfVertices];
+    heapCost = new double[numberOfVertices];
+    target = new int[numberOfVertices];
+    Arrays.fill(heapPosition, -1);
+  }
+
+  /**
+   * Returns a simplified copy of the mesh with at most targetTriangles
+   * triangles (or as few as possible if the budget cannot be reached without
+   * violating the constraints).
+   */
+  public static TriangleMesh simplify(TriangleMesh mesh, int targetTriangles) {
+    return createLodChain(mesh, targetTriangles).get(0);
+  }
+
+  /**
+   * Returns one simplified mesh per triangle budget (in the order of the
+   * budgets). All levels are taken from a single simplification run: the
+   * collapses down to a budget are the same for all levels, so each level
+   * only continues where the previous (finer) level stopped.
+   */
+  public static List<TriangleMesh> createLodChain(TriangleMesh mesh,
+                                                  int... triangleBudgets) {
+    Integer[] order = new Integer[triangleBudgets.length];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    // Finest level first
+    Arrays.sort(order, (a, b) -> Integer.compare(triangleBudgets[b],
+            triangleBudgets[a]));
+
+    TriangleMesh[] levels = new TriangleMesh[triangleBudgets.length];
+    MeshSimplifier simplifier = null;
+    for (int i : order) {
+      if (triangleBudgets[i] >= mesh.triangles.size) {
+        levels[i] = new TriangleMesh(mesh);
+        continue;
+      }
+      if (simplifier == null) {
+        simplifier = new MeshSimplifier(mesh);
+        simplifier.init();
+      }
+      simplifier.collapse(triangleBudgets[i]);
+      levels[i] = simplifier.createMesh();
+    }
+    return Arrays.asList(levels);
+  }
+
+  /**
+   * Create the LOD chains of several meshes in parallel, see
+   * createLodChain().
+   */
+  public static List<List<TriangleMesh>> createLodChains(
+          List<TriangleMesh> meshes, int... triangleBudgets) {
+    List<List<TriangleMesh>> chains = new ArrayList<>(Collections.nCopies(
+            meshes.size(), null));
+    ParallelRange.forEach(meshes.size(), 1, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        chains.set(i, createLodChain(meshes.get(i), triangleBudgets));
+      }
+    });
+    return chains;
+  }
+
+  /**
+   * Triangle budgets for a chain of numberOfLevels levels, each level has
+   * 'ratio' times the triangles of the previous one (the first level is the
+   * first reduction, not the original mesh).
+   */
+  public static int[] getBudgets(int numberOfTriangles, int numberOfLevels,
+                                 float ratio) {
+    int[] budgets = new int[numberOfLevels];
+    double budget = numberOfTriangles;
+    for (int i = 0; i < numberOfLevels; i++) {
+      budget *= ratio;
+      budgets[i] = (int) Math.max(1, budget);
+    }
+    return budgets;
+  }
+
+  /**
+   * Compute the quadrics and vertex kinds and fill the heap.
+   */
+  private void init() {
+    for (int t = 0; t < numberOfTriangles; t++) {
+      if (!removed[t]) {
+        addTriangleQuadric(t);
+      }
+    }
+    for (int v = 0; v < numberOfVertices; v++) {
+      classify(v);
+    }
+    lockSharedPositions();
+    // Fill the heap unordered, then build it bottom-up
+    for (int v = 0; v < numberOfVertices; v++) {
+      evaluate(v, false);
+    }
+    for (int i = heapSize / 2 - 1; i >= 0; i--) {
+      siftDown(i);
+    }
+    heapOrdered = true;
+  }
+
+  /**
+   * Collapse until at most targetTriangles triangles remain or no valid
+   * collapse is left.
+   */
+  private void collapse(int targetTriangles) {
+    while (numberOfRemainingTriangles > targetTriangles && heapSize > 0) {
+      int u = heap[0];
+      int v = target[u];
+      if (!isValid(u, v)) {
+        // The cheapest collapse of u is not valid (anymore)
+        evaluate(u, true);
+        continue;
+      }
+      collapse(u, v);
+      removeFromHeap(u);
+      evaluate(v, false);
+
+      // The quadric of v grew, so only the collapses into v became more
+      // expensive; the other neighbors only gained v as candidate
+      int[] affected = Arrays.copyOf(neighbors, gatherNeighbors(v, false));
+      for (int x : affected) {
+        if (kinds[x] == LOCKED) {
+          continue;
+        }
+        if (heapPosition[x] < 0 || target[x] == u || target[x] == v) {
+          evaluate(x, false);
+        } else if (kinds[x] == MANIFOLD || isFeatureEdge(x, v)) {
+          double c = collapseCost(x, v);
+          if (c < heapCost[heapPosition[x]]) {
+            target[x] = v;
+            updateHeap(x, c);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Merge vertex u into vertex v.
+   */
+  private void collapse(int u, int v) {
+    int mapSize = buildTexMap(u, v);
+    int last = -1;
+    for (int c = firstCorner[u]; c >= 0; c = nextCorner[c]) {
+      last = c;
+      int t = c / 3;
+      if (removed[t]) {
+        continue;
+      }
+      if (contains(t, v)) {
+        removed[t] = true;
+        numberOfRemainingTriangles--;
+        continue;
+      }
+      corners[c] = v;
+      texCoords[c] = mapTexCoord(texCoords[c], mapSize);
+    }
+    if (last >= 0) {
+      nextCorner[last] = firstCorner[v];
+      firstCorner[v] = firstCorner[u];
+    }
+    firstCorner[u] = -1;
+    compactCorners(v);
+    for (int i = 0; i < 10; i++) {
+      quadrics[10 * v + i] += quadrics[10 * u + i];
+    }
+  }
+
+  /**
+   * Find the cheapest collapse of u and update the heap. Without 'validate',
+   * the validity is only checked when the collapse is taken from the heap.
+   */
+  private void evaluate(int u, boolean validate) {
+    if (kinds[u] == LOCKED || firstCorner[u] < 0) {
+      removeFromHeap(u);
+      return;
+    }
+    compactCorners(u);
+    if (!validate) {
+      int n = kinds[u] == FEATURE ? gatherFeatureNeighbors(u)
+              : gatherNeighbors(u, false);
+      int best = -1;
+      double bestCost = Double.POSITIVE_INFINITY;
+      for (int i = 0; i < n; i++) {
+        int v = neighbors[i];
+        double c = collapseCost(u, v);
+        if (best < 0 || c < bestCost) {
+          best = v;
+          bestCost = c;
+        }
+      }
+      if (best < 0) {
+        removeFromHeap(u);
+      } else {
+        target[u] = best;
+        updateHeap(u, bestCost);
+      }
+      return;
+    }
+    int n = gatherNeighbors(u, false);
+    int[] candidates = Arrays.copyOf(neighbors, n);
+    double bestCost = Double.POSITIVE_INFINITY;
+    int best = -1;
+    // Check the validity in cost order, usually the cheapest one is valid
+    double[] costs = new double[n];
+    for (int i = 0; i < n; i++) {
+      costs[i] = collapseCost(u, candidates[i]);
+    }
+    for (int k = 0; k < n; k++) {
+      int min = -1;
+      for (int i = 0; i < n; i++) {
+        if (costs[i] < Double.POSITIVE_INFINITY
+                && (min < 0 || costs[i] < costs[min])) {
+          min = i;
+        }
+      }
+      if (min < 0) {
+        break;
+      }
+      if (isValid(u, candidates[min])) {
+        bestCost = costs[min];
+        best = candidates[min];
+        break;
+      }
+      costs[min] = Double.POSITIVE_INFINITY;
+    }
+    if (best < 0) {
+      removeFromHeap(u);
+      return;
+    }
+    target[u] = best;
+    updateHeap(u, bestCost);
+  }
+
+  /**
+   * Error of the collapse u -> v: sum of both quadrics at the position of v.
+   */
+  private double collapseCost(int u, int v) {
+    double x = positions[3 * v];
+    double y = positions[3 * v + 1];
+    double z = positions[3 * v + 2];
+    int a = 10 * u;
+    int b = 10 * v;
+    double error = 0;
+    for (int k = 0; k < 2; k++) {
+      int q = k == 0 ? a : b;
+      error += quadrics[q] * x * x + 2 * quadrics[q + 1] * x * y
+              + 2 * quadrics[q + 2] * x * z + 2 * quadrics[q + 3] * x
+              + quadrics[q + 4] * y * y + 2 * quadrics[q + 5] * y * z
+              + 2 * quadrics[q + 6] * y + quadrics[q + 7] * z * z
+              + 2 * quadrics[q + 8] * z + quadrics[q + 9];
+    }
+    return Math.max(0, error);
+  }
+
+  /**
+   * Checks the kind rules, the texture coordinate mapping, the link condition
+   * and triangle flips for the collapse u -> v.
+   */
+  private boolean isValid(int u, int v) {
+    if (kinds[u] == LOCKED || u == v || firstCorner[u] < 0
+            || firstCorner[v] < 0) {
+      return false;
+    }
+    int shared = 0;
+    for (int c = firstCorner[u]; c >= 0; c = nextCorner[c]) {
+      int t = c / 3;
+      if (!removed[t] && contains(t, v)) {
+        shared++;
+      }
+    }
+    if (shared == 0) {
+      return false;
+    }
+    if (kinds[u] == FEATURE && !isFeatureEdge(u, v)) {
+      return false;
+    }
+    if (buildTexMap(u, v) < 0) {
+      return false;
+    }
+
+    // Link condition: the common neighbors are exactly the opposite vertices
+    // of the triangles at the edge
+    int nu = gatherNeighbors(u, false);
+    int nv = gatherNeighbors(v, true);
+    stamp++;
+    for (int i = 0; i < nu; i++) {
+      mark[neighbors[i]] = stamp;
+    }
+    int common = 0;
+    for (int i = 0; i < nv; i++) {
+      if (mark[neighbors2[i]] == stamp) {
+        common++;
+      }
+    }
+    if (common != shared) {
+      return false;
+    }
+
+    // Triangles moving with u must not flip
+    for (int c = firstCorner[u]; c >= 0; c = nextCorner[c]) {
+      int t = c / 3;
+      if (removed[t] || contains(t, v)) {
+        continue;
+      }
+      if (!keepsOrientation(t, c - 3 * t, v)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns true if triangle t keeps its orientation if the corner is moved
+   * to the position of v.
+   */
+  private boolean keepsOrientation(int t, int corner, int v) {
+    int p0 = 3 * corners[3 * t + corner];
+    int p1 = 3 * corners[3 * t + (corner + 1) % 3];
+    int p2 = 3 * corners[3 * t + (corner + 2) % 3];
+    int pv = 3 * v;
+    // Both triangles share the edge p1-p2
+    double ex = positions[p2] - positions[p1];
+    double ey = positions[p2 + 1] - positions[p1 + 1];
+    double ez = positions[p2 + 2] - positions[p1 + 2];
+    double ax = positions[p0] - positions[p1];
+    double ay = positions[p0 + 1] - positions[p1 + 1];
+    double az = positions[p0 + 2] - positions[p1 + 2];
+    double bx = positions[pv] - positions[p1];
+    double by = positions[pv + 1] - positions[p1 + 1];
+    double bz = positions[pv + 2] - positions[p1 + 2];
+    double nax = ey * az - ez * ay;
+    double nay = ez * ax - ex * az;
+    double naz = ex * ay - ey * ax;
+    double nbx = ey * bz - ez * by;
+    double nby = ez * bx - ex * bz;
+    double nbz = ex * by - ey * bx;
+    double dot = nax * nbx + nay * nby + naz * nbz;
+    double lengths = Math.sqrt((nax * nax + nay * nay + naz * naz)
+            * (nbx * nbx + nby * nby + nbz * nbz));
+    // No slivers: the height over the shared edge must not vanish
+    double edgeLength2 = ex * ex + ey * ey + ez * ez;
+    return dot > MIN_NORMAL_COS * lengths
+            && nbx * nbx + nby * nby + nbz * nbz
+            > MIN_HEIGHT_RATIO * MIN_HEIGHT_RATIO * edgeLength2 * edgeLength2;
+  }
+
+  /**
+   * Unnormalized normal of the triangle (position offsets).
+   */
+  private double[] normal(int p0, int p1, int p2) {
+    double ax = positions[p1] - positions[p0];
+    double ay = positions[p1 + 1] - positions[p0 + 1];
+    double az = positions[p1 + 2] - positions[p0 + 2];
+    double bx = positions[p2] - positions[p0];
+    double by = positions[p2 + 1] - positions[p0 + 1];
+    double bz = positions[p2 + 2] - positions[p0 + 2];
+    return new double[]{ay * bz - az * by, az * bx - ax * bz,
+            ax * by - ay * bx};
+  }
+
+  /**
+   * Texture coordinate mapping of the collapse u -> v: the texture
+   * coordinate of u in a triangle at the edge is replaced by the one of v in
+   * the same triangle. Returns the number of pairs in texMap or -1 if the
+   * mapping is ambiguous or does not cover all triangles of u.
+   */
+  private int buildTexMap(int u, int v) {
+    int size = 0;
+    for (int c = firstCorner[u]; c >= 0; c = nextCorner[c]) {
+      int t = c / 3;
+      if (removed[t] || !contains(t, v)) {
+        continue;
+      }
+      int from = texCoords[c];
+      int to = texCoords[cornerOf(t, v)];
+      int existing = findTexMap(from, size);
+      if (existing == Integer.MIN_VALUE) {
+        if (2 * size + 2 > texMap.length) {
+          return -1;
+        }
+        texMap[2 * size] = from;
+        texMap[2 * size + 1] = to;
+        size++;
+      } else if (existing != to) {
+        return -1;
+      }
+    }
+    for (int c = firstCorner[u]; c >= 0; c = nextCorner[c]) {
+      if (!removed[c / 3] && findTexMap(texCoords[c], size)
+              == Integer.MIN_VALUE) {
+        return -1;
+      }
+    }
+    return size;
+  }
+
+  private int findTexMap(int from, int size) {
+    for (int i = 0; i < size; i++) {
+      if (texMap[2 * i] == from) {
+        return texMap[2 * i + 1];
+      }
+    }
+    return Integer.MIN_VALUE;
+  }
+
+  private int mapTexCoord(int from, int size) {
+    int to = findTexMap(from, size);
+    return to == Integer.MIN_VALUE ? from : to;
+  }
+
+  /**
+   * An edge is a feature edge if it is a boundary edge or the two triangles
+   * belong to different groups or use different texture coordinates at the
+   * edge.
+   */
+  private boolean isFeatureEdge(int u, int v) {
+    int t1 = -1;
+    int t2 = -1;
+    int count = 0;
+    for (int c = firstCorner[u]; c >= 0; c = nextCorner[c]) {
+      int t = c / 3;
+      if (removed[t] || !contains(t, v)) {
+        continue;
+      }
+      if (count == 0) {
+        t1 = t;
+      } else {
+        t2 = t;
+      }
+      count++;
+    }
+    if (count != 2) {
+      return true;
+    }
+    return groupOfTriangle[t1] != groupOfTriangle[t2]
+            || texCoords[cornerOf(t1, u)] != texCoords[cornerOf(t2, u)]
+            || texCoords[cornerOf(t1, v)] != texCoords[cornerOf(t2, v)];
+  }
+
+  /**
+   * Determine the kind of the vertex and add the constraint planes of its
+   * feature edges.
+   */
+  private void classify(int u) {
+    int n = gatherEdges(u);
+    int numberOfFeatureEdges = 0;
+    for (int i = 0; i < n; i++) {
+      if (edgeTriangles[2 * i + 1] == -2) {
+        // Non-manifold edge
+        kinds[u] = LOCKED;
+        return;
+      }
+    }
+    for (int i = 0; i < n; i++) {
+      if (isGatheredFeatureEdge(u, i)) {
+        numberOfFeatureEdges++;
+        addConstraintQuadric(u, neighbors[i]);
+      }
+    }
+    kinds[u] = numberOfFeatureEdges == 0 ? MANIFOLD
+            : numberOfFeatureEdges == 2 ? FEATURE : LOCKED;
+  }
+
+  /**
+   * Lock vertices which share their position with another vertex (e.g.
+   * seams where the vertices are split), both sides must stay identical.
+   */
+  private void lockSharedPositions() {
+    LongIntHashMap firstWithHash = new LongIntHashMap(numberOfVertices);
+    int[] nextWithHash = new int[numberOfVertices];
+    for (int v = 0; v < numberOfVertices; v++) {
+      long hash = Float.floatToIntBits(positions[3 * v]);
+      hash = hash * 0x9E3779B97F4A7C15L
+              + Float.floatToIntBits(positions[3 * v + 1]);
+      hash = hash * 0x9E3779B97F4A7C15L
+              + Float.floatToIntBits(positions[3 * v + 2]);
+      int first = firstWithHash.put(hash, v);
+      nextWithHash[v] = first;
+      for (int w = first; w != LongIntHashMap.MISSING; w = nextWithHash[w]) {
+        if (positions[3 * v] == positions[3 * w]
+                && positions[3 * v + 1] == positions[3 * w + 1]
+                && positions[3 * v + 2] == positions[3 * w + 2]) {
+          kinds[v] = LOCKED;
+          kinds[w] = LOCKED;
+        }
+      }
+    }
+  }
+
+  /**
+   * Add the plane quadric of the triangle (weighted by its area) to its
+   * vertices.
+   */
+  private void addTriangleQuadric(int t) {
+    double[] n = normal(3 * corners[3 * t], 3 * corners[3 * t + 1],
+            3 * corners[3 * t + 2]);
+    double length = Math.sqrt(n[0] * n[0] + n[1] * n[1] + n[2] * n[2]);
+    if (length == 0) {
+      return;
+    }
+    double a = n[0] / length;
+    double b = n[1] / length;
+    double c = n[2] / length;
+    int p = 3 * corners[3 * t];
+    double d = -(a * positions[p] + b * positions[p + 1]
+            + c * positions[p + 2]);
+    double area = 0.5 * length;
+    for (int k = 0; k < 3; k++) {
+      addPlane(corners[3 * t + k], a, b, c, d, area);
+    }
+  }
+
+  /**
+   * Add planes through the edge u-v perpendicular to the adjacent triangles
+   * to u, so that moving u away from the feature line is expensive.
+   */
+  private void addConstraintQuadric(int u, int v) {
+    double ex = positions[3 * v] - positions[3 * u];
+    double ey = positions[3 * v + 1] - positions[3 * u + 1];
+    double ez = positions[3 * v + 2] - positions[3 * u + 2];
+    double edgeLength2 = ex * ex + ey * ey + ez * ez;
+    for (int c = firstCorner[u]; c >= 0; c = nextCorner[c]) {
+      int t = c / 3;
+      if (removed[t] || !contains(t, v)) {
+        continue;
+      }
+      double[] n = normal(3 * corners[3 * t], 3 * corners[3 * t + 1],
+              3 * corners[3 * t + 2]);
+      double a = ey * n[2] - ez * n[1];
+      double b = ez * n[0] - ex * n[2];
+      double cc = ex * n[1] - ey * n[0];
+      double length = Math.sqrt(a * a + b * b + cc * cc);
+      if (length == 0) {
+        continue;
+      }
+      a /= length;
+      b /= length;
+      cc /= length;
+      double d = -(a * positions[3 * u] + b * positions[3 * u + 1]
+              + cc * positions[3 * u + 2]);
+      addPlane(u, a, b, cc, d, FEATURE_WEIGHT * edgeLength2);
+    }
+  }
+
+  private void addPlane(int v, double a, double b, double c, double d,
+                        double weight) {
+    int q = 10 * v;
+    quadrics[q] += weight * a * a;
+    quadrics[q + 1] += weight * a * b;
+    quadrics[q + 2] += weight * a * c;
+    quadrics[q + 3] += weight * a * d;
+    quadrics[q + 4] += weight * b * b;
+    quadrics[q + 5] += weight * b * c;
+    quadrics[q + 6] += weight * b * d;
+    quadrics[q + 7] += weight * c * c;
+    quadrics[q + 8] += weight * c * d;
+    quadrics[q + 9] += weight * d * d;
+  }
+
+  /**
+   * Collect the distinct neighbors of u (over the remaining triangles) into
+   * 'neighbors' (or 'neighbors2' if second is true), returns their number.
+   */
+  private int gatherNeighbors(int u, boolean second) {
+    int[] buffer = second ? neighbors2 : neighbors;
+    stamp++;
+    mark[u] = stamp;
+    int n = 0;
+    for (int c = firstCorner[u]; c >= 0; c = nextCorner[c]) {
+      int t = c / 3;
+      if (removed[t]) {
+        continue;
+      }
+      for (int k = 0; k < 3; k++) {
+        int w = corners[3 * t + k];
+        if (mark[w] != stamp) {
+          mark[w] = stamp;
+          if (n == buffer.length) {
+            buffer = Arrays.copyOf(buffer, 2 * n);
+            if (second) {
+              neighbors2 = buffer;
+            } else {
+              neighbors = buffer;
+            }
+          }
+          buffer[n++] = w;
+        }
+      }
+    }
+    return n;
+  }
+
+  /**
+   * Collect the neighbors w of u where u-w is a feature edge into
+   * 'neighbors' (see isFeatureEdge()), returns their number.
+   */
+  private int gatherFeatureNeighbors(int u) {
+    int n = gatherEdges(u);
+    int numberOfFeatureNeighbors = 0;
+    for (int i = 0; i < n; i++) {
+      if (isGatheredFeatureEdge(u, i)) {
+        neighbors[numberOfFeatureNeighbors++] = neighbors[i];
+      }
+    }
+    return numberOfFeatureNeighbors;
+  }
+
+  /**
+   * Collect the neighbors of u into 'neighbors' and the first two triangles
+   * at each edge u-neighbors[i] into edgeTriangles[2i], edgeTriangles[2i+1]
+   * (-1 if there is only one triangle, -2 if there are more than two).
+   * Returns the number of neighbors.
+   */
+  private int gatherEdges(int u) {
+    int n = gatherNeighbors(u, false);
+    if (edgeTriangles.length < 2 * n) {
+      edgeTriangles = new int[4 * n];
+    }
+    for (int i = 0; i < n; i++) {
+      slot[neighbors[i]] = i;
+      edgeTriangles[2 * i] = -1;
+      edgeTriangles[2 * i + 1] = -1;
+    }
+    for (int c = firstCorner[u]; c >= 0; c = nextCorner[c]) {
+      int t = c / 3;
+      if (removed[t]) {
+        continue;
+      }
+      for (int k = 0; k < 3; k++) {
+        int w = corners[3 * t + k];
+        if (w == u) {
+          continue;
+        }
+        int i = 2 * slot[w];
+        if (edgeTriangles[i] < 0) {
+          edgeTriangles[i] = t;
+        } else if (edgeTriangles[i + 1] == -1) {
+          edgeTriangles[i + 1] = t;
+        } else {
+          edgeTriangles[i + 1] = -2;
+        }
+      }
+    }
+    return n;
+  }
+
+  /**
+   * Feature edge test for the edge u-neighbors[i] after gatherEdges(u).
+   */
+  private boolean isGatheredFeatureEdge(int u, int i) {
+    int w = neighbors[i];
+    int t1 = edgeTriangles[2 * i];
+    int t2 = edgeTriangles[2 * i + 1];
+    return t2 < 0 || groupOfTriangle[t1] != groupOfTriangle[t2]
+            || texCoords[cornerOf(t1, u)] != texCoords[cornerOf(t2, u)]
+            || texCoords[cornerOf(t1, w)] != texCoords[cornerOf(t2, w)];
+  }
+
+  /**
+   * Remove the corners of removed triangles from the corner list of v.
+   */
+  private void compactCorners(int v) {
+    int previous = -1;
+    for (int c = firstCorner[v]; c >= 0; c = nextCorner[c]) {
+      if (removed[c / 3]) {
+        if (previous < 0) {
+          firstCorner[v] = nextCorner[c];
+        } else {
+          nextCorner[previous] = nextCorner[c];
+        }
+      } else {
+        previous = c;
+      }
+    }
+  }
+
+  private boolean contains(int t, int v) {
+    return corners[3 * t] == v || corners[3 * t + 1] == v
+            || corners[3 * t + 2] == v;
+  }
+
+  private int cornerOf(int t, int v) {
+    return corners[3 * t] == v ? 3 * t
+            : corners[3 * t + 1] == v ? 3 * t + 1 : 3 * t + 2;
+  }
+
+  /**
+   * Create a mesh from the remaining triangles.
+   */
+  private TriangleMesh createMesh() {
+    int[] vertexRemap = new int[numberOfVertices];
+    int[] texCoordRemap = new int[canonicalTexCoords.length / 2];
+    Arrays.fill(vertexRemap, -1);
+    Arrays.fill(texCoordRemap, -1);
+    for (int t = 0; t < numberOfTriangles; t++) {
+      if (!removed[t]) {
+        for (int k = 0; k < 3; k++) {
+          vertexRemap[corners[3 * t + k]] = 0;
+        }
+      }
+    }
+    int numberOfUsedVertices = 0;
+    for (int v = 0; v < numberOfVertices; v++) {
+      if (vertexRemap[v] == 0) {
+        numberOfUsedVertices++;
+      }
+    }
+
+    TriangleMesh mesh = new TriangleMesh(numberOfUsedVertices,
+            numberOfRemainingTriangles);
+    for (int v = 0; v < numberOfVertices; v++) {
+      if (vertexRemap[v] == 0) {
+        vertexRemap[v] = mesh.vertices.add(source.vertices, v);
+      }
+    }
+    float[] colors = source.triangles.colors;
+    // Number of remaining triangles before each triangle
+    int[] newIndex = new int[numberOfTriangles + 1];
+    for (int t = 0; t < numberOfTriangles; t++) {
+      newIndex[t + 1] = newIndex[t] + (removed[t] ? 0 : 1);
+      if (removed[t]) {
+        continue;
+      }
+      int[] tc = new int[3];
+      for (int k = 0; k < 3; k++) {
+        int index = texCoords[3 * t + k];
+        if (index >= 0 && texCoordRemap[index] < 0) {
+          texCoordRemap[index] = mesh.addTextureCoordinate(
+                  canonicalTexCoords[2 * index],
+                  canonicalTexCoords[2 * index + 1]);
+        }
+        tc[k] = index >= 0 ? texCoordRemap[index] : -1;
+      }
+      mesh.triangles.add(vertexRemap[corners[3 * t]],
+              vertexRemap[corners[3 * t + 1]], vertexRemap[corners[3 * t + 2]],
+              tc[0], tc[1], tc[2], 0, 0, 0, colors[4 * t], colors[4 * t + 1],
+              colors[4 * t + 2], colors[4 * t + 3]);
+    }
+
+    // The triangles keep their order, so the groups stay consecutive
+    for (int g = 0; g < source.getNumberOfGroups(); g++) {
+      MeshGroup group = source.getGroup(g);
+      int first = newIndex[group.firstTriangle];
+      mesh.addGroup(new MeshGroup(group.getName(), group.getMaterial(), first,
+              newIndex[group.firstTriangle + group.numberOfTriangles] - first));
+    }
+    mesh.setTextureName(source.getTextureName());
+    mesh.computeTriangleNormals();
+    return mesh;
+  }
+
+  // +++ Indexed min-heap +++++++++++++++++++++++++
+
+  private void updateHeap(int v, double value) {
+    int i = heapPosition[v];
+    if (i < 0) {
+      i = heapSize++;
+      heap[i] = v;
+      heapCost[i] = value;
+      heapPosition[v] = i;
+      if (heapOrdered) {
+        siftUp(i);
+      }
+      return;
+    }
+    double previous = heapCost[i];
+    heapCost[i] = value;
+    if (value < previous) {
+      siftUp(i);
+    } else {
+      siftDown(i);
+    }
+  }
+
+  private void removeFromHeap(int v) {
+    int i = heapPosition[v];
+    if (i < 0) {
+      return;
+    }
+    heapPosition[v] = -1;
+    heapSize--;
+    if (i == heapSize) {
+      return;
+    }
+    int last = heap[heapSize];
+    heap[i] = last;
+    heapCost[i] = heapCost[heapSize];
+    heapPosition[last] = i;
+    siftDown(i);
+    siftUp(heapPosition[last]);
+  }
+
+  private void siftUp(int i) {
+    int v = heap[i];
+    double value = heapCost[i];
+    while (i > 0) {
+      int parent = (i - 1) >>> 1;
+      if (heapCost[parent] <= value) {
+        break;
+      }
+      heap[i] = heap[parent];
+      heapCost[i] = heapCost[parent];
+      heapPosition[heap[i]] = i;
+      i = parent;
+    }
+    heap[i] = v;
+    heapCost[i] = value;
+    heapPosition[v] = i;
+  }
+
+  private void siftDown(int i) {
+    int v = heap[i];
+    double value = heapCost[i];
+    while (true) {
+      int child = 2 * i + 1;
+      if (child >= heapSize) {
+        break;
+      }
+      if (child + 1 < heapSize && heapCost[child + 1] < heapCost[child]) {
+        child++;
+      }
+      if (value <= heapCost[child]) {
+        break;
+      }
+      heap[i] = heap[child];
+      heapCost[i] = heapCost[child];
+      heapPosition[heap[i]] = i;
+      i = child;
+    }
+    heap[i] = v;
+    heapCost[i] = value;
+    heapPosition[v] = i;
+  }
+}
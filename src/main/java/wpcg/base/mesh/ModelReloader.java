@@ -0,0 +1,443 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.base.mesh;
+
+import wpcg.base.Logger;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Reloads OBJ models while the application is running. A WatchService
+ * observes the models directory (including subdirectories); when OBJ or MTL
+ * files are written, the watched models using them are re-imported. A model
+ * is only re-imported if the content of its OBJ file or one of its material
+ * files actually changed (same hash as used by the {@link ObjMeshCache}).
+ * <p>
+ * Each group of a model is provided as a separate mesh (see
+ * {@link TriangleMesh#createSubmesh(int)}). After a re-import, the group
+ * meshes of unchanged groups are the same instances as before, so the
+ * listener only needs to rebuild the jMonkey geometry of the changed groups.
+ * The listeners are called in the render thread (e.g. via Scene.runLater).
+ */
+public class ModelReloader {
+
+  /**
+   * Default watched directory (relative to the resources directory).
+   */
+  public static final String DEFAULT_DIRECTORY = "Models";
+
+  /**
+   * Editors often write a file in several steps, changes are collected until
+   * no event arrived for this time.
+   */
+  private static final long QUIET_PERIOD_MILLIS = 100;
+
+  /**
+   * Called with the imported model after it is watched and after each
+   * re-import.
+   */
+  public interface Listener {
+    void modelLoaded(Model model);
+  }
+
+  /**
+   * Result of an import.
+   */
+  public static class Model {
+    private final String filename;
+    private final TriangleMesh mesh;
+    private final List<TriangleMesh> groupMeshes;
+    private final boolean[] changed;
+
+    private Model(String filename, TriangleMesh mesh,
+                  List<TriangleMesh> groupMeshes, boolean[] changed) {
+      this.filename = filename;
+      this.mesh = mesh;
+      this.groupMeshes = groupMeshes;
+      this.changed = changed;
+    }
+
+    public String getFilename() {
+      return filename;
+    }
+
+    /**
+     * The complete imported mesh (a new instance after each import).
+     */
+    public TriangleMesh getMesh() {
+      return mesh;
+    }
+
+    /**
+     * Number of group meshes; a mesh without groups has a single group mesh.
+     */
+    public int getNumberOfGroups() {
+      return groupMeshes.size();
+    }
+
+    public TriangleMesh getGroupMesh(int groupIndex) {
+      return groupMeshes.get(groupIndex);
+    }
+
+    /**
+     * Returns false if the group mesh is the same instance as in the previous
+     * import (its content did not change).
+     */
+    public boolean isGroupChanged(int groupIndex) {
+      return changed[groupIndex];
+    }
+
+    public int getNumberOfChangedGroups() {
+      int n = 0;
+      for (boolean c : changed) {
+        n += c ? 1 : 0;
+      }
+      return n;
+    }
+  }
+
+  /**
+   * State of a watched model, only accessed in the loader thread.
+   */
+  private static class WatchedModel {
+    private final String filename;
+    private final Path path;
+    private final List<Listener> listeners = new ArrayList<>();
+    private Set<Path> materialLibraries = new HashSet<>();
+    private String key;
+    private TriangleMesh mesh;
+    private List<TriangleMesh> groupMeshes = new ArrayList<>();
+
+    WatchedModel(String filename, Path path) {
+      this.filename = filename;
+      this.path = path;
+    }
+  }
+
+  private final Executor renderThread;
+  private final ObjMeshCache cache;
+  private final Path directory;
+
+  /**
+   * Imports and model state, single thread.
+   */
+  private final ExecutorService loader;
+
+  /**
+   * Watched models by absolute OBJ path.
+   */
+  private final Map<Path, WatchedModel> models = new LinkedHashMap<>();
+
+  private WatchService watchService;
+
+  /**
+   * Reloader for the default directory, the listeners are called via the
+   * given executor (e.g. Scene::runLater).
+   */
+  public ModelReloader(Executor renderThread) {
+    this(renderThread, DEFAULT_DIRECTORY, null);
+  }
+
+  /**
+   * Reloader for the given directory (relative to the resources directory).
+   * If cache is not null, the models are imported through the cache.
+   */
+  public ModelReloader(Executor renderThread, String directory,
+                       ObjMeshCache cache) {
+    this.renderThread = renderThread;
+    this.cache = cache;
+    this.directory = getPath(directory);
+    this.loader = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "model-reloader");
+      thread.setDaemon(true);
+      return thread;
+    });
+    try {
+      watchService = FileSystems.getDefault().newWatchService();
+      registerDirectories(this.directory);
+      Thread watcher = new Thread(this::watch, "model-watcher");
+      watcher.setDaemon(true);
+      watcher.start();
+    } catch (IOException e) {
+      Logger.getInstance().error("Cannot watch " + directory
+              + ", models are not reloaded.");
+      watchService = null;
+    }
+  }
+
+  /**
+   * Import the model (filename relative to the resources directory) in the
+   * background and call the listener with the result, again after each
+   * change of the OBJ file or its material files. Only files in the watched
+   * directory are observed.
+   */
+  public void watch(String filename, Listener listener) {
+    Path path = getPath(filename);
+    loader.execute(() -> {
+      WatchedModel model = models.computeIfAbsent(path,
+              p -> new WatchedModel(filename, p));
+      model.listeners.add(listener);
+      if (model.key == null) {
+        reload(model);
+      } else {
+        // Already imported, the new listener gets all groups as changed
+        boolean[] changed = new boolean[model.groupMeshes.size()];
+        Arrays.fill(changed, true);
+        Model current = new Model(filename, model.mesh, model.groupMeshes,
+                changed);
+        renderThread.execute(() -> listener.modelLoaded(current));
+      }
+    });
+  }
+
+  /**
+   * Stop watching and the background threads.
+   */
+  public void shutdown() {
+    if (watchService != null) {
+      try {
+        watchService.close();
+      } catch (IOException e) {
+        // Ignored
+      }
+    }
+    loader.shutdownNow();
+  }
+
+  /**
+   * Watcher thread: collect the changed files and hand them to the loader.
+   */
+  private void watch() {
+    try {
+      while (true) {
+        Set<Path> changedFiles = new HashSet<>();
+        WatchKey key = watchService.take();
+        boolean overflow = false;
+        while (key != null) {
+          overflow |= collectChanges(key, changedFiles);
+          key = watchService.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        boolean checkAll = overflow;
+        loader.execute(() -> reload(changedFiles, checkAll));
+      }
+    } catch (InterruptedException | ClosedWatchServiceException
+            | RejectedExecutionException e) {
+      // Shut down
+    }
+  }
+
+  /**
+   * Add the OBJ and MTL files of the events to changedFiles, returns true if
+   * events were lost.
+   */
+  private boolean collectChanges(WatchKey key, Set<Path> changedFiles) {
+    boolean overflow = false;
+    Path dir = (Path) key.watchable();
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+        overflow = true;
+        continue;
+      }
+      Path file = dir.resolve((Path) event.context());
+      if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+              && Files.isDirectory(file)) {
+        try {
+          registerDirectories(file);
+        } catch (IOException e) {
+          Logger.getInstance().error("Cannot watch " + file);
+        }
+        continue;
+      }
+      String name = file.getFileName().toString().toLowerCase();
+      if (name.endsWith(".obj") || name.endsWith(".mtl")) {
+        changedFiles.add(file);
+      }
+    }
+    key.reset();
+    return overflow;
+  }
+
+  /**
+   * Loader thread: re-import all models using one of the changed files.
+   */
+  private void reload(Set<Path> changedFiles, boolean checkAll) {
+    for (WatchedModel model : models.values()) {
+      if (checkAll || changedFiles.contains(model.path)
+              || !disjoint(changedFiles, model.materialLibraries)) {
+        reload(model);
+      }
+    }
+  }
+
+  /**
+   * Re-import the model if the content of its files changed.
+   */
+  private void reload(WatchedModel model) {
+    List<String> materialLibraries = new ArrayList<>();
+    String key;
+    try {
+      key = ObjMeshCache.computeKey(model.filename, materialLibraries);
+    } catch (IOException e) {
+      // Deleted or not completely written, keep the current state
+      return;
+    }
+    if (key.equals(model.key)) {
+      return;
+    }
+    long start = System.nanoTime();
+    TriangleMesh mesh = cache != null ? cache.read(model.filename)
+            : new ObjReader().read(model.filename);
+    if (mesh == null) {
+      return;
+    }
+    model.key = key;
+    model.materialLibraries = new HashSet<>();
+    for (String materialLibrary : materialLibraries) {
+      model.materialLibraries.add(getPath(ObjReader.getDirectory(
+              model.filename) + materialLibrary));
+    }
+
+    Model result = updateGroups(model, mesh);
+    Logger.getInstance().msg(String.format("Loaded %s in %.1f ms, %d of %d "
+                    + "groups changed.", model.filename,
+            (System.nanoTime() - start) / 1e6,
+            result.getNumberOfChangedGroups(), result.getNumberOfGroups()));
+    List<Listener> listeners = new ArrayList<>(model.listeners);
+    renderThread.execute(() -> listeners.forEach(
+            listener -> listener.modelLoaded(result)));
+  }
+
+  /**
+   * Split the mesh into group meshes, reuse the previous group mesh of a
+   * group (same name, in order) if its content is unchanged.
+   */
+  private static Model updateGroups(WatchedModel model, TriangleMesh mesh) {
+    Map<String, Deque<TriangleMesh>> previous = new HashMap<>();
+    for (TriangleMesh groupMesh : model.groupMeshes) {
+      previous.computeIfAbsent(getGroupName(groupMesh),
+              name -> new ArrayDeque<>()).add(groupMesh);
+    }
+
+    int numberOfGroups = Math.max(1, mesh.getNumberOfGroups());
+    List<TriangleMesh> groupMeshes = new ArrayList<>(numberOfGroups);
+    boolean[] changed = new boolean[numberOfGroups];
+    for (int i = 0; i < numberOfGroups; i++) {
+      TriangleMesh groupMesh = mesh.getNumberOfGroups() > 0
+              ? mesh.createSubmesh(i) : new TriangleMesh(mesh);
+      Deque<TriangleMesh> candidates = previous.get(getGroupName(groupMesh));
+      TriangleMesh previousMesh = candidates != null ? candidates.poll()
+              : null;
+      if (previousMesh != null && hasSameContent(previousMesh, groupMesh)) {
+        groupMeshes.add(previousMesh);
+      } else {
+        groupMeshes.add(groupMesh);
+        changed[i] = true;
+      }
+    }
+    model.mesh = mesh;
+    model.groupMeshes = groupMeshes;
+    return new Model(model.filename, mesh, groupMeshes, changed);
+  }
+
+  private static String getGroupName(TriangleMesh groupMesh) {
+    return groupMesh.getNumberOfGroups() > 0
+            ? groupMesh.getGroup(0).getName() : null;
+  }
+
+  /**
+   * Compares the group meshes: geometry, attributes and material (materials
+   * are interned, equal materials are the same instance).
+   */
+  private static boolean hasSameContent(TriangleMesh a, TriangleMesh b) {
+    VertexArrays va = a.vertices;
+    VertexArrays vb = b.vertices;
+    TriangleArrays ta = a.triangles;
+    TriangleArrays tb = b.triangles;
+    if (va.size != vb.size || ta.size != tb.size
+            || a.numberOfTextureCoordinates != b.numberOfTextureCoordinates
+            || a.getNumberOfGroups() != b.getNumberOfGroups()
+            || !Objects.equals(a.getTextureName(), b.getTextureName())) {
+      return false;
+    }
+    if (a.getNumberOfGroups() > 0
+            && a.getGroup(0).getMaterial() != b.getGroup(0).getMaterial()) {
+      return false;
+    }
+    int nv = va.size;
+    int nt = ta.size;
+    return equals(va.positions, vb.positions, 3 * nv)
+            && equals(va.normals, vb.normals, 3 * nv)
+            && equals(va.colors, vb.colors, 4 * nv)
+            && Arrays.equals(ta.vertexIndices, 0, 3 * nt,
+            tb.vertexIndices, 0, 3 * nt)
+            && Arrays.equals(ta.texCoordIndices, 0, 3 * nt,
+            tb.texCoordIndices, 0, 3 * nt)
+            && equals(ta.normals, tb.normals, 3 * nt)
+            && equals(ta.colors, tb.colors, 4 * nt)
+            && equals(a.textureCoordinates, b.textureCoordinates,
+            2 * a.numberOfTextureCoordinates);
+  }
+
+  private static boolean equals(float[] a, float[] b, int length) {
+    return Arrays.equals(a, 0, length, b, 0, length);
+  }
+
+  private static boolean disjoint(Set<Path> a, Set<Path> b) {
+    for (Path path : b) {
+      if (a.contains(path)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Register the directory and all its subdirectories.
+   */
+  private void registerDirectories(Path root) throws IOException {
+    List<Path> dirs;
+    try (Stream<Path> files = Files.walk(root)) {
+      dirs = files.filter(Files::isDirectory).collect(Collectors.toList());
+    }
+    for (Path dir : dirs) {
+      dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+              StandardWatchEventKinds.ENTRY_MODIFY);
+    }
+  }
+
+  /**
+   * Absolute normalized path of a file relative to the resources directory.
+   */
+  private static Path getPath(String filename) {
+    return ObjReader.getFile(filename).toPath().toAbsolutePath().normalize();
+  }
+}
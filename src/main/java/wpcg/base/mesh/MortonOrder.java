@@ -0,0 +1,120 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.base.mesh;
+
+import wpcg.base.Logger;
+
+/**
+ * Sorts the vertices of a mesh by the Morton code (Z-order curve) of their
+ * position and the triangles by the Morton code of their centroid, so
+ * vertices and triangles which are close in space are close in memory. This
+ * speeds up CPU passes with spatial locality (normals, welding, BVH
+ * construction and picking) on meshes with a random storage order, e.g.
+ * scanned or united meshes.
+ * <p>
+ * The triangles are only sorted within the groups (and the ranges between
+ * groups), so the groups keep their triangles. Vertex and texture
+ * coordinate indices are remapped. The result is not optimized for the GPU
+ * vertex cache, run the {@link VertexCacheOptimizer} afterwards if the mesh
+ * is rendered.
+ */
+public class MortonOrder {
+
+  /**
+   * Bits per axis of the Morton codes (30 bit codes).
+   */
+  private static final int BITS_PER_AXIS = 10;
+  private static final int MORTON_BITS = 3 * BITS_PER_AXIS;
+  private static final int MAX_CELL = (1 << BITS_PER_AXIS) - 1;
+
+  private MortonOrder() {
+  }
+
+  /**
+   * Sort the vertices and triangles of the mesh by their Morton code.
+   */
+  public static void reorder(TriangleMesh mesh) {
+    int numberOfVertices = mesh.getNumberOfVertices();
+    if (numberOfVertices == 0) {
+      return;
+    }
+    long start = System.nanoTime();
+    float[] bounds = mesh.getBounds();
+    float[] positions = mesh.vertices.positions;
+
+    // Vertices
+    long[] vertexKeys = new long[numberOfVertices];
+    ParallelRange.forEach(numberOfVertices, (from, to) -> {
+      for (int v = from; v < to; v++) {
+        vertexKeys[v] = encode(bounds, positions[3 * v], positions[3 * v + 1],
+                positions[3 * v + 2]);
+      }
+    });
+    mesh.reorderVertices(RadixSort.sort(vertexKeys, MORTON_BITS));
+
+    // Triangles, the range index above the Morton code keeps the groups
+    int numberOfTriangles = mesh.getNumberOfTriangles();
+    int[] ranges = mesh.getTriangleRanges();
+    int[] indices = mesh.triangles.vertexIndices;
+    long[] triangleKeys = new long[numberOfTriangles];
+    for (int r = 0; r + 1 < ranges.length; r++) {
+      long rangeKey = (long) r << MORTON_BITS;
+      int first = ranges[r];
+      ParallelRange.forEach(ranges[r + 1] - first, (from, to) -> {
+        for (int t = first + from; t < first + to; t++) {
+          float x = 0;
+          float y = 0;
+          float z = 0;
+          for (int corner = 0; corner < 3; corner++) {
+            int o = 3 * indices[3 * t + corner];
+            x += positions[o];
+            y += positions[o + 1];
+            z += positions[o + 2];
+          }
+          triangleKeys[t] = rangeKey | encode(bounds, x / 3, y / 3, z / 3);
+        }
+      });
+    }
+    int rangeBits = 32 - Integer.numberOfLeadingZeros(ranges.length - 2);
+    mesh.triangles.reorder(RadixSort.sort(triangleKeys,
+            MORTON_BITS + rangeBits));
+    mesh.reorderTextureCoordinates();
+
+    Logger.getInstance().debug("Sorted " + numberOfVertices + " vertices and "
+            + numberOfTriangles + " triangles in Morton order in "
+            + (System.nanoTime() - start) / 1000000 + " ms.");
+  }
+
+  /**
+   * Morton code of the point, quantized to a grid of 2^10 cells per axis over
+   * the bounds (minX, minY, minZ, maxX, maxY, maxZ).
+   */
+  static long encode(float[] bounds, float x, float y, float z) {
+    return spread(quantize(x, bounds[0], bounds[3]))
+            | spread(quantize(y, bounds[1], bounds[4])) << 1
+            | spread(quantize(z, bounds[2], bounds[5])) << 2;
+  }
+
+  private static int quantize(float value, float min, float max) {
+    if (!(max > min)) {
+      return 0;
+    }
+    int cell = (int) ((value - min) / (max - min) * MAX_CELL + 0.5f);
+    return Math.max(0, Math.min(MAX_CELL, cell));
+  }
+
+  /**
+   * Insert two zero bits after each of the lowest 10 bits.
+   */
+  private static long spread(int value) {
+    long x = value & MAX_CELL;
+    x = (x | x << 16) & 0x030000FFL;
+    x = (x | x << 8) & 0x0300F00FL;
+    x = (x | x << 4) & 0x030C30C3L;
+    x = (x | x << 2) & 0x09249249L;
+    return x;
+  }
+}
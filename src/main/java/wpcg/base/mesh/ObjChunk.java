@@ -0,0 +1,148 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.base.mesh;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Content of a line-aligned chunk of an OBJ file, parsed independently of the
+ * other chunks into primitive buffers. Vertex and texture coordinate indices
+ * are stored 0-based; indices given relative to the end of the list can only
+ * be resolved once the number of entries in the previous chunks is known, so
+ * they are stored relative to the chunk and their slots are remembered.
+ * Object, material and material library switches are recorded as events at
+ * the current triangle position.
+ */
+final class ObjChunk implements ObjVisitor {
+
+  static final int EVENT_OBJECT = 0;
+  static final int EVENT_USE_MATERIAL = 1;
+  static final int EVENT_MATERIAL_LIBRARY = 2;
+
+  /**
+   * Switch event, applies before triangle 'triangle' of the chunk.
+   */
+  static final class Event {
+    final int type;
+    final String name;
+    final int triangle;
+
+    Event(int type, String name, int triangle) {
+      this.type = type;
+      this.name = name;
+      this.triangle = triangle;
+    }
+  }
+
+  float[] positions = new float[3 * 1024];
+  int numberOfVertices = 0;
+
+  float[] textureCoordinates = new float[2 * 1024];
+  int numberOfTextureCoordinates = 0;
+
+  // Three corners per triangle
+  int[] vertexIndices = new int[3 * 1024];
+  int[] texCoordIndices = new int[3 * 1024];
+  int numberOfTriangles = 0;
+
+  // Slots in vertexIndices/texCoordIndices holding chunk-relative indices
+  int[] relativeVertexSlots = new int[0];
+  int numberOfRelativeVertexSlots = 0;
+  int[] relativeTexCoordSlots = new int[0];
+  int numberOfRelativeTexCoordSlots = 0;
+
+  final List<Event> events = new ArrayList<>();
+
+  @Override
+  public void vertex(float x, float y, float z) {
+    if (3 * numberOfVertices + 3 > positions.length) {
+      positions = Arrays.copyOf(positions, grow(positions.length));
+    }
+    positions[3 * numberOfVertices] = x;
+    positions[3 * numberOfVertices + 1] = y;
+    positions[3 * numberOfVertices + 2] = z;
+    numberOfVertices++;
+  }
+
+  @Override
+  public void textureCoordinate(float u, float v) {
+    if (2 * numberOfTextureCoordinates + 2 > textureCoordinates.length) {
+      textureCoordinates = Arrays.copyOf(textureCoordinates,
+              grow(textureCoordinates.length));
+    }
+    textureCoordinates[2 * numberOfTextureCoordinates] = u;
+    textureCoordinates[2 * numberOfTextureCoordinates + 1] = v;
+    numberOfTextureCoordinates++;
+  }
+
+  @Override
+  public void face(int[] vertexIndices, int[] texCoordIndices,
+                   int[] normalIndices, int numberOfCorners) {
+    // Triangle fan
+    for (int i = 1; i + 1 < numberOfCorners; i++) {
+      if (3 * numberOfTriangles + 3 > this.vertexIndices.length) {
+        int n = grow(this.vertexIndices.length);
+        this.vertexIndices = Arrays.copyOf(this.vertexIndices, n);
+        this.texCoordIndices = Arrays.copyOf(this.texCoordIndices, n);
+      }
+      int slot = 3 * numberOfTriangles;
+      setVertexIndex(slot, vertexIndices[0]);
+      setVertexIndex(slot + 1, vertexIndices[i]);
+      setVertexIndex(slot + 2, vertexIndices[i + 1]);
+      setTexCoordIndex(slot, texCoordIndices[0]);
+      setTexCoordIndex(slot + 1, texCoordIndices[i]);
+      setTexCoordIndex(slot + 2, texCoordIndices[i + 1]);
+      numberOfTriangles++;
+    }
+  }
+
+  private void setVertexIndex(int slot, int objIndex) {
+    if (objIndex < 0) {
+      vertexIndices[slot] = numberOfVertices + objIndex;
+      if (numberOfRelativeVertexSlots == relativeVertexSlots.length) {
+        relativeVertexSlots = Arrays.copyOf(relativeVertexSlots,
+                grow(relativeVertexSlots.length));
+      }
+      relativeVertexSlots[numberOfRelativeVertexSlots++] = slot;
+    } else {
+      vertexIndices[slot] = objIndex - 1;
+    }
+  }
+
+  private void setTexCoordIndex(int slot, int objIndex) {
+    if (objIndex < 0) {
+      texCoordIndices[slot] = numberOfTextureCoordinates + objIndex;
+      if (numberOfRelativeTexCoordSlots == relativeTexCoordSlots.length) {
+        relativeTexCoordSlots = Arrays.copyOf(relativeTexCoordSlots,
+                grow(relativeTexCoordSlots.length));
+      }
+      relativeTexCoordSlots[numberOfRelativeTexCoordSlots++] = slot;
+    } else {
+      texCoordIndices[slot] = objIndex - 1;
+    }
+  }
+
+  @Override
+  public void object(String name) {
+    events.add(new Event(EVENT_OBJECT, name, numberOfTriangles));
+  }
+
+  @Override
+  public void useMaterial(String name) {
+    events.add(new Event(EVENT_USE_MATERIAL, name, numberOfTriangles));
+  }
+
+  @Override
+  public void materialLibrary(String filename) {
+    events.add(new Event(EVENT_MATERIAL_LIBRARY, filename, numberOfTriangles));
+  }
+
+  private static int grow(int length) {
+    return Math.max(16, length + (length >> 1));
+  }
+}
@@ -0,0 +1,236 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.base.mesh;
+
+import wpcg.base.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persistent cache for imported OBJ models. The imported mesh (degenerated
+ * triangles removed, normals computed, all groups in one mesh) is stored in
+ * the binary mesh format (see {@link BinaryMeshWriter}), keyed by a hash over
+ * the bytes of the OBJ file, the referenced material files and the importer
+ * version. A cache hit loads the binary file without parsing or
+ * post-processing.
+ * <p>
+ * The total size of the cache directory is bounded, the least recently used
+ * entries (by file modification time, which is updated on every hit) are
+ * removed first.
+ */
+public class ObjMeshCache {
+
+  /**
+   * Default cache directory (relative to the working directory).
+   */
+  public static final String DEFAULT_DIRECTORY = "build/meshcache";
+
+  /**
+   * Default maximum cache size in bytes.
+   */
+  public static final long DEFAULT_MAX_SIZE = 256L << 20;
+
+  private static final String EXTENSION = ".wmesh";
+  private static final int HASH_BLOCK_SIZE = 1 << 20;
+
+  private final File directory;
+  private final long maxSize;
+  private final AtomicLong numberOfHits = new AtomicLong();
+  private final AtomicLong numberOfMisses = new AtomicLong();
+
+  public ObjMeshCache() {
+    this(new File(DEFAULT_DIRECTORY), DEFAULT_MAX_SIZE);
+  }
+
+  /**
+   * Cache in the given directory with the given maximum size in bytes.
+   */
+  public ObjMeshCache(File directory, long maxSize) {
+    this.directory = directory;
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Same as ObjReader.read(): returns the (post-processed) mesh of the OBJ
+   * file, null if the file cannot be read. The result is taken from the cache
+   * if possible, otherwise it is imported and stored in the cache. Every call
+   * returns a new mesh.
+   */
+  public TriangleMesh read(final String filename) {
+    String key;
+    try {
+      key = computeKey(filename);
+    } catch (IOException e) {
+      Logger.getInstance().error("Failed to read mesh file " + filename);
+      return null;
+    }
+
+    File entry = new File(directory, key + EXTENSION);
+    if (entry.isFile()) {
+      TriangleMesh mesh = BinaryMeshReader.read(entry);
+      if (mesh != null) {
+        numberOfHits.incrementAndGet();
+        entry.setLastModified(System.currentTimeMillis());
+        Logger.getInstance().debug("Mesh cache hit for " + filename + ".");
+        return mesh;
+      }
+      // Corrupt entry
+      entry.delete();
+    }
+
+    numberOfMisses.incrementAndGet();
+    Logger.getInstance().debug("Mesh cache miss for " + filename + ".");
+    TriangleMesh mesh = new ObjReader().read(filename);
+    if (mesh == null) {
+      return null;
+    }
+    if (directory.isDirectory() || directory.mkdirs()) {
+      if (new BinaryMeshWriter().write(mesh, entry)) {
+        evict();
+      }
+    } else {
+      Logger.getInstance().error("Cannot create mesh cache directory "
+              + directory);
+    }
+    return mesh;
+  }
+
+  /**
+   * Remove all entries from the cache directory.
+   */
+  public synchronized void clear() {
+    for (File entry : getEntries()) {
+      entry.delete();
+    }
+  }
+
+  /**
+   * Remove the least recently used entries until the cache size is below the
+   * maximum size.
+   */
+  private synchronized void evict() {
+    File[] entries = getEntries();
+    long size = 0;
+    for (File entry : entries) {
+      size += entry.length();
+    }
+    if (size <= maxSize) {
+      return;
+    }
+    Arrays.sort(entries, Comparator.comparingLong(File::lastModified));
+    for (int i = 0; i < entries.length && size > maxSize; i++) {
+      long length = entries[i].length();
+      if (entries[i].delete()) {
+        size -= length;
+      }
+    }
+  }
+
+  private File[] getEntries() {
+    File[] entries = directory.listFiles((dir, name) -> name.endsWith(
+            EXTENSION));
+    return entries != null ? entries : new File[0];
+  }
+
+  /**
+   * Hex string of the hash over the importer version, the OBJ file and all
+   * material files referenced in the OBJ file.
+   */
+  private static String computeKey(String filename) throws IOException {
+    return computeKey(filename, new ArrayList<>());
+  }
+
+  /**
+   * Same as computeKey(filename), the referenced material files (relative to
+   * the OBJ file) are added to materialLibraries.
+   */
+  static String computeKey(String filename, List<String> materialLibraries)
+          throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException(e);
+    }
+    digest.update(("obj:" + ObjReader.IMPORTER_VERSION + ":"
+            + BinaryMeshFormat.VERSION).getBytes(StandardCharsets.US_ASCII));
+
+    hashFile(digest, ObjReader.getFile(filename), materialLibraries);
+    for (String materialLibrary : materialLibraries) {
+      digest.update(materialLibrary.getBytes(StandardCharsets.UTF_8));
+      File file = ObjReader.getFile(ObjReader.getDirectory(filename)
+              + materialLibrary);
+      if (file.isFile()) {
+        hashFile(digest, file, null);
+      } else {
+        digest.update((byte) 0);
+      }
+    }
+
+    StringBuilder key = new StringBuilder();
+    for (byte b : digest.digest()) {
+      key.append(Character.forDigit((b >> 4) & 0xF, 16));
+      key.append(Character.forDigit(b & 0xF, 16));
+    }
+    return key.toString();
+  }
+
+  /**
+   * Add the content of the file to the digest. If materialLibraries is not
+   * null, the material files referenced in 'mtllib' lines are collected.
+   */
+  private static void hashFile(MessageDigest digest, File file,
+                               List<String> materialLibraries)
+          throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(),
+            StandardOpenOption.READ)) {
+      digest.update(ByteBuffer.allocate(8).putLong(channel.size()).array());
+      byte[] block = new byte[HASH_BLOCK_SIZE];
+      MaterialLibraryScanner scanner = materialLibraries != null
+              ? new MaterialLibraryScanner(materialLibraries) : null;
+      int n;
+      while ((n = channel.read(ByteBuffer.wrap(block))) >= 0) {
+        digest.update(block, 0, n);
+        if (scanner != null) {
+          scanner.scan(block, n);
+        }
+      }
+      if (scanner != null) {
+        scanner.endOfLine();
+      }
+    }
+  }
+
+  // +++ GETTER/SETTER +++++++++++++++++++++++++
+
+  public File getDirectory() {
+    return directory;
+  }
+
+  public long getMaxSize() {
+    return maxSize;
+  }
+
+  public long getNumberOfHits() {
+    return numberOfHits.get();
+  }
+
+  public long getNumberOfMisses() {
+    return numberOfMisses.get();
+  }
+}
@@ -0,0 +1,400 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.base.mesh;
+
+import wpcg.base.Logger;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Byte-level OBJ parser. Works directly on the bytes of the file: the operator
+ * is dispatched on the first bytes of a line, numbers are parsed in place and
+ * no objects are allocated for 'v', 'vt', 'vn' and 'f' lines. Unknown
+ * operators and comments are skipped.
+ */
+final class ObjParser {
+
+  /**
+   * Exactly representable powers of ten.
+   */
+  private static final double[] POW10 = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6,
+          1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18,
+          1e19, 1e20, 1e21, 1e22};
+
+  /**
+   * Mantissas up to this value are exactly representable as a double.
+   */
+  private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+  /**
+   * The 29 double mantissa bits dropped when a (normal) double is rounded to
+   * float, and their value for a double exactly halfway between two floats.
+   */
+  private static final long FLOAT_ROUNDING_BITS = (1L << 29) - 1;
+  private static final long FLOAT_HALFWAY_BITS = 1L << 28;
+
+  private final ObjVisitor visitor;
+
+  // Current input range
+  private byte[] buffer;
+  private int pos;
+  private int end;
+
+  // Reused corner index arrays for faces
+  private int[] vertexIndices = new int[8];
+  private int[] texCoordIndices = new int[8];
+  private int[] normalIndices = new int[8];
+
+  ObjParser(ObjVisitor visitor) {
+    this.visitor = visitor;
+  }
+
+  /**
+   * Parse all lines in the range [from, to) of the file content. The range must
+   * start at the beginning of a line, the last line does not need a line
+   * break.
+   */
+  void parse(byte[] buffer, int from, int to) {
+    this.buffer = buffer;
+    this.pos = from;
+    this.end = to;
+    while (pos < end) {
+      parseLine();
+    }
+    this.buffer = null;
+  }
+
+  private void parseLine() {
+    skipBlanks();
+    byte c = at(pos);
+    if (c == 'v') {
+      byte c1 = at(pos + 1);
+      if (isSeparator(c1)) {
+        pos += 1;
+        parseVertex();
+      } else if (c1 == 't' && isSeparator(at(pos + 2))) {
+        pos += 2;
+        parseTextureCoordinate();
+      } else if (c1 == 'n' && isSeparator(at(pos + 2))) {
+        pos += 2;
+        parseNormal();
+      }
+    } else if (c == 'f' && isSeparator(at(pos + 1))) {
+      pos += 1;
+      parseFace();
+    } else if (c == 'o' && isSeparator(at(pos + 1))) {
+      pos += 1;
+      visitor.object(parseName());
+    } else if (c == 'u' && matchOperator("usemtl")) {
+      visitor.useMaterial(parseName());
+    } else if (c == 'm' && matchOperator("mtllib")) {
+      String filename = parseName();
+      if (filename != null) {
+        visitor.materialLibrary(filename);
+      }
+    }
+    skipLine();
+  }
+
+  private void parseVertex() {
+    if (!nextToken()) {
+      return;
+    }
+    float x = parseFloat();
+    if (!nextToken()) {
+      return;
+    }
+    float y = parseFloat();
+    if (!nextToken()) {
+      return;
+    }
+    float z = parseFloat();
+    visitor.vertex(x, y, z);
+  }
+
+  private void parseTextureCoordinate() {
+    if (!nextToken()) {
+      return;
+    }
+    float u = parseFloat();
+    if (!nextToken()) {
+      return;
+    }
+    float v = parseFloat();
+    visitor.textureCoordinate(u, v);
+  }
+
+  private void parseNormal() {
+    if (!nextToken()) {
+      return;
+    }
+    float x = parseFloat();
+    if (!nextToken()) {
+      return;
+    }
+    float y = parseFloat();
+    if (!nextToken()) {
+      return;
+    }
+    float z = parseFloat();
+    visitor.normal(x, y, z);
+  }
+
+  /**
+   * Face corners: v, v/vt, v//vn or v/vt/vn.
+   */
+  private void parseFace() {
+    int numberOfCorners = 0;
+    try {
+      while (nextToken()) {
+        if (numberOfCorners == vertexIndices.length) {
+          growCornerArrays();
+        }
+        int v = parseInt();
+        int vt = 0;
+        int vn = 0;
+        if (at(pos) == '/') {
+          pos++;
+          if (at(pos) != '/') {
+            vt = parseInt();
+          }
+          if (at(pos) == '/') {
+            pos++;
+            vn = parseInt();
+          }
+        }
+        if (!isSeparator(at(pos))) {
+          throw new NumberFormatException();
+        }
+        vertexIndices[numberOfCorners] = v;
+        texCoordIndices[numberOfCorners] = vt;
+        normalIndices[numberOfCorners] = vn;
+        numberOfCorners++;
+      }
+    } catch (NumberFormatException e) {
+      Logger.getInstance().error("Failed to parse facet.");
+      return;
+    }
+    if (numberOfCorners >= 3) {
+      visitor.face(vertexIndices, texCoordIndices, normalIndices,
+              numberOfCorners);
+    }
+  }
+
+  private void growCornerArrays() {
+    int n = 2 * vertexIndices.length;
+    vertexIndices = Arrays.copyOf(vertexIndices, n);
+    texCoordIndices = Arrays.copyOf(texCoordIndices, n);
+    normalIndices = Arrays.copyOf(normalIndices, n);
+  }
+
+  /**
+   * Parse an optionally signed integer at the current position.
+   */
+  private int parseInt() {
+    boolean negative = false;
+    byte c = at(pos);
+    if (c == '-' || c == '+') {
+      negative = c == '-';
+      pos++;
+    }
+    int start = pos;
+    long value = 0;
+    while (isDigit(c = at(pos))) {
+      value = value * 10 + (c - '0');
+      if (value > Integer.MAX_VALUE) {
+        throw new NumberFormatException();
+      }
+      pos++;
+    }
+    if (pos == start) {
+      throw new NumberFormatException();
+    }
+    return (int) (negative ? -value : value);
+  }
+
+  /**
+   * Parse a float at the current position. Decimal numbers with up to 18
+   * significant digits and small exponents are converted with a single
+   * double operation, everything else falls back to Float.parseFloat().
+   */
+  private float parseFloat() {
+    int start = pos;
+    boolean negative = false;
+    byte c = at(pos);
+    if (c == '-' || c == '+') {
+      negative = c == '-';
+      pos++;
+    }
+    long mantissa = 0;
+    int numberOfDigits = 0;
+    int significantDigits = 0;
+    int exponent = 0;
+    while (isDigit(c = at(pos))) {
+      if (significantDigits >= 18) {
+        return parseFloatSlow(start);
+      }
+      mantissa = mantissa * 10 + (c - '0');
+      if (mantissa != 0) {
+        significantDigits++;
+      }
+      numberOfDigits++;
+      pos++;
+    }
+    if (c == '.') {
+      pos++;
+      while (isDigit(c = at(pos))) {
+        if (significantDigits >= 18) {
+          return parseFloatSlow(start);
+        }
+        mantissa = mantissa * 10 + (c - '0');
+        if (mantissa != 0) {
+          significantDigits++;
+        }
+        exponent--;
+        numberOfDigits++;
+        pos++;
+      }
+    }
+    if (numberOfDigits == 0) {
+      return parseFloatSlow(start);
+    }
+    if (c == 'e' || c == 'E') {
+      pos++;
+      boolean negativeExponent = false;
+      c = at(pos);
+      if (c == '-' || c == '+') {
+        negativeExponent = c == '-';
+        pos++;
+      }
+      int exponentStart = pos;
+      int e = 0;
+      while (isDigit(c = at(pos))) {
+        if (e < 10000) {
+          e = e * 10 + (c - '0');
+        }
+        pos++;
+      }
+      if (pos == exponentStart) {
+        return parseFloatSlow(start);
+      }
+      exponent += negativeExponent ? -e : e;
+    }
+    if (!isSeparator(c) || mantissa > MAX_EXACT_MANTISSA) {
+      return parseFloatSlow(start);
+    }
+
+    double value;
+    if (mantissa == 0) {
+      value = 0;
+    } else if (exponent == 0) {
+      value = mantissa;
+    } else if (exponent < 0 && exponent >= -22) {
+      value = mantissa / POW10[-exponent];
+    } else if (exponent > 0 && exponent <= 22) {
+      value = mantissa * POW10[exponent];
+    } else {
+      return parseFloatSlow(start);
+    }
+    // Rounding to double and then to float differs from rounding directly to
+    // float only if the double lies exactly halfway between two floats
+    if ((Double.doubleToRawLongBits(value) & FLOAT_ROUNDING_BITS)
+            == FLOAT_HALFWAY_BITS) {
+      return parseFloatSlow(start);
+    }
+    return (float) (negative ? -value : value);
+  }
+
+  /**
+   * Parse the token starting at 'start' with Float.parseFloat().
+   */
+  private float parseFloatSlow(int start) {
+    pos = start;
+    while (!isSeparator(at(pos))) {
+      pos++;
+    }
+    return Float.parseFloat(new String(buffer, start, pos - start,
+            StandardCharsets.US_ASCII));
+  }
+
+  /**
+   * Read the next whitespace-separated token in the line as a string, null if
+   * the line has no further token.
+   */
+  private String parseName() {
+    if (!nextToken()) {
+      return null;
+    }
+    int start = pos;
+    while (!isSeparator(at(pos))) {
+      pos++;
+    }
+    return new String(buffer, start, pos - start, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Check if the line continues with the given operator followed by a
+   * separator, consumes the operator in this case.
+   */
+  private boolean matchOperator(String operator) {
+    int length = operator.length();
+    for (int i = 0; i < length; i++) {
+      if (at(pos + i) != operator.charAt(i)) {
+        return false;
+      }
+    }
+    if (!isSeparator(at(pos + length))) {
+      return false;
+    }
+    pos += length;
+    return true;
+  }
+
+  /**
+   * Skip blanks, returns true if another token follows in the current line.
+   */
+  private boolean nextToken() {
+    skipBlanks();
+    byte c = at(pos);
+    return c != '\n' && c != '\r';
+  }
+
+  private void skipBlanks() {
+    byte c;
+    while ((c = at(pos)) == ' ' || c == '\t') {
+      pos++;
+    }
+  }
+
+  /**
+   * Move to the start of the next line.
+   */
+  private void skipLine() {
+    while (pos < end && buffer[pos] != '\n') {
+      pos++;
+    }
+    pos++;
+  }
+
+  /**
+   * Byte at index i, the end of the range is reported as a line break.
+   */
+  private byte at(int i) {
+    return i < end ? buffer[i] : (byte) '\n';
+  }
+
+  private static boolean isDigit(byte c) {
+    return c >= '0' && c <= '9';
+  }
+
+  /**
+   * Blank or line break (or any other control character).
+   */
+  private static boolean isSeparator(byte c) {
+    return c >= 0 && c <= ' ';
+  }
+}
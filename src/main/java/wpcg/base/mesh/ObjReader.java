@@ -6,40 +6,71 @@
 package wpcg.base.mesh;
 
 import com.jme3.math.ColorRGBA;
-import com.jme3.math.Vector2f;
-import com.jme3.math.Vector3f;
 import wpcg.base.Logger;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 /**
- * Read OBJ file and fill triangle mesh with the content.
+ * Read OBJ file and fill triangle mesh with the content. All objects and
+ * material sections of the file share one vertex and texture coordinate list,
+ * each section is stored as a triangle range (see {@link MeshGroup}) in the
+ * resulting mesh. Use {@link TriangleMesh#createSubmesh(int)} to extract a
+ * section as a standalone mesh.
+ * <p>
+ * The OBJ file is parsed on byte level by the {@link ObjParser}, only the
+ * (small) material files are read line by line. {@link #readParallel(String)}
+ * parses large files in parallel, {@link #readIndexed(String)} creates a mesh
+ * with one vertex per distinct position/texture coordinate/normal combination
+ * which can be uploaded without expanding the triangle corners.
  */
 public class ObjReader {
 
-  private static final String OP_MAT_LIB = "mtllib";
-  private static final String OP_VERTEX = "v";
-  private static final String OP_FACET = "f";
-  private static final String OP_TEXTURE_COORDINATE = "vt";
-  private static final String OP_MAT_NEW_MAT = "newmtl";
-  private static final String OP_MAT_KD = "Kd";
-  private static final String OP_MAT_TEXTURE = "map_Kd";
-  private static final String OP_NEW_OBJECT = "o";
-  private static final String OP_USE_MTL = "usemtl";
   private static final ColorRGBA DEFAULT_COLOR = new ColorRGBA(0.5f, 0.5f,
           0.5f, 1);
 
+  /**
+   * Chunk size limits for the parallel import (bytes).
+   */
+  private static final int MIN_CHUNK_SIZE = 1 << 20;
+  private static final int MAX_CHUNK_SIZE = 32 << 20;
+
+  /**
+   * Version of the import result, must be increased whenever the same OBJ
+   * file results in a different mesh (invalidates cached imports).
+   */
+  static final int IMPORTER_VERSION = 1;
+
+  /**
+   * Normals from the file whose squared length deviates at most this much
+   * from 1 are not normalized again.
+   */
+  private static final float UNIT_LENGTH_TOLERANCE = 1e-5f;
+
+  /**
+   * Size of the blocks read by the streaming parser (bytes).
+   */
+  private static final int STREAM_BLOCK_SIZE = 1 << 20;
+
   // Subdirectory used to look for the material file (extracted from mesh file).
   private String directory = "";
 
+  /**
+   * Reorder triangles and vertices for the GPU vertex cache after reading.
+   */
+  private boolean optimizeVertexCache = false;
+
   // State of the import process
-  private TriangleMesh currentMesh = null;
+  private TriangleMesh mesh = null;
   private Material currentMaterial = null;
   private Map<String, Material> materials = null;
-  private List<TriangleMesh> meshes = new ArrayList<TriangleMesh>();
-  private int vertexIndexOffset = 0;
-  private int texCoordOffset = 0;
+  private String currentGroupName = null;
+  private int currentGroupStart = 0;
 
   /**
    * Lesen eines Dreiecksnetzes aus einer OBJ-Datei. Die Information wird in das
@@ -49,330 +80,642 @@ public class ObjReader {
    */
   public TriangleMesh read(final String filename) {
     // Setup
-    meshes.clear();
-    directory = new File(filename).getParent() + "/";
-    currentMesh = new TriangleMesh();
-    meshes.add(currentMesh);
+    directory = getDirectory(filename);
+    mesh = new TriangleMesh();
     materials = new HashMap<String, Material>();
-    vertexIndexOffset = 0;
-    texCoordOffset = 0;
-    //textureCoordinates.clear();
+    currentMaterial = null;
+    currentGroupName = null;
+    currentGroupStart = 0;
 
     // Read input
     //System.out.println("Trying to read OBJ file " + filename);
-    InputStream inputStream = getInputStream(filename);
-    try {
-      String strLine = "";
-      DataInputStream in = new DataInputStream(inputStream);
-      BufferedReader br = new BufferedReader(new InputStreamReader(in));
-      while ((strLine = br.readLine()) != null) {
-        parseLine(strLine);
-      }
-      in.close();
-    } catch (Exception e) {
-      Logger.getInstance().msg("Error reading from the OBJ file.");
+    if (!stream(filename, new MeshBuilder())) {
+      mesh = null;
       return null;
     }
+    closeGroup(mesh.getNumberOfTriangles());
 
-    // Post-process meshes
-    for (Iterator<TriangleMesh> it = meshes.iterator(); it.hasNext(); ) {
-      TriangleMesh mesh = it.next();
-      if (mesh.getNumberOfTriangles() == 0) {
-        it.remove();
-        continue;
-      }
+    TriangleMesh mesh = this.mesh;
+    this.mesh = null;
+    return postProcess(mesh, filename);
+  }
 
-      // Remove degenerated triangles
-      for (int i = 0; i < mesh.getNumberOfTriangles(); i++) {
-        Triangle t = mesh.getTriangle(i);
-        Vector3f a = mesh.getVertex(t.getVertexIndex(0)).position;
-        Vector3f b = mesh.getVertex(t.getVertexIndex(1)).position;
-        Vector3f c = mesh.getVertex(t.getVertexIndex(2)).position;
-        if (t.isDegenerated() || Triangle.getArea(a, b, c) < 1e-5) {
-          mesh.removeTriangle(i);
-          i--;
-        }
-      }
+  /**
+   * Read the OBJ file into a compact indexed mesh: every distinct (v, vt, vn)
+   * index tuple used by the faces becomes one mesh vertex with the position,
+   * the normal ('vn') and the texture coordinate of the tuple. The texture
+   * coordinate indices of the triangles equal the vertex indices, so the
+   * smooth layout of the {@link JmeMeshConverter} uploads the mesh as is.
+   * <p>
+   * If all face corners reference normals, the normals of the file are used
+   * and no normals are computed (the facet normals are not set, call
+   * computeTriangleNormals() for flat shading). Otherwise the vertex normals
+   * are computed.
+   * <p>
+   * Returns null if the file cannot be read.
+   */
+  public TriangleMesh readIndexed(final String filename) {
+    // Setup
+    directory = getDirectory(filename);
+    mesh = new TriangleMesh();
+    materials = new HashMap<String, Material>();
+    currentMaterial = null;
+    currentGroupName = null;
+    currentGroupStart = 0;
 
-      mesh.computeTriangleNormals();
-      Logger.getInstance().debug("Successfully created triangle mesh with "
-              + mesh.getNumberOfVertices() + " vertices and "
-              + mesh.getNumberOfTriangles() + " triangles.");
+    // Read input
+    IndexedMeshBuilder builder = new IndexedMeshBuilder();
+    if (!stream(filename, builder)) {
+      mesh = null;
+      return null;
     }
+    closeGroup(mesh.getNumberOfTriangles());
 
-    if (meshes.size() == 0) {
-      System.out.println("Could not find any meshes in OBJ file " + filename);
+    TriangleMesh mesh = this.mesh;
+    this.mesh = null;
+    if (!removeDegeneratedTriangles(mesh, filename)) {
+      return null;
     }
-
-    return TriangleMeshTools.unite(meshes);
+    compactIndexedMesh(mesh, builder.hasTextureCoordinates);
+    if (builder.hasMissingNormals) {
+      mesh.computeVertexNormals();
+    }
+    if (optimizeVertexCache) {
+      VertexCacheOptimizer.optimize(mesh);
+    }
+    logResult(mesh);
+    return mesh;
   }
 
-
   /**
-   * Get in input stream from a file.
+   * Parse an OBJ file and pass its content to the visitor while parsing. The
+   * file is read in blocks of fixed size, so the memory consumption does not
+   * depend on the file size: statistics, bounds or a reduced mesh can be
+   * computed for files which do not fit into memory. Material files are not
+   * read. Returns true if the file was parsed successfully.
    */
-  private InputStream getInputStream(String filename) {
-    File initialFile = new File("src/main/resources/" + filename);
-    try {
-      InputStream stream = new FileInputStream(initialFile);
-      if (stream == null) {
-        Logger.getInstance().msg(
-                "Mesh file " + filename + " cannot be found.");
+  public boolean stream(final String filename, ObjVisitor visitor) {
+    ObjParser parser = new ObjParser(visitor);
+    try (FileChannel channel = FileChannel.open(getFile(filename).toPath(),
+            StandardOpenOption.READ)) {
+      byte[] block = new byte[STREAM_BLOCK_SIZE];
+      int filled = 0;
+      int n;
+      while ((n = channel.read(ByteBuffer.wrap(block, filled,
+              block.length - filled))) >= 0) {
+        filled += n;
+        // Parse all complete lines, keep the rest for the next block
+        int lineEnd = filled;
+        while (lineEnd > 0 && block[lineEnd - 1] != '\n') {
+          lineEnd--;
+        }
+        if (lineEnd == 0) {
+          if (filled == block.length) {
+            // Line longer than the block
+            block = Arrays.copyOf(block, 2 * block.length);
+          }
+          continue;
+        }
+        parser.parse(block, 0, lineEnd);
+        System.arraycopy(block, lineEnd, block, 0, filled - lineEnd);
+        filled -= lineEnd;
       }
-      return stream;
-    } catch (FileNotFoundException e) {
+      parser.parse(block, 0, filled);
+    } catch (IOException e) {
       Logger.getInstance().error("Failed to read mesh file " + filename);
-      return null;
+      return false;
+    } catch (Exception e) {
+      Logger.getInstance().msg("Error reading from the OBJ file.");
+      return false;
     }
+    return true;
   }
 
   /**
-   * Einlesen einer Zeile aus der OBJ-Datei.
+   * Same result as read(), but the file is memory-mapped and split into
+   * chunks at line boundaries. The chunks are parsed in parallel into
+   * primitive buffers, afterwards the object/material switches are resolved
+   * sequentially and the chunks are copied into the mesh in parallel.
    */
-  private void parseLine(String strLine) {
-    String line = trim(strLine);
-    String operator = getOperator(line);
-    if (operator.equals(OP_MAT_LIB)) {
-      // Lesen der Materialdatei (Texturname)
-      parseUseMaterial(line);
-    }
-    if (operator.equals(OP_NEW_OBJECT)) {
-      // Neues (Teil-)Objekt
-      vertexIndexOffset += currentMesh.getNumberOfVertices();
-      texCoordOffset += currentMesh.getNumberOfTextureCoordinates();
-      currentMesh = new TriangleMesh();
-
-      meshes.add(currentMesh);
-    } else if (operator.equals(OP_USE_MTL)) {
-      String[] components = line.split("\\s+");
-      currentMaterial = null;
-      if (components.length > 1) {
-        String materalId = components[1];
-        // System.out.println("Assigned material: " + materalId);
-        Material mat = materials.get(materalId);
-        if (mat != null) {
-
-          // Testing: add new mesh for each material
-          // copy vertices and texture coordinates
-          currentMesh = new TriangleMesh((TriangleMesh) currentMesh);
-          currentMesh.clearTriangles();
-          meshes.add(currentMesh);
-
-          currentMaterial = mat;
-          currentMesh.setTextureName(null);
-          if (mat.getTextureFilename() != null
-                  && mat.getTextureFilename().length() > 0) {
-            currentMesh.setTextureName(mat.getTextureFilename());
-          }
+  public TriangleMesh readParallel(final String filename) {
+    // Setup
+    directory = getDirectory(filename);
+    materials = new HashMap<String, Material>();
+    currentMaterial = null;
+    currentGroupName = null;
+    currentGroupStart = 0;
+
+    // Parse chunks
+    ObjChunk[] chunks;
+    try (FileChannel channel = FileChannel.open(getFile(filename).toPath(),
+            StandardOpenOption.READ)) {
+      long[] chunkBounds = computeChunkBounds(channel);
+      chunks = new ObjChunk[chunkBounds.length - 1];
+      ParallelRange.forEach(chunks.length, 1, (from, to) -> {
+        for (int i = from; i < to; i++) {
+          chunks[i] = parseChunk(channel, chunkBounds[i], chunkBounds[i + 1]);
+        }
+      });
+    } catch (IOException | UncheckedIOException e) {
+      Logger.getInstance().error("Failed to read mesh file " + filename);
+      return null;
+    } catch (Exception e) {
+      Logger.getInstance().msg("Error reading from the OBJ file.");
+      return null;
+    }
+
+    // Chunk offsets and groups
+    int[] vertexOffsets = new int[chunks.length + 1];
+    int[] texCoordOffsets = new int[chunks.length + 1];
+    int[] triangleOffsets = new int[chunks.length + 1];
+    for (int i = 0; i < chunks.length; i++) {
+      vertexOffsets[i + 1] = vertexOffsets[i] + chunks[i].numberOfVertices;
+      texCoordOffsets[i + 1] = texCoordOffsets[i]
+              + chunks[i].numberOfTextureCoordinates;
+      triangleOffsets[i + 1] = triangleOffsets[i]
+              + chunks[i].numberOfTriangles;
+    }
+    int numberOfVertices = vertexOffsets[chunks.length];
+    int numberOfTexCoords = texCoordOffsets[chunks.length];
+    int numberOfTriangles = triangleOffsets[chunks.length];
+    mesh = new TriangleMesh(numberOfVertices, numberOfTriangles);
+    for (int i = 0; i < chunks.length; i++) {
+      for (ObjChunk.Event event : chunks[i].events) {
+        closeGroup(triangleOffsets[i] + event.triangle);
+        if (event.type == ObjChunk.EVENT_OBJECT) {
+          currentGroupName = event.name;
+        } else if (event.type == ObjChunk.EVENT_USE_MATERIAL) {
+          currentMaterial = event.name != null ? materials.get(event.name)
+                  : null;
+        } else {
+          parseMaterialFile(directory + event.name);
         }
       }
-    } else if (operator.equals(OP_VERTEX)) {
-      // Lesen eines Vertex
-      Vector3f position = parseVertex(line);
-      if (position != null) {
-        currentMesh.addVertex(position);
-      }
-    } else if (operator.equals(OP_FACET)) {
-      try {
-        // Lesen einer Facette (Dreieck)
-        parseFacet(line);
-      } catch (Exception e) {
-        System.out.println("Failed to parseFile facet.");
+    }
+    closeGroup(numberOfTriangles);
+
+    // Copy chunks into the mesh
+    TriangleMesh mesh = this.mesh;
+    this.mesh = null;
+    VertexArrays vertices = mesh.vertices;
+    TriangleArrays triangles = mesh.triangles;
+    vertices.size = numberOfVertices;
+    triangles.size = numberOfTriangles;
+    mesh.textureCoordinates = new float[Math.max(2 * numberOfTexCoords, 2)];
+    mesh.numberOfTextureCoordinates = numberOfTexCoords;
+    ParallelRange.forEach(chunks.length, 1, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        copyChunk(chunks[i], mesh, vertexOffsets[i], texCoordOffsets[i],
+                triangleOffsets[i]);
+        chunks[i] = null;
       }
-    } else if (operator.equals(OP_TEXTURE_COORDINATE)) {
-      // Lesen einer Texturkoordinate
-      Vector2f t = parseTextureCoordinate(line);
-      if (t != null) {
-        currentMesh.addTextureCoordinate(t);
-        //textureCoordinates.add(t);
+    });
+    for (int i = 0; i < mesh.getNumberOfGroups(); i++) {
+      MeshGroup group = mesh.getGroup(i);
+      ColorRGBA color = group.getMaterial() != null
+              ? group.getMaterial().getColor() : DEFAULT_COLOR;
+      for (int t = group.getFirstTriangle();
+           t < group.getFirstTriangle() + group.getNumberOfTriangles(); t++) {
+        triangles.setColor(t, color.r, color.g, color.b, color.a);
       }
     }
+    vertices.invalidateBounds();
+    triangles.modCount++;
+
+    return postProcess(mesh, filename);
   }
 
   /**
-   * Einlesen einer Materialdatei mit Texturinformtion. Liefert den Namen der
-   * Texturdatei. Liefert null, falls keine Textur gefunden wurde.
+   * Enable the optional vertex cache optimization (see
+   * {@link VertexCacheOptimizer}) of the meshes read afterwards. The
+   * triangles keep their groups, but their order and the vertex order
+   * change. Disabled by default.
    */
-  private void parseUseMaterial(String line) {
-    String[] components = line.split("\\s+");
-    if (components.length == 2) {
-      String materialFilename = components[1];
-      parseMaterialFile(directory + materialFilename);
-    }
+  public void setOptimizeVertexCache(boolean optimizeVertexCache) {
+    this.optimizeVertexCache = optimizeVertexCache;
   }
 
-  private void parseMaterialFile(String materialFilename) {
-    currentMaterial = null;
-    //System.out.println("Trying to read material file " + materialFilename);
-    InputStream is = getInputStream(materialFilename);
-    try {
-      String strLine = "";
-      DataInputStream in = new DataInputStream(is);
-      BufferedReader br = new BufferedReader(new InputStreamReader(in));
-      while ((strLine = br.readLine()) != null) {
-        parseMaterialLine(strLine);
+  /**
+   * Split the file into chunks, each chunk starts at the beginning of a line.
+   * Returns the chunk boundaries (first entry 0, last entry the file size).
+   */
+  private static long[] computeChunkBounds(FileChannel channel)
+          throws IOException {
+    long size = channel.size();
+    int parallelism = ForkJoinPool.getCommonPoolParallelism();
+    long chunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE,
+            size / (4L * parallelism) + 1));
+    List<Long> bounds = new ArrayList<>();
+    bounds.add(0L);
+    ByteBuffer buffer = ByteBuffer.allocate(4096);
+    long position = chunkSize;
+    while (position < size) {
+      // Move to the start of the next line
+      long lineStart = size;
+      long readPosition = position - 1;
+      while (readPosition < size && lineStart == size) {
+        buffer.clear();
+        int n = channel.read(buffer, readPosition);
+        for (int i = 0; i < n; i++) {
+          if (buffer.get(i) == '\n') {
+            lineStart = readPosition + i + 1;
+            break;
+          }
+        }
+        readPosition += Math.max(n, 1);
       }
-      in.close();
-    } catch (Exception e) {
-      System.out.println(
-              "Error reading from the material file " + materialFilename + ".");
-      return;
+      if (lineStart >= size) {
+        break;
+      }
+      bounds.add(lineStart);
+      position = lineStart + chunkSize;
     }
-
-    // System.out.println("Materials:");
-    // for (Material mat : materials.values()) {
-    // System.out.println(" - " + mat);
-    // }
+    bounds.add(size);
+    long[] result = new long[bounds.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = bounds.get(i);
+    }
+    return result;
   }
 
-  private void parseMaterialLine(String strLine) {
-    String line = trim(strLine);
-    String operator = getOperator(line);
-    if (operator.equals(OP_MAT_NEW_MAT)) {
-      String[] components = strLine.split("\\s+");
-      if (components.length >= 2) {
-        String materialId = components[1];
-        currentMaterial = new Material(materialId);
-        materials.put(materialId, currentMaterial);
-        // System.out.println("Found material " + materialId);
-      }
-    } else if (operator.equals(OP_MAT_KD)) {
-      String[] components = strLine.split("\\s+");
-      if (components.length >= 4) {
-        ColorRGBA color = new ColorRGBA(Float.parseFloat(components[1]),
-                Float.parseFloat(components[2]), Float.parseFloat(components[3]),
-                1);
-        currentMaterial.setColor(color);
-      }
-    } else if (operator.equals(OP_MAT_TEXTURE)) {
-      String[] components = strLine.split("\\s+");
-      if (components.length >= 2) {
-        String textureFilename = components[1];
-        if (textureFilename != null) {
-          textureFilename = textureFilename.trim();
-          if (textureFilename.length() != 0) {
-
-            currentMaterial.setTextureFilename(textureFilename);
-          }
-        }
-      }
+  /**
+   * Map and parse the chunk [from, to) of the file.
+   */
+  private static ObjChunk parseChunk(FileChannel channel, long from, long to) {
+    byte[] content = new byte[(int) (to - from)];
+    try {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+              from, to - from);
+      buffer.get(content);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
     }
+    ObjChunk chunk = new ObjChunk();
+    new ObjParser(chunk).parse(content, 0, content.length);
+    return chunk;
   }
 
   /**
-   * Entfernen doppelter Leerzeichen aus einer Zeile.
+   * Copy the content of a chunk to the given offsets in the (already sized)
+   * mesh arrays and resolve the chunk-relative indices.
    */
-  private static String trim(String strLine) {
-    String line = strLine.trim();
-    line = line.replaceAll("  ", " ");
-    int l = line.length();
-    while (l < line.length()) {
-      l = line.length();
-      line = line.replaceAll("  ", " ");
-    }
-    return line;
+  private static void copyChunk(ObjChunk chunk, TriangleMesh mesh,
+                                int vertexOffset, int texCoordOffset,
+                                int triangleOffset) {
+    VertexArrays vertices = mesh.vertices;
+    System.arraycopy(chunk.positions, 0, vertices.positions, 3 * vertexOffset,
+            3 * chunk.numberOfVertices);
+    for (int v = vertexOffset; v < vertexOffset + chunk.numberOfVertices; v++) {
+      vertices.setNormal(v, 0, 1, 0);
+      vertices.setColor(v, DEFAULT_COLOR.r, DEFAULT_COLOR.g, DEFAULT_COLOR.b,
+              DEFAULT_COLOR.a);
+    }
+    System.arraycopy(chunk.textureCoordinates, 0, mesh.textureCoordinates,
+            2 * texCoordOffset, 2 * chunk.numberOfTextureCoordinates);
+
+    TriangleArrays triangles = mesh.triangles;
+    int[] vertexIndices = chunk.vertexIndices;
+    int[] texCoordIndices = chunk.texCoordIndices;
+    for (int i = 0; i < chunk.numberOfRelativeVertexSlots; i++) {
+      vertexIndices[chunk.relativeVertexSlots[i]] += vertexOffset;
+    }
+    for (int i = 0; i < chunk.numberOfRelativeTexCoordSlots; i++) {
+      texCoordIndices[chunk.relativeTexCoordSlots[i]] += texCoordOffset;
+    }
+    System.arraycopy(vertexIndices, 0, triangles.vertexIndices,
+            3 * triangleOffset, 3 * chunk.numberOfTriangles);
+    System.arraycopy(texCoordIndices, 0, triangles.texCoordIndices,
+            3 * triangleOffset, 3 * chunk.numberOfTriangles);
+    for (int t = triangleOffset; t < triangleOffset + chunk.numberOfTriangles;
+         t++) {
+      triangles.setNormal(t, 1, 0, 0);
+    }
   }
 
   /**
-   * Auslesen einer Zeile, die eine Texturkoordinate beinhaltet.
+   * Remove degenerated triangles and compute the facet normals, returns null
+   * if the mesh has no triangles.
    */
-  private Vector2f parseTextureCoordinate(String strLine) {
-    String line = trim(strLine);
-    String[] allCoords = line.split("\\s+");
-    float u = 0;
-    float v = 0;
-    if (allCoords.length >= 3) {
-      u = getFloatValue(allCoords[1]);
-      v = getFloatValue(allCoords[2]);
-      // Andrdoid?
-      //return new Vector(u, 1 - v, 0);
-      return new Vector2f(u, v);
-    }
-
-    return null;
+  private TriangleMesh postProcess(final TriangleMesh mesh, String filename) {
+    if (!removeDegeneratedTriangles(mesh, filename)) {
+      return null;
+    }
+    mesh.computeTriangleNormals();
+    if (optimizeVertexCache) {
+      VertexCacheOptimizer.optimize(mesh);
+    }
+    logResult(mesh);
+    return mesh;
   }
 
   /**
-   * String -> float.
+   * Remove degenerated triangles and empty groups, returns false if the mesh
+   * has no triangles.
    */
-  private float getFloatValue(String string) {
-    if (string.length() == 0) {
-      return 0;
+  private static boolean removeDegeneratedTriangles(final TriangleMesh mesh,
+                                                    String filename) {
+    if (mesh.getNumberOfTriangles() == 0) {
+      System.out.println("Could not find any meshes in OBJ file " + filename);
+      return false;
     }
-    return Float.valueOf(string);
+
+    // Remove degenerated triangles (the groups are updated accordingly)
+    mesh.removeTrianglesIf(t -> TriangleMeshTools.isDegenerated(mesh, t,
+            1e-5));
+    mesh.removeEmptyGroups();
+    if (mesh.getNumberOfGroups() > 0) {
+      mesh.setTextureName(mesh.getGroup(0).getTextureName());
+    }
+    return true;
   }
 
   /**
-   * Lesen einer Zeile, die ein Dreieck repräsentiert (Indices der Eckpunkte,
-   * Indices der Texturkoordinaten).
+   * Remove the vertices (and their texture coordinates) which are no longer
+   * used after the degenerated triangles were removed. Without texture
+   * coordinates in the file, the per-vertex texture coordinates are dropped.
    */
-  private void parseFacet(String strLine) {
-    String[] allCoords = strLine.split("\\s+");
-    if (allCoords.length == 4) {
-      createTriangle(allCoords[1], allCoords[2], allCoords[3]);
-    } else if (allCoords.length == 5) {
-      createTriangle(allCoords[1], allCoords[2], allCoords[3]);
-      createTriangle(allCoords[1], allCoords[3], allCoords[4]);
+  private static void compactIndexedMesh(TriangleMesh mesh,
+                                         boolean hasTextureCoordinates) {
+    int[] remap = mesh.removeUnreferencedVertices();
+    TriangleArrays triangles = mesh.triangles;
+    if (!hasTextureCoordinates) {
+      mesh.numberOfTextureCoordinates = 0;
+      Arrays.fill(triangles.texCoordIndices, 0, 3 * triangles.size, -1);
+      return;
     }
+    float[] uv = mesh.textureCoordinates;
+    for (int v = 0; v < remap.length; v++) {
+      // The remap is ascending, so moving forward never overwrites
+      if (remap[v] >= 0 && remap[v] != v) {
+        uv[2 * remap[v]] = uv[2 * v];
+        uv[2 * remap[v] + 1] = uv[2 * v + 1];
+      }
+    }
+    mesh.numberOfTextureCoordinates = mesh.vertices.size;
+    System.arraycopy(triangles.vertexIndices, 0, triangles.texCoordIndices, 0,
+            3 * triangles.size);
   }
 
-  private void createTriangle(String token1, String token2, String token3) {
-    Triangle t = new Triangle(getVertexIndexFromToken(token1),
-            getVertexIndexFromToken(token2), getVertexIndexFromToken(token3));
-    t.setTextureCoordinates(getTexCoordIndexFromToken(token1),
-            getTexCoordIndexFromToken(token2),
-            getTexCoordIndexFromToken(token3));
-    t.setColor(DEFAULT_COLOR);
-    if (currentMaterial != null) {
-      t.setColor(currentMaterial.getColor());
-    }
-    currentMesh.addTriangle(t);
+  private static void logResult(TriangleMesh mesh) {
+    Logger.getInstance().debug("Successfully created triangle mesh with "
+            + mesh.getNumberOfVertices() + " vertices, "
+            + mesh.getNumberOfTriangles() + " triangles and "
+            + mesh.getNumberOfGroups() + " groups.");
   }
 
-  private int getVertexIndexFromToken(String token) {
-    String[] tokens = token.split("/");
-    if (tokens.length > 0 && tokens[0].length() > 0) {
-      return Integer.parseInt(tokens[0]) - 1 - vertexIndexOffset;
-    } else {
-      return -1;
+  /**
+   * Finish the current group at triangle 'end' (if it contains triangles) and
+   * start a new one.
+   */
+  private void closeGroup(int end) {
+    if (end > currentGroupStart) {
+      mesh.addGroup(new MeshGroup(currentGroupName, currentMaterial,
+              currentGroupStart, end - currentGroupStart));
     }
+    currentGroupStart = end;
+  }
+
+  /**
+   * OBJ index (1-based, negative values are relative to the end of the list)
+   * -> 0-based index, -1 if the index is missing.
+   */
+  private static int toIndex(int objIndex, int listSize) {
+    return objIndex < 0 ? listSize + objIndex : objIndex - 1;
   }
 
-  private int getTexCoordIndexFromToken(String token) {
-    String[] tokens = token.split("/");
-    if (tokens.length > 1 && tokens[1].length() > 0) {
-      return Integer.parseInt(tokens[1]) - 1 - texCoordOffset;
-    } else {
-      return -1;
+  /**
+   * Fills the mesh with the parsed content.
+   */
+  private class MeshBuilder implements ObjVisitor {
+
+    @Override
+    public void vertex(float x, float y, float z) {
+      mesh.addVertex(x, y, z);
+    }
+
+    @Override
+    public void textureCoordinate(float u, float v) {
+      mesh.addTextureCoordinate(u, v);
+    }
+
+    @Override
+    public void face(int[] vertexIndices, int[] texCoordIndices,
+                     int[] normalIndices, int numberOfCorners) {
+      // Triangle fan
+      for (int i = 1; i + 1 < numberOfCorners; i++) {
+        createTriangle(vertexIndices, texCoordIndices, 0, i, i + 1);
+      }
+    }
+
+    @Override
+    public void object(String name) {
+      // Neues (Teil-)Objekt
+      closeGroup(mesh.getNumberOfTriangles());
+      currentGroupName = name;
+    }
+
+    @Override
+    public void useMaterial(String name) {
+      // Neue Gruppe fuer jedes Material (gleiche Vertices)
+      closeGroup(mesh.getNumberOfTriangles());
+      currentMaterial = name != null ? materials.get(name) : null;
+    }
+
+    @Override
+    public void materialLibrary(String filename) {
+      // Lesen der Materialdatei (Texturname), setzt das aktuelle Material
+      closeGroup(mesh.getNumberOfTriangles());
+      parseMaterialFile(directory + filename);
     }
   }
 
+  private void createTriangle(int[] vertexIndices, int[] texCoordIndices,
+                              int c0, int c1, int c2) {
+    int numberOfVertices = mesh.getNumberOfVertices();
+    int numberOfTexCoords = mesh.getNumberOfTextureCoordinates();
+    int t = mesh.addTriangle(toIndex(vertexIndices[c0], numberOfVertices),
+            toIndex(vertexIndices[c1], numberOfVertices),
+            toIndex(vertexIndices[c2], numberOfVertices));
+    mesh.triangles.setTexCoordIndices(t,
+            toIndex(texCoordIndices[c0], numberOfTexCoords),
+            toIndex(texCoordIndices[c1], numberOfTexCoords),
+            toIndex(texCoordIndices[c2], numberOfTexCoords));
+    setMaterialColor(t);
+  }
+
   /**
-   * Lesen einer Zeile, die einen Vertex repräsentiert.
+   * Set the color of the current material for triangle t.
    */
-  private Vector3f parseVertex(String strLine) {
-    String[] components = strLine.split("\\s+");
-    if (components.length >= 4) {
-      float x = Float.parseFloat(components[1]);
-      float y = Float.parseFloat(components[2]);
-      float z = Float.parseFloat(components[3]);
-      return new Vector3f(x, y, z);
-    }
-    return null;
+  private void setMaterialColor(int t) {
+    ColorRGBA color = currentMaterial != null ? currentMaterial.getColor()
+            : DEFAULT_COLOR;
+    mesh.triangles.setColor(t, color.r, color.g, color.b, color.a);
   }
 
   /**
-   * Extract the operator char from a line.
-   *
-   * @param strLine
-   * @return String representing the operator
+   * Creates one mesh vertex per distinct (v, vt, vn) tuple. The tuples are
+   * looked up in two steps, both with exact long keys: (vt, vn) -> attribute
+   * pair, (v, attribute pair) -> mesh vertex.
    */
-  private String getOperator(String strLine) {
-    String[] components = strLine.split("\\s+");
-    if (components.length > 0) {
-      return components[0];
-    } else {
-      return "";
+  private class IndexedMeshBuilder extends MeshBuilder {
+
+    // Attribute lists of the file
+    private float[] positions = new float[3 * 1024];
+    private int numberOfPositions = 0;
+    private float[] texCoords = new float[2 * 1024];
+    private int numberOfTexCoords = 0;
+    private float[] normals = new float[3 * 1024];
+    private int numberOfNormals = 0;
+
+    private final LongIntHashMap attributePairs = new LongIntHashMap(1024);
+    private final LongIntHashMap tuples = new LongIntHashMap(1024);
+
+    // Mesh vertex of each corner of the current face
+    private int[] cornerVertices = new int[8];
+
+    boolean hasTextureCoordinates = false;
+    boolean hasMissingNormals = false;
+
+    @Override
+    public void vertex(float x, float y, float z) {
+      positions = ensureSize(positions, 3 * numberOfPositions + 3);
+      positions[3 * numberOfPositions] = x;
+      positions[3 * numberOfPositions + 1] = y;
+      positions[3 * numberOfPositions + 2] = z;
+      numberOfPositions++;
     }
+
+    @Override
+    public void textureCoordinate(float u, float v) {
+      texCoords = ensureSize(texCoords, 2 * numberOfTexCoords + 2);
+      texCoords[2 * numberOfTexCoords] = u;
+      texCoords[2 * numberOfTexCoords + 1] = v;
+      numberOfTexCoords++;
+    }
+
+    @Override
+    public void normal(float x, float y, float z) {
+      normals = ensureSize(normals, 3 * numberOfNormals + 3);
+      normals[3 * numberOfNormals] = x;
+      normals[3 * numberOfNormals + 1] = y;
+      normals[3 * numberOfNormals + 2] = z;
+      numberOfNormals++;
+    }
+
+    @Override
+    public void face(int[] vertexIndices, int[] texCoordIndices,
+                     int[] normalIndices, int numberOfCorners) {
+      if (numberOfCorners > cornerVertices.length) {
+        cornerVertices = new int[numberOfCorners];
+      }
+      for (int i = 0; i < numberOfCorners; i++) {
+        cornerVertices[i] = getVertex(vertexIndices[i], texCoordIndices[i],
+                normalIndices[i]);
+      }
+      // Triangle fan
+      for (int i = 1; i + 1 < numberOfCorners; i++) {
+        int t = mesh.addTriangle(cornerVertices[0], cornerVertices[i],
+                cornerVertices[i + 1]);
+        mesh.triangles.setTexCoordIndices(t, cornerVertices[0],
+                cornerVertices[i], cornerVertices[i + 1]);
+        setMaterialColor(t);
+      }
+    }
+
+    /**
+     * Mesh vertex for the OBJ index tuple, created on first use.
+     */
+    private int getVertex(int objVertex, int objTexCoord, int objNormal) {
+      int v = toIndex(objVertex, numberOfPositions);
+      if (v < 0 || v >= numberOfPositions) {
+        throw new IllegalArgumentException("Invalid vertex index "
+                + objVertex + ".");
+      }
+      int vt = toIndex(objTexCoord, numberOfTexCoords);
+      if (vt >= numberOfTexCoords) {
+        vt = -1;
+      }
+      int vn = toIndex(objNormal, numberOfNormals);
+      if (vn >= numberOfNormals) {
+        vn = -1;
+      }
+
+      int newPair = attributePairs.size();
+      int pair = attributePairs.putIfAbsent(key(vt, vn), newPair);
+      if (pair == LongIntHashMap.MISSING) {
+        pair = newPair;
+      }
+      int newVertex = mesh.getNumberOfVertices();
+      int vertex = tuples.putIfAbsent(key(v, pair), newVertex);
+      if (vertex != LongIntHashMap.MISSING) {
+        return vertex;
+      }
+
+      mesh.addVertex(positions[3 * v], positions[3 * v + 1],
+              positions[3 * v + 2]);
+      if (vt >= 0) {
+        mesh.addTextureCoordinate(texCoords[2 * vt], texCoords[2 * vt + 1]);
+        hasTextureCoordinates = true;
+      } else {
+        mesh.addTextureCoordinate(0, 0);
+      }
+      if (vn >= 0) {
+        float x = normals[3 * vn];
+        float y = normals[3 * vn + 1];
+        float z = normals[3 * vn + 2];
+        float lengthSquared = x * x + y * y + z * z;
+        if (Math.abs(lengthSquared - 1) <= UNIT_LENGTH_TOLERANCE) {
+          // Unit normals are taken as is (keeps exported normals stable)
+          mesh.vertices.setNormal(newVertex, x, y, z);
+        } else if (lengthSquared > 0) {
+          float length = (float) Math.sqrt(lengthSquared);
+          mesh.vertices.setNormal(newVertex, x / length, y / length,
+                  z / length);
+        } else {
+          hasMissingNormals = true;
+        }
+      } else {
+        hasMissingNormals = true;
+      }
+      return newVertex;
+    }
+  }
+
+  /**
+   * Exact key for a pair of indices.
+   */
+  private static long key(int a, int b) {
+    return ((long) a << 32) | (b & 0xFFFFFFFFL);
+  }
+
+  private static float[] ensureSize(float[] array, int size) {
+    return size <= array.length ? array
+            : Arrays.copyOf(array, Math.max(size, array.length + (array.length >> 1)));
+  }
+
+  /**
+   * Directory of the OBJ file, used to look for the material files.
+   */
+  static String getDirectory(String filename) {
+    return new File(filename).getParent() + "/";
+  }
+
+  /**
+   * Get the file object for a filename relative to the resources directory.
+   */
+  static File getFile(String filename) {
+    return new File("src/main/resources/" + filename);
+  }
+
+  /**
+   * Read the material file (from the process-wide cache, see
+   * {@link MaterialLibraryCache}), sets the current material to the last
+   * material of the file.
+   */
+  private void parseMaterialFile(String materialFilename) {
+    MaterialLibraryCache.Library library = MaterialLibraryCache.getInstance()
+            .getLibrary(materialFilename);
+    materials.putAll(library.materials);
+    currentMaterial = library.lastMaterial;
   }
 }
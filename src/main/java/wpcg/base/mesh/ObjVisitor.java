@@ -0,0 +1,59 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.base.mesh;
+
+/**
+ * Receives the content of an OBJ file line by line while it is parsed (see
+ * {@link ObjReader#stream(String, ObjVisitor)}). Indices are passed as they
+ * appear in the file (1-based, negative values are relative to the end of the
+ * list), a missing index is passed as 0. All methods do nothing by default.
+ */
+public interface ObjVisitor {
+
+  /**
+   * 'v x y z'
+   */
+  default void vertex(float x, float y, float z) {
+  }
+
+  /**
+   * 'vt u v'
+   */
+  default void textureCoordinate(float u, float v) {
+  }
+
+  /**
+   * 'vn x y z'
+   */
+  default void normal(float x, float y, float z) {
+  }
+
+  /**
+   * 'f v/vt/vn ...', a polygon with the given number of corners (at least 3).
+   * The arrays are reused by the parser and are only valid during the call.
+   */
+  default void face(int[] vertexIndices, int[] texCoordIndices,
+                    int[] normalIndices, int numberOfCorners) {
+  }
+
+  /**
+   * 'o name', name may be null.
+   */
+  default void object(String name) {
+  }
+
+  /**
+   * 'usemtl name', name may be null.
+   */
+  default void useMaterial(String name) {
+  }
+
+  /**
+   * 'mtllib filename', the filename is relative to the OBJ file.
+   */
+  default void materialLibrary(String filename) {
+  }
+}
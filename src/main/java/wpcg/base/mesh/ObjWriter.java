@@ -0,0 +1,482 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.base.mesh;
+
+import com.jme3.math.ColorRGBA;
+import wpcg.base.Logger;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Write a triangle mesh as OBJ file (and MTL file for the materials of the
+ * groups). Each group is written as object ('o') with its material
+ * ('usemtl'), the materials are written to a file with the same base name
+ * and the extension '.mtl' (texture filenames are written as stored in the
+ * materials). Triangle colors are not exported.
+ * <p>
+ * The output is formatted into a reusable byte buffer without creating
+ * strings for numbers. Floats are written with the fewest digits which read
+ * back to exactly the same value (very small and very large values fall back
+ * to Float.toString()).
+ */
+public class ObjWriter {
+
+  /**
+   * Size of the output buffer.
+   */
+  private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+  /**
+   * Space kept free in the buffer for a single number.
+   */
+  private static final int MAX_NUMBER_SIZE = 48;
+
+  /**
+   * Exactly representable powers of ten.
+   */
+  private static final double[] POW10 = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6,
+          1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18,
+          1e19, 1e20, 1e21, 1e22};
+
+  /**
+   * Largest number of fraction digits for which the round-trip check is
+   * exact: 5^11 and the interval bounds of a float (at most 26 significant
+   * bits) multiply to at most 53 bits.
+   */
+  private static final int MAX_EXACT_FRACTION_DIGITS = 11;
+
+  /**
+   * Powers of ten in the int range.
+   */
+  private static final int[] INT_POW10 = {1, 10, 100, 1000, 10000, 100000,
+          1000000, 10000000, 100000000, 1000000000};
+
+  /**
+   * "00" to "99", used to write two digits at once.
+   */
+  private static final byte[] DIGIT_PAIRS = new byte[200];
+
+  static {
+    for (int i = 0; i < 100; i++) {
+      DIGIT_PAIRS[2 * i] = (byte) ('0' + i / 10);
+      DIGIT_PAIRS[2 * i + 1] = (byte) ('0' + i % 10);
+    }
+  }
+
+  private static final double LOG10_2 = 0.30102999566398120;
+
+  /**
+   * Significant digits which always suffice for a float.
+   */
+  private static final int MAX_FLOAT_DIGITS = 9;
+
+  private static final byte[] OP_VERTEX = "v ".getBytes(
+          StandardCharsets.US_ASCII);
+  private static final byte[] OP_NORMAL = "vn ".getBytes(
+          StandardCharsets.US_ASCII);
+
+  private final byte[] buffer = new byte[WRITE_BUFFER_SIZE];
+  private int position = 0;
+  private OutputStream out = null;
+  private boolean writeNormals = false;
+
+  /**
+   * Write the mesh to the OBJ file (and its materials to the MTL file next to
+   * it). Returns true if the files were written successfully.
+   */
+  public boolean write(TriangleMesh mesh, File file) {
+    Map<Material, String> materialNames = getMaterialNames(mesh);
+    String materialFilename = null;
+    if (!materialNames.isEmpty()) {
+      String name = file.getName();
+      int dot = name.lastIndexOf('.');
+      materialFilename = (dot > 0 ? name.substring(0, dot) : name) + ".mtl";
+      File materialFile = new File(file.getAbsoluteFile().getParentFile(),
+              materialFilename);
+      if (!writeFile(materialFile, () -> writeMaterials(materialNames))) {
+        return false;
+      }
+    }
+    String materialLibrary = materialFilename;
+    return writeFile(file, () -> writeMesh(mesh, materialNames,
+            materialLibrary));
+  }
+
+  private interface Content {
+    void write() throws IOException;
+  }
+
+  private boolean writeFile(File file, Content content) {
+    position = 0;
+    try (OutputStream out = new FileOutputStream(file)) {
+      this.out = out;
+      content.write();
+      flush();
+    } catch (IOException e) {
+      Logger.getInstance().error("Failed to write mesh file " + file);
+      return false;
+    } finally {
+      this.out = null;
+    }
+    return true;
+  }
+
+  private void writeMesh(TriangleMesh mesh, Map<Material, String> materialNames,
+                         String materialLibrary) throws IOException {
+    VertexArrays vertices = mesh.vertices;
+    TriangleArrays triangles = mesh.triangles;
+    int numberOfTexCoords = mesh.numberOfTextureCoordinates;
+
+    writeString("# " + vertices.size + " vertices, " + triangles.size
+            + " triangles\n");
+    if (materialLibrary != null) {
+      writeString("mtllib " + sanitize(materialLibrary) + "\n");
+    }
+
+    // Vertex data
+    float[] positions = vertices.positions;
+    for (int v = 0; v < vertices.size; v++) {
+      writeVector(OP_VERTEX, positions, 3 * v);
+    }
+    float[] uv = mesh.textureCoordinates;
+    for (int t = 0; t < numberOfTexCoords; t++) {
+      ensureSpace(3 * MAX_NUMBER_SIZE);
+      buffer[position++] = 'v';
+      buffer[position++] = 't';
+      buffer[position++] = ' ';
+      writeFloat(uv[2 * t]);
+      buffer[position++] = ' ';
+      writeFloat(uv[2 * t + 1]);
+      buffer[position++] = '\n';
+    }
+    if (writeNormals) {
+      float[] normals = vertices.normals;
+      for (int v = 0; v < vertices.size; v++) {
+        writeVector(OP_NORMAL, normals, 3 * v);
+      }
+    }
+
+    // Faces in group order, triangles outside of groups first
+    List<MeshGroup> groups = new ArrayList<>();
+    for (int i = 0; i < mesh.getNumberOfGroups(); i++) {
+      groups.add(mesh.getGroup(i));
+    }
+    groups.sort(Comparator.comparingInt(MeshGroup::getFirstTriangle));
+    boolean[] grouped = new boolean[triangles.size];
+    for (MeshGroup group : groups) {
+      for (int t = group.getFirstTriangle();
+           t < group.getFirstTriangle() + group.getNumberOfTriangles(); t++) {
+        grouped[t] = true;
+      }
+    }
+    for (int t = 0; t < triangles.size; t++) {
+      if (!grouped[t]) {
+        writeFace(triangles, t, numberOfTexCoords);
+      }
+    }
+    for (MeshGroup group : groups) {
+      if (group.getName() != null) {
+        writeString("o " + sanitize(group.getName()) + "\n");
+      }
+      writeString(group.getMaterial() != null
+              ? "usemtl " + materialNames.get(group.getMaterial()) + "\n"
+              : "usemtl\n");
+      for (int t = group.getFirstTriangle();
+           t < group.getFirstTriangle() + group.getNumberOfTriangles(); t++) {
+        writeFace(triangles, t, numberOfTexCoords);
+      }
+    }
+  }
+
+  private void writeMaterials(Map<Material, String> materialNames)
+          throws IOException {
+    for (Map.Entry<Material, String> entry : materialNames.entrySet()) {
+      Material material = entry.getKey();
+      ColorRGBA color = material.getColor();
+      writeString("newmtl " + entry.getValue() + "\n");
+      ensureSpace(4 * MAX_NUMBER_SIZE);
+      buffer[position++] = 'K';
+      buffer[position++] = 'd';
+      buffer[position++] = ' ';
+      writeFloat(color.r);
+      buffer[position++] = ' ';
+      writeFloat(color.g);
+      buffer[position++] = ' ';
+      writeFloat(color.b);
+      buffer[position++] = '\n';
+      if (material.getTextureFilename() != null) {
+        writeString("map_Kd " + sanitize(material.getTextureFilename())
+                + "\n");
+      }
+      writeString("\n");
+    }
+  }
+
+  /**
+   * Unique OBJ names for all materials used by the groups, in group order
+   * (materials are compared by identity).
+   */
+  private static Map<Material, String> getMaterialNames(TriangleMesh mesh) {
+    Map<Material, String> materialNames = new LinkedHashMap<>();
+    Set<String> usedNames = new HashSet<>();
+    for (int i = 0; i < mesh.getNumberOfGroups(); i++) {
+      Material material = mesh.getGroup(i).getMaterial();
+      if (material == null || materialNames.containsKey(material)) {
+        continue;
+      }
+      String baseName = material.getName() != null
+              ? sanitize(material.getName()) : "material";
+      String name = baseName;
+      for (int n = 2; !usedNames.add(name); n++) {
+        name = baseName + "_" + n;
+      }
+      materialNames.put(material, name);
+    }
+    return materialNames;
+  }
+
+  /**
+   * OBJ names are single tokens, blanks are replaced.
+   */
+  private static String sanitize(String name) {
+    StringBuilder result = new StringBuilder(name.length());
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      result.append(c <= ' ' ? '_' : c);
+    }
+    return result.toString();
+  }
+
+  private void writeVector(byte[] operator, float[] values, int offset)
+          throws IOException {
+    ensureSpace(4 * MAX_NUMBER_SIZE);
+    System.arraycopy(operator, 0, buffer, position, operator.length);
+    position += operator.length;
+    writeFloat(values[offset]);
+    buffer[position++] = ' ';
+    writeFloat(values[offset + 1]);
+    buffer[position++] = ' ';
+    writeFloat(values[offset + 2]);
+    buffer[position++] = '\n';
+  }
+
+  private void writeFace(TriangleArrays triangles, int t,
+                         int numberOfTexCoords) throws IOException {
+    ensureSpace(4 * MAX_NUMBER_SIZE);
+    buffer[position++] = 'f';
+    for (int corner = 0; corner < 3; corner++) {
+      int v = triangles.vertexIndices[3 * t + corner];
+      int tc = triangles.texCoordIndices[3 * t + corner];
+      buffer[position++] = ' ';
+      writeDigits(v + 1);
+      boolean hasTexCoord = tc >= 0 && tc < numberOfTexCoords;
+      if (hasTexCoord || writeNormals) {
+        buffer[position++] = '/';
+        if (hasTexCoord) {
+          writeDigits(tc + 1);
+        }
+      }
+      if (writeNormals) {
+        buffer[position++] = '/';
+        writeDigits(v + 1);
+      }
+    }
+    buffer[position++] = '\n';
+  }
+
+  /**
+   * Write the decimal digits of a non-negative value.
+   */
+  private void writeDigits(int value) {
+    writeDigits(value, numberOfDigits(value));
+  }
+
+  /**
+   * Write exactly 'width' digits of a non-negative value (with leading
+   * zeros), two digits per division.
+   */
+  private void writeDigits(int value, int width) {
+    int p = position + width;
+    position = p;
+    while (value >= 100) {
+      int q = value / 100;
+      int r = 2 * (value - 100 * q);
+      buffer[--p] = DIGIT_PAIRS[r + 1];
+      buffer[--p] = DIGIT_PAIRS[r];
+      value = q;
+    }
+    if (value >= 10) {
+      buffer[--p] = DIGIT_PAIRS[2 * value + 1];
+      buffer[--p] = DIGIT_PAIRS[2 * value];
+    } else {
+      buffer[--p] = (byte) ('0' + value);
+    }
+    while (p > position - width) {
+      buffer[--p] = '0';
+    }
+  }
+
+  private static int numberOfDigits(int value) {
+    int n = 1;
+    while (n < INT_POW10.length && value >= INT_POW10[n]) {
+      n++;
+    }
+    return n;
+  }
+
+  /**
+   * Write the shortest decimal representation which reads back to the same
+   * float: the interval of values rounding to f is scaled to integers (exact
+   * for up to MAX_EXACT_FRACTION_DIGITS fraction digits), then trailing digits
+   * are removed as long as the interval still contains such a decimal. Values
+   * outside of this range are written with Float.toString().
+   */
+  private void writeFloat(float f) {
+    if (f == 0 || !Float.isFinite(f)) {
+      writeFloatSlow(f);
+      return;
+    }
+    boolean negative = f < 0;
+    double value = Math.abs((double) f);
+    float absolute = Math.abs(f);
+    int exponent = decimalExponent(value);
+    int fractionDigits = Math.min(MAX_EXACT_FRACTION_DIGITS,
+            MAX_FLOAT_DIGITS - 1 - exponent);
+    if (fractionDigits < 0) {
+      writeFloatSlow(f);
+      return;
+    }
+    double scale = POW10[fractionDigits];
+    // Integers strictly inside the scaled interval
+    long lowest = (long) Math.floor((value + Math.nextDown(absolute)) * 0.5
+            * scale) + 1;
+    long highest = (long) Math.ceil((value + Math.nextUp(absolute)) * 0.5
+            * scale) - 1;
+    if (lowest > highest) {
+      writeFloatSlow(f);
+      return;
+    }
+    double scaled = value * scale;
+    while (true) {
+      long shorterLowest = (lowest + 9) / 10;
+      long shorterHighest = highest / 10;
+      if (shorterLowest > shorterHighest) {
+        break;
+      }
+      lowest = shorterLowest;
+      highest = shorterHighest;
+      scaled /= 10;
+      fractionDigits--;
+    }
+    // Closest candidate to the value
+    long mantissa = Math.max(lowest, Math.min(highest, Math.round(scaled)));
+    if (negative) {
+      buffer[position++] = '-';
+    }
+    writeDecimal((int) mantissa, fractionDigits);
+  }
+
+  /**
+   * floor(log10(value)) from the binary exponent. Near powers of ten the
+   * result may be off by one, which only costs the fast path.
+   */
+  private static int decimalExponent(double value) {
+    int exponent = (int) Math.floor(Math.getExponent(value) * LOG10_2);
+    int next = exponent + 1;
+    if (next >= 0 ? next < POW10.length && value >= POW10[next]
+            : -next < POW10.length && value * POW10[-next] >= 1) {
+      exponent = next;
+    }
+    return exponent;
+  }
+
+  /**
+   * Write mantissa * 10^-fractionDigits without trailing zeros after the
+   * decimal point.
+   */
+  private void writeDecimal(int mantissa, int fractionDigits) {
+    if (fractionDigits <= 0) {
+      writeDigits(mantissa);
+      for (int i = 0; i < -fractionDigits; i++) {
+        buffer[position++] = '0';
+      }
+      return;
+    }
+    while (fractionDigits > 0 && mantissa % 10 == 0) {
+      mantissa /= 10;
+      fractionDigits--;
+    }
+    int n = numberOfDigits(mantissa);
+    if (n <= fractionDigits) {
+      buffer[position++] = '0';
+      buffer[position++] = '.';
+      writeDigits(mantissa, fractionDigits);
+      return;
+    }
+    // Write all digits, then move the fraction to make room for the point
+    writeDigits(mantissa, n);
+    int point = position - fractionDigits;
+    System.arraycopy(buffer, point, buffer, point + 1, fractionDigits);
+    buffer[point] = '.';
+    position++;
+  }
+
+  private void writeFloatSlow(float f) {
+    String s = f == 0 ? (Float.floatToRawIntBits(f) < 0 ? "-0" : "0")
+            : Float.toString(f);
+    for (int i = 0; i < s.length(); i++) {
+      buffer[position++] = (byte) s.charAt(i);
+    }
+  }
+
+  private void writeString(String s) throws IOException {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    if (bytes.length > buffer.length - position) {
+      flush();
+      if (bytes.length > buffer.length) {
+        out.write(bytes);
+        return;
+      }
+    }
+    System.arraycopy(bytes, 0, buffer, position, bytes.length);
+    position += bytes.length;
+  }
+
+  private void ensureSpace(int size) throws IOException {
+    if (position + size > buffer.length) {
+      flush();
+    }
+  }
+
+  private void flush() throws IOException {
+    out.write(buffer, 0, position);
+    position = 0;
+  }
+
+  // +++ GETTER/SETTER +++++++++++++++++++++++++
+
+  public boolean isWriteNormals() {
+    return writeNormals;
+  }
+
+  /**
+   * Write the vertex normals ('vn') and reference them in the faces.
+   */
+  public void setWriteNormals(boolean writeNormals) {
+    this.writeNormals = writeNormals;
+  }
+}
@@ -0,0 +1,79 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.base.mesh;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fork-join helper to process an index range [0, n) in parallel. The range is
+ * split recursively until a chunk is smaller than the grain size, small ranges
+ * are processed in the calling thread.
+ */
+final class ParallelRange {
+
+  /**
+   * Default number of elements processed sequentially in one task.
+   */
+  static final int DEFAULT_GRAIN = 4096;
+
+  /**
+   * Work on the half-open index range [from, to).
+   */
+  @FunctionalInterface
+  interface Body {
+    void run(int from, int to);
+  }
+
+  private ParallelRange() {
+  }
+
+  /**
+   * Run the body on all chunks of [0, n) using the common fork-join pool.
+   */
+  static void forEach(int n, Body body) {
+    forEach(n, DEFAULT_GRAIN, body);
+  }
+
+  /**
+   * Run the body on all chunks of [0, n) with the given grain size.
+   */
+  static void forEach(int n, int grain, Body body) {
+    if (n <= grain || ForkJoinPool.getCommonPoolParallelism() <= 1) {
+      if (n > 0) {
+        body.run(0, n);
+      }
+      return;
+    }
+    ForkJoinPool.commonPool().invoke(new RangeTask(0, n, Math.max(1, grain),
+            body));
+  }
+
+  private static class RangeTask extends RecursiveAction {
+    private final int from;
+    private final int to;
+    private final int grain;
+    private final Body body;
+
+    RangeTask(int from, int to, int grain, Body body) {
+      this.from = from;
+      this.to = to;
+      this.grain = grain;
+      this.body = body;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= grain) {
+        body.run(from, to);
+        return;
+      }
+      int mid = (from + to) >>> 1;
+      invokeAll(new RangeTask(from, mid, grain, body),
+              new RangeTask(mid, to, grain, body));
+    }
+  }
+}
@@ -0,0 +1,491 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.base.mesh;
+
+import com.jme3.bounding.BoundingBox;
+import com.jme3.math.FastMath;
+import com.jme3.math.Transform;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.util.BufferUtils;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact, read-only storage of a triangle mesh for static geometry (about
+ * 18 instead of 48 bytes per vertex):
+ * <ul>
+ *   <li>Positions: 3 x 16 bit, quantized relative to the bounding box. The
+ *   error per axis is at most half a step, i.e. extent / 131070.</li>
+ *   <li>Normals: 2 x 16 bit, octahedral encoding. The angular error is below
+ *   0.01 degrees.</li>
+ *   <li>Colors: RGBA8, error at most 0.5 / 255 per channel.</li>
+ *   <li>Texture coordinates: 2 half floats, relative error at most 2^-11
+ *   (absolute 2^-12 in [0, 1]).</li>
+ * </ul>
+ * The maximum errors of the encoded mesh are measured while encoding (see
+ * getMaxPositionError() etc.).
+ * <p>
+ * The mesh uses the smooth layout of the {@link JmeMeshConverter}: one vertex
+ * per distinct (vertex, texture coordinate) pair and an index buffer. The
+ * facet normals and triangle colors are not stored.
+ * <p>
+ * The jMonkey mesh (see toJmeMesh()) keeps the compact formats on the GPU:
+ * the positions are uploaded as normalized unsigned shorts in the unit cube,
+ * so the geometry needs the dequantization transform (see createGeometry()).
+ * As the positions are not floats, jMonkey cannot compute bounds or collision
+ * data of the mesh: do not call updateModelBound() on the geometry and do not
+ * use it for picking (use the {@link TriangleMeshBvh} of the source mesh).
+ */
+public class QuantizedMesh {
+
+  private static final int POSITION_STEPS = 65535;
+  private static final int NORMAL_STEPS = 32767;
+
+  private final int numberOfVertices;
+
+  private final int numberOfTriangles;
+
+  /**
+   * Minimum corner of the bounding box and the extent per axis (1 for flat
+   * axes).
+   */
+  private final float[] origin = new float[3];
+  private final float[] extent = new float[3];
+
+  /**
+   * Unsigned 16 bit positions (x, y, z) relative to the bounding box.
+   */
+  private final short[] positions;
+
+  /**
+   * Octahedral encoded normals, 2 signed normalized 16 bit values.
+   */
+  private final short[] normals;
+
+  /**
+   * Colors packed as RGBA8, red in the lowest byte.
+   */
+  private final int[] colors;
+
+  /**
+   * Texture coordinates (u, v) as half floats, null if the mesh has none.
+   */
+  private final short[] texCoords;
+
+  private final int[] indices;
+
+  private final List<MeshGroup> groups = new ArrayList<>();
+
+  private final String textureName;
+
+  // Maximum encoding errors
+  private float maxPositionError = 0;
+  private float maxNormalError = 0;
+  private float maxColorError = 0;
+  private float maxTexCoordError = 0;
+
+  /**
+   * Encode the triangle mesh.
+   */
+  public QuantizedMesh(TriangleMesh mesh) {
+    VertexArrays vertices = mesh.vertices;
+    TriangleArrays triangles = mesh.triangles;
+    numberOfTriangles = triangles.size;
+    boolean hasTexCoords = mesh.numberOfTextureCoordinates > 0;
+
+    // One vertex per (vertex, texture coordinate) pair
+    indices = new int[3 * numberOfTriangles];
+    LongIntHashMap corners = new LongIntHashMap(vertices.size);
+    int[] sourceVertex = new int[Math.max(vertices.size, 1)];
+    int[] sourceTexCoord = new int[Math.max(vertices.size, 1)];
+    int n = 0;
+    for (int i = 0; i < 3 * numberOfTriangles; i++) {
+      int v = triangles.vertexIndices[i];
+      int t = hasTexCoords ? triangles.texCoordIndices[i] : -1;
+      if (t >= mesh.numberOfTextureCoordinates) {
+        t = -1;
+      }
+      int index = corners.putIfAbsent(((long) v << 32) | (t & 0xffffffffL), n);
+      if (index == LongIntHashMap.MISSING) {
+        if (n == sourceVertex.length) {
+          sourceVertex = Arrays.copyOf(sourceVertex, 2 * n);
+          sourceTexCoord = Arrays.copyOf(sourceTexCoord, 2 * n);
+        }
+        sourceVertex[n] = v;
+        sourceTexCoord[n] = t;
+        index = n++;
+      }
+      indices[i] = index;
+    }
+    numberOfVertices = n;
+
+    float[] bounds = mesh.getBounds();
+    for (int axis = 0; axis < 3; axis++) {
+      origin[axis] = bounds[axis];
+      float e = bounds[axis + 3] - bounds[axis];
+      extent[axis] = e > 0 ? e : 1;
+    }
+
+    positions = new short[3 * numberOfVertices];
+    normals = new short[2 * numberOfVertices];
+    colors = new int[numberOfVertices];
+    texCoords = hasTexCoords ? new short[2 * numberOfVertices] : null;
+    float[] decoded = new float[3];
+    for (int i = 0; i < numberOfVertices; i++) {
+      int v = sourceVertex[i];
+      for (int axis = 0; axis < 3; axis++) {
+        float p = vertices.positions[3 * v + axis];
+        int q = Math.round((p - origin[axis]) / extent[axis] * POSITION_STEPS);
+        q = Math.max(0, Math.min(POSITION_STEPS, q));
+        positions[3 * i + axis] = (short) q;
+        maxPositionError = Math.max(maxPositionError,
+                Math.abs(getPosition(i, axis) - p));
+      }
+
+      float nx = vertices.normals[3 * v];
+      float ny = vertices.normals[3 * v + 1];
+      float nz = vertices.normals[3 * v + 2];
+      encodeNormal(nx, ny, nz, normals, 2 * i);
+      if (nx != 0 || ny != 0 || nz != 0) {
+        maxNormalError = Math.max(maxNormalError,
+                getNormalError(nx, ny, nz, i, decoded));
+      }
+
+      int color = 0;
+      for (int c = 0; c < 4; c++) {
+        float value = vertices.colors[4 * v + c];
+        int q = Math.max(0, Math.min(255, Math.round(value * 255)));
+        color |= q << (8 * c);
+        maxColorError = Math.max(maxColorError,
+                Math.abs(q / 255f - Math.max(0, Math.min(1, value))));
+      }
+      colors[i] = color;
+
+      if (texCoords != null) {
+        int t = sourceTexCoord[i];
+        for (int c = 0; c < 2; c++) {
+          float value = t >= 0 ? mesh.textureCoordinates[2 * t + c] : 0;
+          texCoords[2 * i + c] = toHalf(value);
+          maxTexCoordError = Math.max(maxTexCoordError, Math.abs(
+                  FastMath.convertHalfToFloat(texCoords[2 * i + c]) - value));
+        }
+      }
+    }
+
+    for (int i = 0; i < mesh.getNumberOfGroups(); i++) {
+      groups.add(new MeshGroup(mesh.getGroup(i)));
+    }
+    textureName = mesh.getTextureName();
+  }
+
+  /**
+   * Octahedral encoding of the (not necessarily normalized) normal: project
+   * onto the octahedron |x| + |y| + |z| = 1 and fold the lower half outwards.
+   * Of the four grid points around the projection, the one which decodes
+   * closest to the normal is stored.
+   */
+  static void encodeNormal(float x, float y, float z, short[] store,
+                           int offset) {
+    float l1 = Math.abs(x) + Math.abs(y) + Math.abs(z);
+    float u = 0;
+    float v = 0;
+    if (l1 > 0) {
+      u = x / l1;
+      v = y / l1;
+      if (z < 0) {
+        float foldedU = (1 - Math.abs(v)) * (u >= 0 ? 1 : -1);
+        v = (1 - Math.abs(u)) * (v >= 0 ? 1 : -1);
+        u = foldedU;
+      }
+    }
+    int u0 = (int) Math.floor(u * NORMAL_STEPS);
+    int v0 = (int) Math.floor(v * NORMAL_STEPS);
+    float[] decoded = new float[3];
+    float bestCos = Float.NEGATIVE_INFINITY;
+    for (int i = 0; i < 4; i++) {
+      int qu = Math.max(-NORMAL_STEPS, Math.min(NORMAL_STEPS, u0 + (i & 1)));
+      int qv = Math.max(-NORMAL_STEPS, Math.min(NORMAL_STEPS, v0 + (i >> 1)));
+      decodeNormal(qu / (float) NORMAL_STEPS, qv / (float) NORMAL_STEPS,
+              decoded);
+      float cos = x * decoded[0] + y * decoded[1] + z * decoded[2];
+      if (cos > bestCos) {
+        bestCos = cos;
+        store[offset] = (short) qu;
+        store[offset + 1] = (short) qv;
+      }
+    }
+  }
+
+  /**
+   * Decode an octahedral normal into a unit vector.
+   */
+  static void decodeNormal(short[] encoded, int offset, float[] store) {
+    decodeNormal(encoded[offset] / (float) NORMAL_STEPS,
+            encoded[offset + 1] / (float) NORMAL_STEPS, store);
+  }
+
+  private static void decodeNormal(float x, float y, float[] store) {
+    float z = 1 - Math.abs(x) - Math.abs(y);
+    if (z < 0) {
+      float unfoldedX = (1 - Math.abs(y)) * (x >= 0 ? 1 : -1);
+      y = (1 - Math.abs(x)) * (y >= 0 ? 1 : -1);
+      x = unfoldedX;
+    }
+    float length = (float) Math.sqrt(x * x + y * y + z * z);
+    store[0] = x / length;
+    store[1] = y / length;
+    store[2] = z / length;
+  }
+
+  /**
+   * Angle between the normal and the decoded normal of the vertex (radians).
+   * atan2 is used since acos is imprecise for small angles.
+   */
+  private float getNormalError(float nx, float ny, float nz, int vertex,
+                               float[] decoded) {
+    decodeNormal(normals, 2 * vertex, decoded);
+    double cx = (double) ny * decoded[2] - (double) nz * decoded[1];
+    double cy = (double) nz * decoded[0] - (double) nx * decoded[2];
+    double cz = (double) nx * decoded[1] - (double) ny * decoded[0];
+    double dot = (double) nx * decoded[0] + (double) ny * decoded[1]
+            + (double) nz * decoded[2];
+    return (float) Math.atan2(Math.sqrt(cx * cx + cy * cy + cz * cz), dot);
+  }
+
+  /**
+   * Half float nearest to the value (FastMath truncates the mantissa, the
+   * next half float in magnitude may be closer).
+   */
+  private static short toHalf(float value) {
+    short half = FastMath.convertFloatToHalf(value);
+    short next = (short) (half + 1);
+    if ((half & 0x7c00) != 0x7c00 && Math.abs(FastMath.convertHalfToFloat(next)
+            - value) < Math.abs(FastMath.convertHalfToFloat(half) - value)) {
+      return next;
+    }
+    return half;
+  }
+
+  private float getPosition(int vertex, int axis) {
+    return origin[axis] + (positions[3 * vertex + axis] & 0xffff)
+            * extent[axis] / POSITION_STEPS;
+  }
+
+  /**
+   * Decode into a triangle mesh (in the indexed layout, see
+   * ObjReader.readIndexed()). The triangle colors are taken from the first
+   * corner, the facet normals are recomputed.
+   */
+  public TriangleMesh toTriangleMesh() {
+    TriangleMesh mesh = new TriangleMesh(numberOfVertices, numberOfTriangles);
+    float[] normal = new float[3];
+    float[] color = new float[4];
+    for (int i = 0; i < numberOfVertices; i++) {
+      decodeNormal(normals, 2 * i, normal);
+      decodeColor(colors[i], color);
+      mesh.vertices.add(getPosition(i, 0), getPosition(i, 1),
+              getPosition(i, 2), normal[0], normal[1], normal[2], color[0],
+              color[1], color[2], color[3]);
+      if (texCoords != null) {
+        mesh.addTextureCoordinate(FastMath.convertHalfToFloat(texCoords[2 * i]),
+                FastMath.convertHalfToFloat(texCoords[2 * i + 1]));
+      }
+    }
+    for (int t = 0; t < numberOfTriangles; t++) {
+      int a = indices[3 * t];
+      int b = indices[3 * t + 1];
+      int c = indices[3 * t + 2];
+      decodeColor(colors[a], color);
+      if (texCoords != null) {
+        mesh.triangles.add(a, b, c, a, b, c, 0, 0, 0, color[0], color[1],
+                color[2], color[3]);
+      } else {
+        mesh.triangles.add(a, b, c, -1, -1, -1, 0, 0, 0, color[0], color[1],
+                color[2], color[3]);
+      }
+    }
+    mesh.computeTriangleNormals();
+    for (MeshGroup group : groups) {
+      mesh.addGroup(new MeshGroup(group));
+    }
+    mesh.setTextureName(textureName);
+    return mesh;
+  }
+
+  private static void decodeColor(int packed, float[] store) {
+    for (int c = 0; c < 4; c++) {
+      store[c] = ((packed >>> (8 * c)) & 0xff) / 255f;
+    }
+  }
+
+  /**
+   * Create a jMonkey mesh with compact vertex buffers: positions as
+   * normalized unsigned shorts in the unit cube, normals as normalized
+   * shorts, colors as normalized unsigned bytes and texture coordinates as
+   * half floats (20 bytes per vertex). The mesh needs the dequantization
+   * transform, see createGeometry().
+   */
+  public Mesh toJmeMesh() {
+    Mesh jmeMesh = new Mesh();
+
+    ShortBuffer positionBuffer = BufferUtils.createShortBuffer(
+            3 * numberOfVertices);
+    positionBuffer.put(positions).flip();
+    setBuffer(jmeMesh, VertexBuffer.Type.Position, 3,
+            VertexBuffer.Format.UnsignedShort, positionBuffer);
+
+    // The dequantization scale is non-uniform, so the normals are given in
+    // the unit cube: scaled by the extent (inverse transpose of 1 / extent)
+    ShortBuffer normalBuffer = BufferUtils.createShortBuffer(
+            3 * numberOfVertices);
+    float[] normal = new float[3];
+    for (int i = 0; i < numberOfVertices; i++) {
+      decodeNormal(normals, 2 * i, normal);
+      float x = normal[0] * extent[0];
+      float y = normal[1] * extent[1];
+      float z = normal[2] * extent[2];
+      float length = (float) Math.sqrt(x * x + y * y + z * z);
+      normalBuffer.put((short) Math.round(x / length * NORMAL_STEPS))
+              .put((short) Math.round(y / length * NORMAL_STEPS))
+              .put((short) Math.round(z / length * NORMAL_STEPS));
+    }
+    normalBuffer.flip();
+    setBuffer(jmeMesh, VertexBuffer.Type.Normal, 3,
+            VertexBuffer.Format.Short, normalBuffer);
+
+    ByteBuffer colorBuffer = BufferUtils.createByteBuffer(4 * numberOfVertices);
+    for (int i = 0; i < numberOfVertices; i++) {
+      int c = colors[i];
+      colorBuffer.put((byte) c).put((byte) (c >>> 8)).put((byte) (c >>> 16))
+              .put((byte) (c >>> 24));
+    }
+    colorBuffer.flip();
+    setBuffer(jmeMesh, VertexBuffer.Type.Color, 4,
+            VertexBuffer.Format.UnsignedByte, colorBuffer);
+
+    if (texCoords != null) {
+      ByteBuffer texCoordBuffer = BufferUtils.createByteBuffer(
+              4 * numberOfVertices);
+      texCoordBuffer.asShortBuffer().put(texCoords);
+      setBuffer(jmeMesh, VertexBuffer.Type.TexCoord, 2,
+              VertexBuffer.Format.Half, texCoordBuffer);
+    }
+
+    if (numberOfVertices <= 1 << 16) {
+      ShortBuffer indexBuffer = BufferUtils.createShortBuffer(indices.length);
+      for (int index : indices) {
+        indexBuffer.put((short) index);
+      }
+      indexBuffer.flip();
+      jmeMesh.setBuffer(VertexBuffer.Type.Index, 3, indexBuffer);
+    } else {
+      IntBuffer indexBuffer = BufferUtils.createIntBuffer(indices.length);
+      indexBuffer.put(indices).flip();
+      jmeMesh.setBuffer(VertexBuffer.Type.Index, 3, indexBuffer);
+    }
+
+    jmeMesh.updateCounts();
+    // Bound of the unit cube, updateBound() only handles float positions
+    jmeMesh.setBound(new BoundingBox(new Vector3f(0.5f, 0.5f, 0.5f), 0.5f,
+            0.5f, 0.5f));
+    return jmeMesh;
+  }
+
+  private static void setBuffer(Mesh jmeMesh, VertexBuffer.Type type,
+                                int components, VertexBuffer.Format format,
+                                Buffer data) {
+    VertexBuffer vb = new VertexBuffer(type);
+    vb.setupData(VertexBuffer.Usage.Static, components, format, data);
+    vb.setNormalized(format != VertexBuffer.Format.Half);
+    jmeMesh.setBuffer(vb);
+  }
+
+  /**
+   * Transformation from the unit cube of the quantized positions into the
+   * mesh coordinates.
+   */
+  public Transform getDequantizationTransform() {
+    Transform transform = new Transform();
+    transform.setTranslation(origin[0], origin[1], origin[2]);
+    transform.setScale(extent[0], extent[1], extent[2]);
+    return transform;
+  }
+
+  /**
+   * Create a geometry with the jMonkey mesh and the dequantization transform
+   * as local transform. To place the object, attach the geometry to a node
+   * and transform the node.
+   */
+  public Geometry createGeometry(String name) {
+    Geometry geometry = new Geometry(name, toJmeMesh());
+    geometry.setLocalTransform(getDequantizationTransform());
+    return geometry;
+  }
+
+  /**
+   * Heap size of the encoded vertex attributes and indices (bytes).
+   */
+  public long getSizeInBytes() {
+    return 2L * positions.length + 2L * normals.length + 4L * colors.length
+            + (texCoords != null ? 2L * texCoords.length : 0)
+            + 4L * indices.length;
+  }
+
+  // +++ GETTER/SETTER +++++++++++++++++++++++++
+
+  public int getNumberOfVertices() {
+    return numberOfVertices;
+  }
+
+  public int getNumberOfTriangles() {
+    return numberOfTriangles;
+  }
+
+  public int getNumberOfGroups() {
+    return groups.size();
+  }
+
+  public MeshGroup getGroup(int groupIndex) {
+    return groups.get(groupIndex);
+  }
+
+  /**
+   * Maximum absolute position error per axis (mesh units).
+   */
+  public float getMaxPositionError() {
+    return maxPositionError;
+  }
+
+  /**
+   * Maximum angle between an original and a decoded normal (radians).
+   */
+  public float getMaxNormalError() {
+    return maxNormalError;
+  }
+
+  /**
+   * Maximum color error per channel (colors in [0, 1]).
+   */
+  public float getMaxColorError() {
+    return maxColorError;
+  }
+
+  /**
+   * Maximum absolute texture coordinate error.
+   */
+  public float getMaxTexCoordError() {
+    return maxTexCoordError;
+  }
+}
@@ -0,0 +1,103 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.base.mesh;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Parallel, stable LSD radix sort of long keys, 8 bits per pass. Each pass
+ * counts the digits of fixed blocks in parallel, computes the output offset
+ * of every (digit, block) pair and scatters the blocks in parallel.
+ */
+final class RadixSort {
+
+  private static final int RADIX_BITS = 8;
+  private static final int RADIX = 1 << RADIX_BITS;
+
+  /**
+   * Minimum number of keys per block.
+   */
+  private static final int MIN_BLOCK_SIZE = 1 << 14;
+
+  private RadixSort() {
+  }
+
+  /**
+   * Sort by the lowest numberOfBits bits of the keys, equal keys keep their
+   * order. Returns the order (sorted position -> index in keys), the keys
+   * are not changed.
+   */
+  static int[] sort(long[] keys, int numberOfBits) {
+    int n = keys.length;
+    long[] srcKeys = keys.clone();
+    long[] dstKeys = new long[n];
+    int[] src = new int[n];
+    int[] dst = new int[n];
+    for (int i = 0; i < n; i++) {
+      src[i] = i;
+    }
+
+    int numberOfBlocks = Math.max(1, Math.min(n / MIN_BLOCK_SIZE,
+            4 * ForkJoinPool.getCommonPoolParallelism()));
+    int blockSize = (n + numberOfBlocks - 1) / numberOfBlocks;
+    int[][] counts = new int[numberOfBlocks][RADIX];
+
+    for (int shift = 0; shift < numberOfBits; shift += RADIX_BITS) {
+      final int s = shift;
+      final long[] inKeys = srcKeys;
+      final long[] outKeys = dstKeys;
+      final int[] in = src;
+      final int[] out = dst;
+
+      // Digit histogram per block
+      ParallelRange.forEach(numberOfBlocks, 1, (from, to) -> {
+        for (int b = from; b < to; b++) {
+          int[] count = counts[b];
+          Arrays.fill(count, 0);
+          int end = Math.min(n, (b + 1) * blockSize);
+          for (int i = b * blockSize; i < end; i++) {
+            count[(int) (inKeys[i] >>> s) & (RADIX - 1)]++;
+          }
+        }
+      });
+
+      // Output offsets, digit-major so the sort is stable; skip uniform digits
+      boolean uniform = false;
+      int offset = 0;
+      for (int digit = 0; digit < RADIX; digit++) {
+        int total = 0;
+        for (int b = 0; b < numberOfBlocks; b++) {
+          int c = counts[b][digit];
+          counts[b][digit] = offset;
+          offset += c;
+          total += c;
+        }
+        uniform |= total == n;
+      }
+      if (uniform) {
+        continue;
+      }
+
+      ParallelRange.forEach(numberOfBlocks, 1, (from, to) -> {
+        for (int b = from; b < to; b++) {
+          int[] position = counts[b];
+          int end = Math.min(n, (b + 1) * blockSize);
+          for (int i = b * blockSize; i < end; i++) {
+            int p = position[(int) (inKeys[i] >>> s) & (RADIX - 1)]++;
+            outKeys[p] = inKeys[i];
+            out[p] = in[i];
+          }
+        }
+      });
+      srcKeys = outKeys;
+      dstKeys = inKeys;
+      src = out;
+      dst = in;
+    }
+    return src;
+  }
+}
@@ -11,29 +11,21 @@ import wpcg.base.Logger;
 
 /**
  * Representation of a triangle consisting of three indices. The indices
- * reference vertices in the vertex list in a triangle mesh.
+ * reference vertices in the vertex list in a triangle mesh. The data is stored
+ * in packed arrays: a triangle obtained from a triangle mesh is a lightweight
+ * view on the mesh storage, all setters write through to the mesh.
  */
 public class Triangle {
 
   /**
-   * Indices of the vertices.
+   * Backing storage, either owned by this triangle or by a triangle mesh.
    */
-  private int[] vertexIndices;
+  TriangleArrays data;
 
   /**
-   * Triangle color in RGBA format.
+   * Index of the triangle in the backing storage.
    */
-  protected ColorRGBA color;
-
-  /**
-   * Facet normal
-   */
-  protected Vector3f normal;
-
-  /**
-   * Indices of the texture coordinates.
-   */
-  protected int[] texCoordIndices;
+  int index;
 
   public Triangle() {
     this(-1, -1, -1, -1, -1, -1,
@@ -43,21 +35,12 @@ public class Triangle {
 
   public Triangle(int a, int b, int c, int tA, int tB, int tC, Vector3f normal,
                   ColorRGBA color) {
-    vertexIndices = new int[3];
-    texCoordIndices = new int[3];
-    vertexIndices[0] = a;
-    vertexIndices[1] = b;
-    vertexIndices[2] = c;
-
     if (a == b || b == c || a == c) {
       Logger.getInstance().error("Invalid triangle generated.");
     }
-
-    texCoordIndices[0] = tA;
-    texCoordIndices[1] = tB;
-    texCoordIndices[2] = tC;
-    this.color = new ColorRGBA(color);
-    this.normal = new Vector3f(normal);
+    data = new TriangleArrays(1);
+    index = data.add(a, b, c, tA, tB, tC, normal.x, normal.y, normal.z,
+            color.r, color.g, color.b, color.a);
   }
 
   public Triangle(int a, int b, int c) {
@@ -76,11 +59,25 @@ public class Triangle {
 
 
   public Triangle(Triangle triangle) {
-    this(triangle.vertexIndices[0], triangle.vertexIndices[1],
-            triangle.vertexIndices[2],
-            triangle.texCoordIndices[0], triangle.texCoordIndices[1],
-            triangle.texCoordIndices[2],
-            triangle.normal, triangle.color);
+    data = new TriangleArrays(1);
+    index = data.add(triangle.data, triangle.index);
+  }
+
+  /**
+   * View on the triangle with the given index in the storage.
+   */
+  Triangle(TriangleArrays data, int index) {
+    this.data = data;
+    this.index = index;
+  }
+
+  /**
+   * Redirect the view to another storage (used when the triangle is added to
+   * a mesh).
+   */
+  void bind(TriangleArrays data, int index) {
+    this.data = data;
+    this.index = index;
   }
 
   /**
@@ -94,8 +91,9 @@ public class Triangle {
    * Add an offset to all texture coordinates (required when merging meshes).
    */
   public void addTexCoordOffset(int offset) {
+    int o = index * TriangleArrays.INDEX_STRIDE;
     for (int i = 0; i < 3; i++) {
-      texCoordIndices[i] += offset;
+      data.texCoordIndices[o + i] += offset;
     }
   }
 
@@ -103,29 +101,35 @@ public class Triangle {
    * Add an offset to all vertex indices (required when merging meshes).
    */
   public void addVertexIndexOffset(int offset) {
+    int o = index * TriangleArrays.INDEX_STRIDE;
     for (int i = 0; i < 3; i++) {
-      vertexIndices[i] += offset;
+      data.vertexIndices[o + i] += offset;
     }
+    data.modCount++;
   }
 
   /**
    * Checks if the triangle has a duplicated vertex index.
    */
   public boolean isDegenerated() {
-    return vertexIndices[0] == vertexIndices[1] ||
-            vertexIndices[1] == vertexIndices[2] ||
-            vertexIndices[2] == vertexIndices[0];
+    int o = index * TriangleArrays.INDEX_STRIDE;
+    int[] vertexIndices = data.vertexIndices;
+    return vertexIndices[o] == vertexIndices[o + 1] ||
+            vertexIndices[o + 1] == vertexIndices[o + 2] ||
+            vertexIndices[o + 2] == vertexIndices[o];
   }
 
   /**
    * Replace vertex index iReplace by iKeep.
    */
   public void replaceVertexIndex(int iKeep, int iReplace) {
+    int o = index * TriangleArrays.INDEX_STRIDE;
     for (int i = 0; i < 3; i++) {
-      if (vertexIndices[i] == iReplace) {
-        vertexIndices[i] = iKeep;
+      if (data.vertexIndices[o + i] == iReplace) {
+        data.vertexIndices[o + i] = iKeep;
       }
     }
+    data.modCount++;
   }
 
   @Override
@@ -136,22 +140,26 @@ public class Triangle {
   // +++ GETTER/SETTER +++++++++++++++++++++++++
 
   public ColorRGBA getColor() {
-    return color;
+    int o = index * TriangleArrays.COLOR_STRIDE;
+    return new ColorRGBA(data.colors[o], data.colors[o + 1],
+            data.colors[o + 2], data.colors[o + 3]);
   }
 
   /**
    * Color must be a 4D vector in RGBA format.
    */
   public void setColor(ColorRGBA color) {
-    this.color = color;
+    data.setColor(index, color.r, color.g, color.b, color.a);
   }
 
   public void setNormal(Vector3f normal) {
-    this.normal = new Vector3f(normal);
+    data.setNormal(index, normal.x, normal.y, normal.z);
   }
 
   public Vector3f getNormal() {
-    return normal;
+    int o = index * TriangleArrays.NORMAL_STRIDE;
+    return new Vector3f(data.normals[o], data.normals[o + 1],
+            data.normals[o + 2]);
   }
 
   /**
@@ -159,28 +167,28 @@ public class Triangle {
    */
   public void setTextureCoordinates(int texCoordIndex1, int texCoordIndex2,
                                     int texCoordIndex3) {
-    this.texCoordIndices[0] = texCoordIndex1;
-    this.texCoordIndices[1] = texCoordIndex2;
-    this.texCoordIndices[2] = texCoordIndex3;
+    data.setTexCoordIndices(index, texCoordIndex1, texCoordIndex2,
+            texCoordIndex3);
   }
 
   public int getVertexIndex(int index) {
-    return vertexIndices[index];
+    return data.vertexIndices[this.index * TriangleArrays.INDEX_STRIDE + index];
   }
 
   public int getTextureCoordinate(int vertexInTriangleIndex) {
-    return texCoordIndices[vertexInTriangleIndex];
+    return data.texCoordIndices[index * TriangleArrays.INDEX_STRIDE
+            + vertexInTriangleIndex];
   }
 
   public int getA() {
-    return vertexIndices[0];
+    return getVertexIndex(0);
   }
 
   public int getB() {
-    return vertexIndices[1];
+    return getVertexIndex(1);
   }
 
   public int getC() {
-    return vertexIndices[2];
+    return getVertexIndex(2);
   }
 }
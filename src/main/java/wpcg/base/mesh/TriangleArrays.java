@@ -0,0 +1,223 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.base.mesh;
+
+import java.util.Arrays;
+
+/**
+ * Packed structure-of-arrays storage for triangles. Triangle i occupies
+ * vertexIndices[3i..3i+2], texCoordIndices[3i..3i+2], normals[3i..3i+2] and
+ * colors[4i..4i+3]. The arrays grow automatically, so their length may exceed
+ * the number of used entries.
+ */
+final class TriangleArrays {
+
+  static final int INDEX_STRIDE = 3;
+  static final int NORMAL_STRIDE = 3;
+  static final int COLOR_STRIDE = 4;
+
+  /**
+   * Vertex indices of the three corners.
+   */
+  int[] vertexIndices;
+
+  /**
+   * Texture coordinate indices of the three corners, -1 if not used.
+   */
+  int[] texCoordIndices;
+
+  /**
+   * Facet normals (x, y, z).
+   */
+  float[] normals;
+
+  /**
+   * Triangle colors (r, g, b, a).
+   */
+  float[] colors;
+
+  /**
+   * Number of used triangles.
+   */
+  int size;
+
+  /**
+   * Incremented whenever the triangle topology (vertex indices or number of
+   * triangles) changes, used to invalidate derived data like adjacency.
+   */
+  int modCount;
+
+  TriangleArrays(int capacity) {
+    capacity = Math.max(capacity, 1);
+    vertexIndices = new int[capacity * INDEX_STRIDE];
+    texCoordIndices = new int[capacity * INDEX_STRIDE];
+    normals = new float[capacity * NORMAL_STRIDE];
+    colors = new float[capacity * COLOR_STRIDE];
+    size = 0;
+  }
+
+  /**
+   * Copy constructor, only the used entries are copied.
+   */
+  TriangleArrays(TriangleArrays other) {
+    int capacity = Math.max(other.size, 1);
+    vertexIndices = Arrays.copyOf(other.vertexIndices, capacity * INDEX_STRIDE);
+    texCoordIndices = Arrays.copyOf(other.texCoordIndices,
+            capacity * INDEX_STRIDE);
+    normals = Arrays.copyOf(other.normals, capacity * NORMAL_STRIDE);
+    colors = Arrays.copyOf(other.colors, capacity * COLOR_STRIDE);
+    size = other.size;
+  }
+
+  /**
+   * Make sure that the arrays can hold at least the given number of triangles.
+   */
+  void ensureCapacity(int capacity) {
+    int current = vertexIndices.length / INDEX_STRIDE;
+    if (capacity <= current) {
+      return;
+    }
+    int newCapacity = Math.max(capacity, current + (current >> 1) + 1);
+    vertexIndices = Arrays.copyOf(vertexIndices, newCapacity * INDEX_STRIDE);
+    texCoordIndices = Arrays.copyOf(texCoordIndices,
+            newCapacity * INDEX_STRIDE);
+    normals = Arrays.copyOf(normals, newCapacity * NORMAL_STRIDE);
+    colors = Arrays.copyOf(colors, newCapacity * COLOR_STRIDE);
+  }
+
+  /**
+   * Shrink the arrays to the number of used triangles.
+   */
+  void trimToSize() {
+    int capacity = Math.max(size, 1);
+    if (vertexIndices.length == capacity * INDEX_STRIDE) {
+      return;
+    }
+    vertexIndices = Arrays.copyOf(vertexIndices, capacity * INDEX_STRIDE);
+    texCoordIndices = Arrays.copyOf(texCoordIndices, capacity * INDEX_STRIDE);
+    normals = Arrays.copyOf(normals, capacity * NORMAL_STRIDE);
+    colors = Arrays.copyOf(colors, capacity * COLOR_STRIDE);
+  }
+
+  /**
+   * Append a triangle, returns its index.
+   */
+  int add(int a, int b, int c, int tA, int tB, int tC,
+          float nx, float ny, float nz, float r, float g, float bl, float al) {
+    ensureCapacity(size + 1);
+    int index = size++;
+    setVertexIndices(index, a, b, c);
+    setTexCoordIndices(index, tA, tB, tC);
+    setNormal(index, nx, ny, nz);
+    setColor(index, r, g, bl, al);
+    return index;
+  }
+
+  /**
+   * Append a copy of triangle 'index' in 'other', returns the new index.
+   */
+  int add(TriangleArrays other, int index) {
+    ensureCapacity(size + 1);
+    int newIndex = size++;
+    copy(other, index, this, newIndex);
+    modCount++;
+    return newIndex;
+  }
+
+  /**
+   * Append all triangles of 'other'.
+   */
+  void addAll(TriangleArrays other) {
+    ensureCapacity(size + other.size);
+    System.arraycopy(other.vertexIndices, 0, vertexIndices,
+            size * INDEX_STRIDE, other.size * INDEX_STRIDE);
+    System.arraycopy(other.texCoordIndices, 0, texCoordIndices,
+            size * INDEX_STRIDE, other.size * INDEX_STRIDE);
+    System.arraycopy(other.normals, 0, normals, size * NORMAL_STRIDE,
+            other.size * NORMAL_STRIDE);
+    System.arraycopy(other.colors, 0, colors, size * COLOR_STRIDE,
+            other.size * COLOR_STRIDE);
+    size += other.size;
+    modCount++;
+  }
+
+  /**
+   * Remove the triangle at the given index, all following triangles move one
+   * slot to the front.
+   */
+  void remove(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+    int tail = size - index - 1;
+    System.arraycopy(vertexIndices, (index + 1) * INDEX_STRIDE, vertexIndices,
+            index * INDEX_STRIDE, tail * INDEX_STRIDE);
+    System.arraycopy(texCoordIndices, (index + 1) * INDEX_STRIDE,
+            texCoordIndices, index * INDEX_STRIDE, tail * INDEX_STRIDE);
+    System.arraycopy(normals, (index + 1) * NORMAL_STRIDE, normals,
+            index * NORMAL_STRIDE, tail * NORMAL_STRIDE);
+    System.arraycopy(colors, (index + 1) * COLOR_STRIDE, colors,
+            index * COLOR_STRIDE, tail * COLOR_STRIDE);
+    size--;
+    modCount++;
+  }
+
+  /**
+   * Reorder the triangles: new triangle i is the old triangle order[i] (order
+   * is a permutation of 0..size-1).
+   */
+  void reorder(int[] order) {
+    TriangleArrays old = new TriangleArrays(this);
+    for (int i = 0; i < size; i++) {
+      copy(old, order[i], this, i);
+    }
+    modCount++;
+  }
+
+  /**
+   * Copy triangle 'from' in 'src' to triangle 'to' in 'dst'.
+   */
+  static void copy(TriangleArrays src, int from, TriangleArrays dst, int to) {
+    System.arraycopy(src.vertexIndices, from * INDEX_STRIDE, dst.vertexIndices,
+            to * INDEX_STRIDE, INDEX_STRIDE);
+    System.arraycopy(src.texCoordIndices, from * INDEX_STRIDE,
+            dst.texCoordIndices, to * INDEX_STRIDE, INDEX_STRIDE);
+    System.arraycopy(src.normals, from * NORMAL_STRIDE, dst.normals,
+            to * NORMAL_STRIDE, NORMAL_STRIDE);
+    System.arraycopy(src.colors, from * COLOR_STRIDE, dst.colors,
+            to * COLOR_STRIDE, COLOR_STRIDE);
+  }
+
+  void setVertexIndices(int index, int a, int b, int c) {
+    int o = index * INDEX_STRIDE;
+    vertexIndices[o] = a;
+    vertexIndices[o + 1] = b;
+    vertexIndices[o + 2] = c;
+    modCount++;
+  }
+
+  void setTexCoordIndices(int index, int tA, int tB, int tC) {
+    int o = index * INDEX_STRIDE;
+    texCoordIndices[o] = tA;
+    texCoordIndices[o + 1] = tB;
+    texCoordIndices[o + 2] = tC;
+  }
+
+  void setNormal(int index, float x, float y, float z) {
+    int o = index * NORMAL_STRIDE;
+    normals[o] = x;
+    normals[o + 1] = y;
+    normals[o + 2] = z;
+  }
+
+  void setColor(int index, float r, float g, float b, float a) {
+    int o = index * COLOR_STRIDE;
+    colors[o] = r;
+    colors[o + 1] = g;
+    colors[o + 2] = b;
+    colors[o + 3] = a;
+  }
+}
@@ -6,133 +6,188 @@
 package wpcg.base.mesh;
 
 import com.jme3.bounding.BoundingBox;
+import com.jme3.bounding.BoundingSphere;
 import com.jme3.math.ColorRGBA;
 import com.jme3.math.Vector2f;
 import com.jme3.math.Vector3f;
 import wpcg.base.Logger;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.Predicate;
 
 /**
- * Implementation of a indexed vertex list triangle mesh.
+ * Implementation of a indexed vertex list triangle mesh. Vertices, triangles
+ * and texture coordinates are stored in packed primitive arrays which grow
+ * automatically. The Vertex and Triangle objects returned by the getters are
+ * views on this storage, they become invalid when the indices of the mesh
+ * change (e.g. after removing triangles).
  */
 public class TriangleMesh {
 
   /**
    * Vertices.
    */
-  private List<Vertex> vertices;
+  VertexArrays vertices;
 
   /**
    * Triangles.
    */
-  private List<Triangle> triangles;
+  TriangleArrays triangles;
 
   /**
-   * Texture coordinates.
+   * Texture coordinates (u, v).
    */
-  private List<Vector2f> textureCoordinates;
+  float[] textureCoordinates;
+
+  /**
+   * Number of used texture coordinates.
+   */
+  int numberOfTextureCoordinates;
 
   /**
    * Texture object, leave null if no texture is used.
    */
   private String textureName;
 
+  /**
+   * Triangle groups (e.g. per material), may be empty.
+   */
+  private List<MeshGroup> groups;
+
+  /**
+   * Lazily built adjacency information, null if not available.
+   */
+  private MeshAdjacency adjacency;
+
+  /**
+   * Topology state (triangle modCount and number of vertices) the adjacency
+   * was built for.
+   */
+  private int adjacencyModCount;
+  private int adjacencyNumberOfVertices;
+
   public TriangleMesh() {
-    textureCoordinates = new ArrayList<>();
-    triangles = new ArrayList<>();
-    this.vertices = new ArrayList<>();
-    this.textureName = textureName;
+    this(16, 16);
+  }
+
+  /**
+   * Create an empty mesh with initial capacities for the given number of
+   * vertices and triangles.
+   */
+  public TriangleMesh(int vertexCapacity, int triangleCapacity) {
+    vertices = new VertexArrays(vertexCapacity);
+    triangles = new TriangleArrays(triangleCapacity);
+    textureCoordinates = new float[2 * 16];
+    numberOfTextureCoordinates = 0;
+    textureName = null;
+    groups = new ArrayList<>();
   }
 
   /**
    * Copy constructor
    */
   public TriangleMesh(TriangleMesh mesh) {
-    this();
-    // Vertices
-    for (int i = 0; i < mesh.getNumberOfVertices(); i++) {
-      addVertex(new Vertex(mesh.getVertex(i)));
-    }
-    // Texture coordinates
-    for (int i = 0; i < mesh.getNumberOfTextureCoordinates(); i++) {
-      addTextureCoordinate(new Vector2f(mesh.getTextureCoordinate(i)));
-    }
-    // Triangles
-    for (int i = 0; i < mesh.getNumberOfTriangles(); i++) {
-      addTriangle(new Triangle(mesh.getTriangle(i)));
-    }
+    vertices = new VertexArrays(mesh.vertices);
+    triangles = new TriangleArrays(mesh.triangles);
+    textureCoordinates = Arrays.copyOf(mesh.textureCoordinates,
+            Math.max(2 * mesh.numberOfTextureCoordinates, 2));
+    numberOfTextureCoordinates = mesh.numberOfTextureCoordinates;
     textureName = mesh.textureName;
+    groups = new ArrayList<>();
+    for (MeshGroup group : mesh.groups) {
+      groups.add(new MeshGroup(group));
+    }
   }
 
   /**
    * Add triangles connecting the three incides. Returns index of the triangle.
    */
   public int addTriangle(int vertexIndex1, int vertexIndex2, int vertexIndex3) {
-    triangles.add(new Triangle(vertexIndex1, vertexIndex2, vertexIndex3));
-    return triangles.size() - 1;
+    if (vertexIndex1 == vertexIndex2 || vertexIndex2 == vertexIndex3
+            || vertexIndex1 == vertexIndex3) {
+      Logger.getInstance().error("Invalid triangle generated.");
+    }
+    return triangles.add(vertexIndex1, vertexIndex2, vertexIndex3, -1, -1, -1,
+            1, 0, 0, 0.5f, 0.5f, 0.5f, 1);
   }
 
   /**
    * Add triangle object, return index of the triangle in the triangle list.
+   * The triangle object becomes a view on the mesh storage.
    */
   public void addTriangle(Triangle t) {
-    triangles.add(t);
+    int index = triangles.add(t.data, t.index);
+    t.bind(triangles, index);
   }
 
   /**
    * Create and add vertex for the given position, return index in vertex list.
    */
   public int addVertex(Vector3f position) {
-    vertices.add(new Vertex(position));
-    return vertices.size() - 1;
+    return addVertex(position.x, position.y, position.z);
   }
 
   /**
-   * Add vertex, return index in vertex list.
+   * Create and add vertex for the given position, return index in vertex list.
+   */
+  public int addVertex(float x, float y, float z) {
+    return vertices.add(x, y, z, 0, 1, 0, 0.5f, 0.5f, 0.5f, 1);
+  }
+
+  /**
+   * Add vertex, return index in vertex list. The vertex object becomes a view
+   * on the mesh storage.
    */
   public int addVertex(Vertex vertex) {
-    vertices.add(vertex);
-    return vertices.size() - 1;
+    int index = vertices.add(vertex.data, vertex.index);
+    vertex.bind(vertices, index);
+    return index;
   }
 
   /**
    * Compute the normals for all triangles.
    */
   public void computeTriangleNormals() {
-    for (int tIndex = 0; tIndex < getNumberOfTriangles(); tIndex++) {
-      Triangle t = triangles.get(tIndex);
-      Vector3f a = vertices.get(t.getVertexIndex(0)).getPosition();
-      Vector3f b = vertices.get(t.getVertexIndex(1)).getPosition();
-      Vector3f c = vertices.get(t.getVertexIndex(2)).getPosition();
-      Vector3f u = b.subtract(a);
-      Vector3f v = c.subtract(a);
-      Vector3f normal = u.cross(v);
-      float norm = normal.length();
-      if (norm > 1e-8) {
-        normal = normal.mult(1.0f / norm);
-      } else {
-        Logger.getInstance().error("Invalid triangle - cannot compute " +
-                "normal.");
-      }
-      t.setNormal(normal);
-    }
+    MeshNormals.computeTriangleNormals(this);
+  }
+
+  /**
+   * Compute the triangle normals and the area-weighted vertex normals.
+   */
+  public void computeVertexNormals() {
+    MeshNormals.computeVertexNormals(this);
   }
 
   /**
    * Add the given texture coordinate, return index in tex coord list.
    */
   public int addTextureCoordinate(Vector2f t) {
-    textureCoordinates.add(t);
-    return textureCoordinates.size() - 1;
+    return addTextureCoordinate(t.x, t.y);
+  }
+
+  /**
+   * Add the given texture coordinate, return index in tex coord list.
+   */
+  public int addTextureCoordinate(float u, float v) {
+    if (2 * numberOfTextureCoordinates + 2 > textureCoordinates.length) {
+      textureCoordinates = Arrays.copyOf(textureCoordinates,
+              Math.max(2 * numberOfTextureCoordinates + 2,
+                      textureCoordinates.length + (textureCoordinates.length >> 1)));
+    }
+    textureCoordinates[2 * numberOfTextureCoordinates] = u;
+    textureCoordinates[2 * numberOfTextureCoordinates + 1] = v;
+    return numberOfTextureCoordinates++;
   }
 
   /**
    * Remove all triangles.
    */
   public void clearTriangles() {
-    triangles.clear();
+    triangles.size = 0;
+    triangles.modCount++;
+    groups.clear();
   }
 
   /**
@@ -140,66 +195,520 @@ public class TriangleMesh {
    */
   public void removeTriangle(int index) {
     triangles.remove(index);
+    for (MeshGroup group : groups) {
+      if (index < group.firstTriangle) {
+        group.firstTriangle--;
+      } else if (index < group.firstTriangle + group.numberOfTriangles) {
+        group.numberOfTriangles--;
+      }
+    }
+  }
+
+  /**
+   * Remove all triangles matching the filter in a single linear sweep, the
+   * remaining triangles keep their order. The triangle passed to the filter is
+   * a reused view, do not keep a reference to it. Returns the number of
+   * removed triangles.
+   */
+  public int removeTrianglesIf(Predicate<Triangle> filter) {
+    // Group boundaries, the number of kept triangles before each boundary is
+    // recorded during the sweep
+    int[] marks = getGroupBoundaries();
+    int[] keptAtMark = new int[marks.length];
+    int mark = 0;
+
+    Triangle view = new Triangle(triangles, 0);
+    int numberOfKept = 0;
+    for (int t = 0; t < triangles.size; t++) {
+      while (mark < marks.length && marks[mark] <= t) {
+        keptAtMark[mark++] = numberOfKept;
+      }
+      view.bind(triangles, t);
+      if (filter.test(view)) {
+        continue;
+      }
+      if (numberOfKept != t) {
+        TriangleArrays.copy(triangles, t, triangles, numberOfKept);
+      }
+      numberOfKept++;
+    }
+    while (mark < marks.length) {
+      keptAtMark[mark++] = numberOfKept;
+    }
+    int numberOfRemoved = triangles.size - numberOfKept;
+    triangles.size = numberOfKept;
+    triangles.modCount++;
+
+    for (MeshGroup group : groups) {
+      int first = keptAtMark[Arrays.binarySearch(marks, group.firstTriangle)];
+      int end = keptAtMark[Arrays.binarySearch(marks,
+              group.firstTriangle + group.numberOfTriangles)];
+      group.firstTriangle = first;
+      group.numberOfTriangles = end - first;
+    }
+    return numberOfRemoved;
+  }
+
+  /**
+   * Sorted, distinct first and end triangle indices of all groups.
+   */
+  int[] getGroupBoundaries() {
+    int[] marks = new int[2 * groups.size()];
+    for (int i = 0; i < groups.size(); i++) {
+      marks[2 * i] = groups.get(i).firstTriangle;
+      marks[2 * i + 1] = groups.get(i).firstTriangle
+              + groups.get(i).numberOfTriangles;
+    }
+    Arrays.sort(marks);
+    int n = 0;
+    for (int i = 0; i < marks.length; i++) {
+      if (i == 0 || marks[i] != marks[i - 1]) {
+        marks[n++] = marks[i];
+      }
+    }
+    return Arrays.copyOf(marks, n);
+  }
+
+  /**
+   * Boundaries of the triangle ranges which can be reordered without
+   * changing the groups: the groups and the gaps between them (first entry
+   * 0, last entry the number of triangles).
+   */
+  int[] getTriangleRanges() {
+    int[] boundaries = getGroupBoundaries();
+    int numberOfTriangles = triangles.size;
+    int[] ranges = new int[boundaries.length + 2];
+    int n = 0;
+    ranges[n++] = 0;
+    for (int b : boundaries) {
+      if (b > 0 && b < numberOfTriangles) {
+        ranges[n++] = b;
+      }
+    }
+    ranges[n++] = numberOfTriangles;
+    return Arrays.copyOf(ranges, n);
+  }
+
+  /**
+   * Remove all triangles matching the filter (see removeTrianglesIf(filter)).
+   * If removeUnreferencedVertices is set, all vertices which are no longer
+   * used by any triangle are removed as well and the old-to-new vertex index
+   * remap is returned (-1 for removed vertices). Otherwise null is returned.
+   */
+  public int[] removeTrianglesIf(Predicate<Triangle> filter,
+                                 boolean removeUnreferencedVertices) {
+    removeTrianglesIf(filter);
+    return removeUnreferencedVertices ? removeUnreferencedVertices() : null;
+  }
+
+  /**
+   * Remove all vertices which are not used by any triangle. The remaining
+   * vertices keep their order. Returns the old-to-new vertex index remap (-1
+   * for removed vertices).
+   */
+  public int[] removeUnreferencedVertices() {
+    int[] remap = new int[vertices.size];
+    Arrays.fill(remap, -1);
+    int[] indices = triangles.vertexIndices;
+    for (int i = 0; i < 3 * triangles.size; i++) {
+      remap[indices[i]] = 0;
+    }
+    int numberOfKept = 0;
+    for (int v = 0; v < vertices.size; v++) {
+      if (remap[v] < 0) {
+        continue;
+      }
+      if (numberOfKept != v) {
+        System.arraycopy(vertices.positions, 3 * v, vertices.positions,
+                3 * numberOfKept, 3);
+        System.arraycopy(vertices.normals, 3 * v, vertices.normals,
+                3 * numberOfKept, 3);
+        System.arraycopy(vertices.colors, 4 * v, vertices.colors,
+                4 * numberOfKept, 4);
+      }
+      remap[v] = numberOfKept++;
+    }
+    if (numberOfKept != vertices.size) {
+      vertices.size = numberOfKept;
+      vertices.invalidateBounds();
+      for (int i = 0; i < 3 * triangles.size; i++) {
+        indices[i] = remap[indices[i]];
+      }
+      triangles.modCount++;
+    }
+    return remap;
+  }
+
+  /**
+   * Reorder the vertices: new vertex i is the old vertex order[i] (order is a
+   * permutation of all vertices). The triangles are updated accordingly. In
+   * the indexed layout (see ObjReader.readIndexed()), the texture coordinates
+   * are reordered as well, so their indices still equal the vertex indices.
+   */
+  void reorderVertices(int[] order) {
+    int[] remap = new int[vertices.size];
+    for (int i = 0; i < order.length; i++) {
+      remap[order[i]] = i;
+    }
+    int[] indices = triangles.vertexIndices;
+    int[] texCoordIndices = triangles.texCoordIndices;
+    boolean indexedTexCoords = hasIndexedTextureCoordinates();
+    vertices.reorder(order);
+    for (int i = 0; i < 3 * triangles.size; i++) {
+      indices[i] = remap[indices[i]];
+    }
+    if (indexedTexCoords) {
+      float[] uv = Arrays.copyOf(textureCoordinates,
+              2 * numberOfTextureCoordinates);
+      for (int i = 0; i < order.length; i++) {
+        textureCoordinates[2 * i] = uv[2 * order[i]];
+        textureCoordinates[2 * i + 1] = uv[2 * order[i] + 1];
+      }
+      System.arraycopy(indices, 0, texCoordIndices, 0, 3 * triangles.size);
+    }
+    triangles.modCount++;
+  }
+
+  /**
+   * Reorder the texture coordinates in the order of their first use by the
+   * triangles, unused texture coordinates at the end. Does nothing in the
+   * indexed layout, where the texture coordinates follow the vertices.
+   */
+  void reorderTextureCoordinates() {
+    if (numberOfTextureCoordinates == 0 || hasIndexedTextureCoordinates()) {
+      return;
+    }
+    int[] remap = new int[numberOfTextureCoordinates];
+    Arrays.fill(remap, -1);
+    int[] texCoordIndices = triangles.texCoordIndices;
+    float[] uv = Arrays.copyOf(textureCoordinates,
+            2 * numberOfTextureCoordinates);
+    int n = 0;
+    for (int i = 0; i < 3 * triangles.size; i++) {
+      int t = texCoordIndices[i];
+      if (t < 0 || t >= numberOfTextureCoordinates) {
+        continue;
+      }
+      if (remap[t] < 0) {
+        textureCoordinates[2 * n] = uv[2 * t];
+        textureCoordinates[2 * n + 1] = uv[2 * t + 1];
+        remap[t] = n++;
+      }
+      texCoordIndices[i] = remap[t];
+    }
+    for (int t = 0; t < numberOfTextureCoordinates; t++) {
+      if (remap[t] < 0) {
+        textureCoordinates[2 * n] = uv[2 * t];
+        textureCoordinates[2 * n + 1] = uv[2 * t + 1];
+        n++;
+      }
+    }
+  }
+
+  /**
+   * True if every triangle corner uses the texture coordinate with the index
+   * of its vertex (layout of ObjReader.readIndexed()).
+   */
+  boolean hasIndexedTextureCoordinates() {
+    return numberOfTextureCoordinates == vertices.size
+            && Arrays.equals(triangles.vertexIndices, 0, 3 * triangles.size,
+            triangles.texCoordIndices, 0, 3 * triangles.size);
+  }
+
+  /**
+   * Add a triangle group. The groups share the vertices and texture
+   * coordinates of the mesh.
+   */
+  public void addGroup(MeshGroup group) {
+    groups.add(group);
+  }
+
+  /**
+   * Remove all empty groups.
+   */
+  public void removeEmptyGroups() {
+    groups.removeIf(group -> group.numberOfTriangles == 0);
   }
 
   /**
-   * Compute and return the AABB bounding box of the vertices.
+   * Create a standalone mesh for the given group, containing only the
+   * vertices and texture coordinates used by its triangles.
+   */
+  public TriangleMesh createSubmesh(int groupIndex) {
+    MeshGroup group = groups.get(groupIndex);
+    int first = group.firstTriangle;
+    int end = first + group.numberOfTriangles;
+    int[] vertexRemap = new int[vertices.size];
+    int[] texCoordRemap = new int[numberOfTextureCoordinates];
+    Arrays.fill(vertexRemap, -1);
+    Arrays.fill(texCoordRemap, -1);
+
+    TriangleMesh submesh = new TriangleMesh(3 * group.numberOfTriangles,
+            group.numberOfTriangles);
+    for (int t = first; t < end; t++) {
+      int newIndex = submesh.triangles.add(triangles, t);
+      for (int corner = 0; corner < 3; corner++) {
+        int i = 3 * newIndex + corner;
+        int v = submesh.triangles.vertexIndices[i];
+        if (vertexRemap[v] < 0) {
+          vertexRemap[v] = submesh.vertices.add(vertices, v);
+        }
+        submesh.triangles.vertexIndices[i] = vertexRemap[v];
+        int tc = submesh.triangles.texCoordIndices[i];
+        if (tc >= 0 && tc < numberOfTextureCoordinates) {
+          if (texCoordRemap[tc] < 0) {
+            texCoordRemap[tc] = submesh.addTextureCoordinate(
+                    textureCoordinates[2 * tc], textureCoordinates[2 * tc + 1]);
+          }
+          submesh.triangles.texCoordIndices[i] = texCoordRemap[tc];
+        }
+      }
+    }
+    submesh.trimToSize();
+    submesh.textureName = group.getTextureName();
+    submesh.groups.add(new MeshGroup(group.getName(), group.getMaterial(), 0,
+            group.numberOfTriangles));
+    return submesh;
+  }
+
+  /**
+   * Returns the vertex-to-triangle and edge-to-triangle adjacency. It is built
+   * on first use and rebuilt after the topology (triangles or number of
+   * vertices) changed.
+   */
+  public MeshAdjacency getAdjacency() {
+    if (adjacency == null || adjacencyModCount != triangles.modCount
+            || adjacencyNumberOfVertices != vertices.size) {
+      adjacency = new MeshAdjacency(this);
+      adjacencyModCount = triangles.modCount;
+      adjacencyNumberOfVertices = vertices.size;
+    }
+    return adjacency;
+  }
+
+  /**
+   * Make sure the storage can hold the given number of vertices and triangles
+   * without growing.
+   */
+  public void ensureCapacity(int numberOfVertices, int numberOfTriangles) {
+    vertices.ensureCapacity(numberOfVertices);
+    triangles.ensureCapacity(numberOfTriangles);
+  }
+
+  /**
+   * Release unused capacity of the storage arrays.
+   */
+  public void trimToSize() {
+    vertices.trimToSize();
+    triangles.trimToSize();
+    textureCoordinates = Arrays.copyOf(textureCoordinates,
+            Math.max(2 * numberOfTextureCoordinates, 2));
+  }
+
+  /**
+   * Return the AABB bounding box of the vertices. The bounds are cached: they
+   * grow with added vertices and move with translations; after other position
+   * changes or removed vertices they are recomputed on the next request.
    */
   public BoundingBox getBoundingBox() {
-    Vector3f ll = new Vector3f(Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE);
-    Vector3f ur = new Vector3f(Float.MIN_VALUE, Float.MIN_VALUE, Float.MIN_VALUE);
-    for (Vertex v : vertices) {
-      for (int i = 0; i < 3; i++) {
-        if (v.getPosition().get(i) < ll.get(i)) {
-          ll.set(i, v.getPosition().get(i));
+    return getBoundingBox(new BoundingBox());
+  }
+
+  /**
+   * Write the AABB bounding box of the vertices into store and return it.
+   */
+  public BoundingBox getBoundingBox(BoundingBox store) {
+    float[] bounds = getBounds();
+    if (vertices.size == 0 || bounds[0] > bounds[3]) {
+      store.setCenter(0, 0, 0);
+      store.setXExtent(0);
+      store.setYExtent(0);
+      store.setZExtent(0);
+      return store;
+    }
+    store.setCenter((bounds[0] + bounds[3]) * 0.5f,
+            (bounds[1] + bounds[4]) * 0.5f, (bounds[2] + bounds[5]) * 0.5f);
+    store.setXExtent((bounds[3] - bounds[0]) * 0.5f);
+    store.setYExtent((bounds[4] - bounds[1]) * 0.5f);
+    store.setZExtent((bounds[5] - bounds[2]) * 0.5f);
+    return store;
+  }
+
+  /**
+   * Return a bounding sphere of the vertices, centered at the center of the
+   * bounding box. The radius is cached like the bounding box.
+   */
+  public BoundingSphere getBoundingSphere() {
+    float[] bounds = getBounds();
+    if (vertices.size == 0 || bounds[0] > bounds[3]) {
+      return new BoundingSphere(0, new Vector3f());
+    }
+    float cx = (bounds[0] + bounds[3]) * 0.5f;
+    float cy = (bounds[1] + bounds[4]) * 0.5f;
+    float cz = (bounds[2] + bounds[5]) * 0.5f;
+    if (vertices.sphereRadius < 0) {
+      vertices.sphereRadius = computeSphereRadius(cx, cy, cz);
+    }
+    return new BoundingSphere(vertices.sphereRadius, new Vector3f(cx, cy, cz));
+  }
+
+  /**
+   * Returns the (cached) bounds array (minX, minY, minZ, maxX, maxY, maxZ).
+   */
+  float[] getBounds() {
+    if (!vertices.boundsValid) {
+      computeBounds();
+    }
+    return vertices.bounds;
+  }
+
+  /**
+   * Recompute the bounds with a parallel reduction over fixed chunks.
+   */
+  private void computeBounds() {
+    float[] p = vertices.positions;
+    int numberOfChunks = (vertices.size + ParallelRange.DEFAULT_GRAIN - 1)
+            / ParallelRange.DEFAULT_GRAIN;
+    float[] chunkBounds = new float[6 * numberOfChunks];
+    ParallelRange.forEach(numberOfChunks, 1, (fromChunk, toChunk) -> {
+      for (int chunk = fromChunk; chunk < toChunk; chunk++) {
+        float minX = Float.POSITIVE_INFINITY;
+        float minY = Float.POSITIVE_INFINITY;
+        float minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY;
+        float maxY = Float.NEGATIVE_INFINITY;
+        float maxZ = Float.NEGATIVE_INFINITY;
+        int to = Math.min(vertices.size, (chunk + 1) * ParallelRange.DEFAULT_GRAIN);
+        for (int v = chunk * ParallelRange.DEFAULT_GRAIN; v < to; v++) {
+          float x = p[3 * v];
+          float y = p[3 * v + 1];
+          float z = p[3 * v + 2];
+          if (x < minX) {
+            minX = x;
+          }
+          if (y < minY) {
+            minY = y;
+          }
+          if (z < minZ) {
+            minZ = z;
+          }
+          if (x > maxX) {
+            maxX = x;
+          }
+          if (y > maxY) {
+            maxY = y;
+          }
+          if (z > maxZ) {
+            maxZ = z;
+          }
         }
-        if (v.getPosition().get(i) > ur.get(i)) {
-          ur.set(i, v.getPosition().get(i));
+        int o = 6 * chunk;
+        chunkBounds[o] = minX;
+        chunkBounds[o + 1] = minY;
+        chunkBounds[o + 2] = minZ;
+        chunkBounds[o + 3] = maxX;
+        chunkBounds[o + 4] = maxY;
+        chunkBounds[o + 5] = maxZ;
+      }
+    });
+    vertices.resetBounds();
+    for (int chunk = 0; chunk < numberOfChunks; chunk++) {
+      vertices.extendBounds(chunkBounds[6 * chunk], chunkBounds[6 * chunk + 1],
+              chunkBounds[6 * chunk + 2]);
+      vertices.extendBounds(chunkBounds[6 * chunk + 3],
+              chunkBounds[6 * chunk + 4], chunkBounds[6 * chunk + 5]);
+    }
+  }
+
+  /**
+   * Largest distance of a vertex from the given center (parallel reduction).
+   */
+  private float computeSphereRadius(float cx, float cy, float cz) {
+    float[] p = vertices.positions;
+    int numberOfChunks = (vertices.size + ParallelRange.DEFAULT_GRAIN - 1)
+            / ParallelRange.DEFAULT_GRAIN;
+    float[] chunkRadius = new float[numberOfChunks];
+    ParallelRange.forEach(numberOfChunks, 1, (fromChunk, toChunk) -> {
+      for (int chunk = fromChunk; chunk < toChunk; chunk++) {
+        float maxSquared = 0;
+        int to = Math.min(vertices.size, (chunk + 1) * ParallelRange.DEFAULT_GRAIN);
+        for (int v = chunk * ParallelRange.DEFAULT_GRAIN; v < to; v++) {
+          float dx = p[3 * v] - cx;
+          float dy = p[3 * v + 1] - cy;
+          float dz = p[3 * v + 2] - cz;
+          float d = dx * dx + dy * dy + dz * dz;
+          if (d > maxSquared) {
+            maxSquared = d;
+          }
         }
+        chunkRadius[chunk] = maxSquared;
       }
+    });
+    float maxSquared = 0;
+    for (float r : chunkRadius) {
+      maxSquared = Math.max(maxSquared, r);
     }
-    Vector3f extend = ur.subtract(ll);
-    BoundingBox bbox = new BoundingBox(ur.add(ll).mult(0.5f), extend.x,
-            extend.y, extend.z);
-    return bbox;
+    return (float) Math.sqrt(maxSquared);
   }
 
   // +++ GETTER/SETTER +++++++++++++++++++++++
 
   public Vertex getVertex(int index) {
-    return vertices.get(index);
+    checkIndex(index, vertices.size);
+    return new Vertex(vertices, index);
   }
 
   public int getNumberOfTriangles() {
-    return triangles.size();
+    return triangles.size;
   }
 
   public int getNumberOfVertices() {
-    return vertices.size();
+    return vertices.size;
   }
 
   public Triangle getTriangle(int triangleIndex) {
-    return triangles.get(triangleIndex);
+    checkIndex(triangleIndex, triangles.size);
+    return new Triangle(triangles, triangleIndex);
   }
 
   public Vector2f getTextureCoordinate(int texCoordIndex) {
-    return textureCoordinates.get(texCoordIndex);
+    checkIndex(texCoordIndex, numberOfTextureCoordinates);
+    return new Vector2f(textureCoordinates[2 * texCoordIndex],
+            textureCoordinates[2 * texCoordIndex + 1]);
   }
 
   public int getNumberOfTextureCoordinates() {
-    return textureCoordinates.size();
+    return numberOfTextureCoordinates;
   }
 
   public void setColor(ColorRGBA color) {
-    for (Triangle triangle : triangles) {
-      triangle.setColor(color);
+    for (int i = 0; i < triangles.size; i++) {
+      triangles.setColor(i, color.r, color.g, color.b, color.a);
     }
-    for (Vertex vertex : vertices) {
-      vertex.setColor(color);
+    for (int i = 0; i < vertices.size; i++) {
+      vertices.setColor(i, color.r, color.g, color.b, color.a);
     }
   }
 
+  public int getNumberOfGroups() {
+    return groups.size();
+  }
+
+  public MeshGroup getGroup(int groupIndex) {
+    return groups.get(groupIndex);
+  }
+
+  public String getTextureName() {
+    return textureName;
+  }
+
   public void setTextureName(String textureFilename) {
     this.textureName = textureFilename;
   }
+
+  private static void checkIndex(int index, int size) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+  }
 }
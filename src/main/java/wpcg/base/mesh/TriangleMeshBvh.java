@@ -0,0 +1,689 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.base.mesh;
+
+import com.jme3.bounding.BoundingBox;
+import com.jme3.math.Ray;
+import com.jme3.math.Vector3f;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * Bounding volume hierarchy over the triangles of a triangle mesh, used for ray
+ * casting (picking, visibility) and box overlap queries.
+ * <p>
+ * The tree is built top-down with a binned surface area heuristic (SAH); large
+ * subtrees are built in parallel. Nodes are stored in flat arrays: the two
+ * children of an inner node are stored next to each other, a leaf references a
+ * range in the triangle index array.
+ * <p>
+ * The hierarchy stays valid as long as the mesh topology does not change. After
+ * vertices were moved (e.g. TriangleMeshTools.translate) call refit(), after
+ * topology changes build a new hierarchy.
+ */
+public class TriangleMeshBvh {
+
+  /**
+   * Leaves with at most this many triangles are never split.
+   */
+  private static final int MAX_LEAF_SIZE = 4;
+
+  /**
+   * Number of bins per axis for the SAH evaluation.
+   */
+  private static final int NUMBER_OF_BINS = 16;
+
+  /**
+   * Subtrees with more triangles are built in a separate fork-join task.
+   */
+  private static final int PARALLEL_BUILD_THRESHOLD = 4096;
+
+  /**
+   * Cost of a traversal step relative to a triangle intersection.
+   */
+  private static final float TRAVERSAL_COST = 1.0f;
+
+  /**
+   * Maximum tree depth, determines the traversal stack size.
+   */
+  private static final int MAX_DEPTH = 64;
+
+  /**
+   * Result of a ray query.
+   */
+  public static class Hit {
+    private int triangleIndex;
+    private float distance;
+    private float u;
+    private float v;
+
+    /**
+     * Index of the hit triangle in the mesh.
+     */
+    public int getTriangleIndex() {
+      return triangleIndex;
+    }
+
+    /**
+     * Ray parameter of the hit point (distance if the direction is normalized).
+     */
+    public float getDistance() {
+      return distance;
+    }
+
+    /**
+     * Barycentric coordinates of the hit point, the weight of corner 0 is
+     * 1 - u - v.
+     */
+    public float getU() {
+      return u;
+    }
+
+    public float getV() {
+      return v;
+    }
+
+    @Override
+    public String toString() {
+      return "Hit triangle " + triangleIndex + " at " + distance;
+    }
+  }
+
+  /**
+   * Mesh the hierarchy was built for.
+   */
+  private final TriangleMesh mesh;
+
+  /**
+   * Triangle modCount at build time.
+   */
+  private final int modCount;
+
+  /**
+   * Node bounds (minX, minY, minZ, maxX, maxY, maxZ) per node.
+   */
+  private final float[] nodeBounds;
+
+  /**
+   * Inner node: index of the left child (right child is +1). Leaf: index of the
+   * first triangle in triangleIndices.
+   */
+  private final int[] nodeChildOrFirst;
+
+  /**
+   * Number of triangles in a leaf, 0 for inner nodes.
+   */
+  private final int[] nodeCount;
+
+  /**
+   * Number of used nodes.
+   */
+  private final int numberOfNodes;
+
+  /**
+   * Triangle indices ordered by leaves.
+   */
+  private final int[] triangleIndices;
+
+  /**
+   * Build the hierarchy for the current state of the mesh.
+   */
+  public TriangleMeshBvh(TriangleMesh mesh) {
+    this.mesh = mesh;
+    this.modCount = mesh.triangles.modCount;
+    int numberOfTriangles = mesh.triangles.size;
+    int maxNodes = Math.max(1, 2 * numberOfTriangles - 1);
+    nodeBounds = new float[6 * maxNodes];
+    nodeChildOrFirst = new int[maxNodes];
+    nodeCount = new int[maxNodes];
+    triangleIndices = new int[numberOfTriangles];
+    for (int i = 0; i < numberOfTriangles; i++) {
+      triangleIndices[i] = i;
+    }
+
+    // Triangle bounds and centroids, stored in the same (permuted) order as
+    // triangleIndices during the build
+    float[] triangleBounds = new float[6 * numberOfTriangles];
+    float[] centroids = new float[3 * numberOfTriangles];
+    float[] p = mesh.vertices.positions;
+    int[] indices = mesh.triangles.vertexIndices;
+    ParallelRange.forEach(numberOfTriangles, (from, to) -> {
+      for (int t = from; t < to; t++) {
+        computeTriangleBounds(p, indices, t, triangleBounds, 6 * t);
+        for (int axis = 0; axis < 3; axis++) {
+          centroids[3 * t + axis] = 0.5f * (triangleBounds[6 * t + axis]
+                  + triangleBounds[6 * t + 3 + axis]);
+        }
+      }
+    });
+
+    AtomicInteger nodeCounter = new AtomicInteger(1);
+    BuildTask root = new BuildTask(0, 0, numberOfTriangles, 0, triangleBounds,
+            centroids, nodeCounter);
+    if (numberOfTriangles > PARALLEL_BUILD_THRESHOLD) {
+      ForkJoinPool.commonPool().invoke(root);
+    } else {
+      root.compute();
+    }
+    numberOfNodes = nodeCounter.get();
+  }
+
+  // +++ QUERIES +++++++++++++++++++++++++++++++
+
+  /**
+   * Find the closest triangle hit by the ray within maxDistance. Returns null
+   * if no triangle is hit.
+   */
+  public Hit closestHit(Ray ray, float maxDistance) {
+    Hit hit = new Hit();
+    hit.triangleIndex = -1;
+    hit.distance = maxDistance;
+    traverse(ray.getOrigin(), ray.getDirection(), hit, false);
+    return hit.triangleIndex >= 0 ? hit : null;
+  }
+
+  /**
+   * Checks if the ray hits any triangle within maxDistance (e.g. for shadow
+   * or visibility rays). Stops at the first hit found.
+   */
+  public boolean anyHit(Ray ray, float maxDistance) {
+    Hit hit = new Hit();
+    hit.triangleIndex = -1;
+    hit.distance = maxDistance;
+    traverse(ray.getOrigin(), ray.getDirection(), hit, true);
+    return hit.triangleIndex >= 0;
+  }
+
+  /**
+   * Report all triangles whose bounding box overlaps the given box to the
+   * consumer. Returns the number of reported triangles.
+   */
+  public int queryOverlap(BoundingBox box, IntConsumer consumer) {
+    if (triangleIndices.length == 0) {
+      return 0;
+    }
+    Vector3f center = box.getCenter();
+    float minX = center.x - box.getXExtent();
+    float minY = center.y - box.getYExtent();
+    float minZ = center.z - box.getZExtent();
+    float maxX = center.x + box.getXExtent();
+    float maxY = center.y + box.getYExtent();
+    float maxZ = center.z + box.getZExtent();
+    float[] p = mesh.vertices.positions;
+    int[] indices = mesh.triangles.vertexIndices;
+    float[] triangleBox = new float[6];
+    int[] stack = new int[MAX_DEPTH * 2];
+    int stackSize = 0;
+    stack[stackSize++] = 0;
+    int count = 0;
+    while (stackSize > 0) {
+      int node = stack[--stackSize];
+      if (!overlaps(nodeBounds, 6 * node, minX, minY, minZ, maxX, maxY, maxZ)) {
+        continue;
+      }
+      if (nodeCount[node] == 0) {
+        stack[stackSize++] = nodeChildOrFirst[node];
+        stack[stackSize++] = nodeChildOrFirst[node] + 1;
+        continue;
+      }
+      for (int i = nodeChildOrFirst[node];
+           i < nodeChildOrFirst[node] + nodeCount[node]; i++) {
+        int t = triangleIndices[i];
+        computeTriangleBounds(p, indices, t, triangleBox, 0);
+        if (overlaps(triangleBox, 0, minX, minY, minZ, maxX, maxY, maxZ)) {
+          consumer.accept(t);
+          count++;
+        }
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Recompute all node bounds from the current vertex positions. The tree
+   * structure is kept, so the query performance may degrade for large
+   * non-rigid deformations; it is unchanged for translations.
+   */
+  public void refit() {
+    if (mesh.triangles.modCount != modCount) {
+      throw new IllegalStateException("Mesh topology changed, the BVH must " +
+              "be rebuilt.");
+    }
+    if (triangleIndices.length == 0) {
+      return;
+    }
+    float[] p = mesh.vertices.positions;
+    int[] indices = mesh.triangles.vertexIndices;
+    float[] triangleBox = new float[6];
+    // Children are always allocated after their parent
+    for (int node = numberOfNodes - 1; node >= 0; node--) {
+      int o = 6 * node;
+      if (nodeCount[node] > 0) {
+        setEmpty(nodeBounds, o);
+        for (int i = nodeChildOrFirst[node];
+             i < nodeChildOrFirst[node] + nodeCount[node]; i++) {
+          computeTriangleBounds(p, indices, triangleIndices[i], triangleBox, 0);
+          grow(nodeBounds, o, triangleBox, 0);
+        }
+      } else {
+        int left = nodeChildOrFirst[node];
+        setEmpty(nodeBounds, o);
+        grow(nodeBounds, o, nodeBounds, 6 * left);
+        grow(nodeBounds, o, nodeBounds, 6 * (left + 1));
+      }
+    }
+  }
+
+  /**
+   * Number of nodes in the hierarchy.
+   */
+  public int getNumberOfNodes() {
+    return numberOfNodes;
+  }
+
+  /**
+   * Bounding box of the whole hierarchy.
+   */
+  public BoundingBox getBoundingBox() {
+    Vector3f min = new Vector3f(nodeBounds[0], nodeBounds[1], nodeBounds[2]);
+    Vector3f max = new Vector3f(nodeBounds[3], nodeBounds[4], nodeBounds[5]);
+    if (triangleIndices.length == 0) {
+      return new BoundingBox(new Vector3f(), 0, 0, 0);
+    }
+    return new BoundingBox(min, max);
+  }
+
+  /**
+   * Stack based traversal, visits the nearer child first.
+   */
+  private void traverse(Vector3f origin, Vector3f direction, Hit hit,
+                        boolean anyHit) {
+    if (triangleIndices.length == 0) {
+      return;
+    }
+    float ox = origin.x;
+    float oy = origin.y;
+    float oz = origin.z;
+    float dx = direction.x;
+    float dy = direction.y;
+    float dz = direction.z;
+    float invX = 1.0f / dx;
+    float invY = 1.0f / dy;
+    float invZ = 1.0f / dz;
+    float[] p = mesh.vertices.positions;
+    int[] indices = mesh.triangles.vertexIndices;
+
+    int[] stack = new int[MAX_DEPTH * 2];
+    int stackSize = 0;
+    if (intersectBox(0, ox, oy, oz, invX, invY, invZ, hit.distance) < 0) {
+      return;
+    }
+    stack[stackSize++] = 0;
+    while (stackSize > 0) {
+      int node = stack[--stackSize];
+      if (nodeCount[node] > 0) {
+        for (int i = nodeChildOrFirst[node];
+             i < nodeChildOrFirst[node] + nodeCount[node]; i++) {
+          if (intersectTriangle(p, indices, triangleIndices[i], ox, oy, oz,
+                  dx, dy, dz, hit) && anyHit) {
+            return;
+          }
+        }
+        continue;
+      }
+      int left = nodeChildOrFirst[node];
+      int right = left + 1;
+      float tLeft = intersectBox(left, ox, oy, oz, invX, invY, invZ,
+              hit.distance);
+      float tRight = intersectBox(right, ox, oy, oz, invX, invY, invZ,
+              hit.distance);
+      if (tLeft >= 0 && tRight >= 0) {
+        if (tLeft <= tRight) {
+          stack[stackSize++] = right;
+          stack[stackSize++] = left;
+        } else {
+          stack[stackSize++] = left;
+          stack[stackSize++] = right;
+        }
+      } else if (tLeft >= 0) {
+        stack[stackSize++] = left;
+      } else if (tRight >= 0) {
+        stack[stackSize++] = right;
+      }
+    }
+  }
+
+  /**
+   * Slab test, returns the entry distance or -1 if the box is missed. If the
+   * ray is parallel to a slab and starts on one of its planes, the slab
+   * distances are NaN (0 * infinity): the ray lies in the closed slab, so the
+   * axis does not constrain the interval.
+   */
+  private float intersectBox(int node, float ox, float oy, float oz,
+                             float invX, float invY, float invZ, float tMax) {
+    int o = 6 * node;
+    // Comparisons with NaN are false, so NaN distances are ignored
+    float tNear = Float.NEGATIVE_INFINITY;
+    float tFar = Float.POSITIVE_INFINITY;
+    float t1 = (nodeBounds[o] - ox) * invX;
+    float t2 = (nodeBounds[o + 3] - ox) * invX;
+    if (Math.min(t1, t2) > tNear) {
+      tNear = Math.min(t1, t2);
+    }
+    if (Math.max(t1, t2) < tFar) {
+      tFar = Math.max(t1, t2);
+    }
+    t1 = (nodeBounds[o + 1] - oy) * invY;
+    t2 = (nodeBounds[o + 4] - oy) * invY;
+    if (Math.min(t1, t2) > tNear) {
+      tNear = Math.min(t1, t2);
+    }
+    if (Math.max(t1, t2) < tFar) {
+      tFar = Math.max(t1, t2);
+    }
+    t1 = (nodeBounds[o + 2] - oz) * invZ;
+    t2 = (nodeBounds[o + 5] - oz) * invZ;
+    if (Math.min(t1, t2) > tNear) {
+      tNear = Math.min(t1, t2);
+    }
+    if (Math.max(t1, t2) < tFar) {
+      tFar = Math.max(t1, t2);
+    }
+    if (tFar < tNear || tFar < 0 || tNear > tMax) {
+      return -1;
+    }
+    float t = Math.max(tNear, 0);
+    return Float.isFinite(t) ? t : -1;
+  }
+
+  /**
+   * Möller-Trumbore ray-triangle test, updates the hit if the triangle is
+   * closer.
+   */
+  private static boolean intersectTriangle(float[] p, int[] indices, int t,
+                                           float ox, float oy, float oz,
+                                           float dx, float dy, float dz,
+                                           Hit hit) {
+    int a = 3 * indices[3 * t];
+    int b = 3 * indices[3 * t + 1];
+    int c = 3 * indices[3 * t + 2];
+    float e1x = p[b] - p[a];
+    float e1y = p[b + 1] - p[a + 1];
+    float e1z = p[b + 2] - p[a + 2];
+    float e2x = p[c] - p[a];
+    float e2y = p[c + 1] - p[a + 1];
+    float e2z = p[c + 2] - p[a + 2];
+    float px = dy * e2z - dz * e2y;
+    float py = dz * e2x - dx * e2z;
+    float pz = dx * e2y - dy * e2x;
+    float det = e1x * px + e1y * py + e1z * pz;
+    if (Math.abs(det) < 1e-12f) {
+      return false;
+    }
+    float invDet = 1.0f / det;
+    float sx = ox - p[a];
+    float sy = oy - p[a + 1];
+    float sz = oz - p[a + 2];
+    float u = (sx * px + sy * py + sz * pz) * invDet;
+    if (u < 0 || u > 1) {
+      return false;
+    }
+    float qx = sy * e1z - sz * e1y;
+    float qy = sz * e1x - sx * e1z;
+    float qz = sx * e1y - sy * e1x;
+    float v = (dx * qx + dy * qy + dz * qz) * invDet;
+    if (v < 0 || u + v > 1) {
+      return false;
+    }
+    float distance = (e2x * qx + e2y * qy + e2z * qz) * invDet;
+    if (distance < 0 || distance >= hit.distance) {
+      return false;
+    }
+    hit.triangleIndex = t;
+    hit.distance = distance;
+    hit.u = u;
+    hit.v = v;
+    return true;
+  }
+
+  // +++ BUILD +++++++++++++++++++++++++++++++++
+
+  /**
+   * Builds the subtree for the triangle range [start, end) into the given node.
+   */
+  private class BuildTask extends RecursiveAction {
+    private final int node;
+    private final int start;
+    private final int end;
+    private final int depth;
+    private final float[] triangleBounds;
+    private final float[] centroids;
+    private final AtomicInteger nodeCounter;
+
+    BuildTask(int node, int start, int end, int depth, float[] triangleBounds,
+              float[] centroids, AtomicInteger nodeCounter) {
+      this.node = node;
+      this.start = start;
+      this.end = end;
+      this.depth = depth;
+      this.triangleBounds = triangleBounds;
+      this.centroids = centroids;
+      this.nodeCounter = nodeCounter;
+    }
+
+    @Override
+    protected void compute() {
+      build(node, start, end, depth);
+    }
+
+    private void build(int node, int start, int end, int depth) {
+      int o = 6 * node;
+      setEmpty(nodeBounds, o);
+      float[] centroidBounds = new float[6];
+      setEmpty(centroidBounds, 0);
+      for (int i = start; i < end; i++) {
+        grow(nodeBounds, o, triangleBounds, 6 * i);
+        growPoint(centroidBounds, centroids, 3 * i);
+      }
+      int count = end - start;
+      if (count <= MAX_LEAF_SIZE || depth >= MAX_DEPTH - 1) {
+        makeLeaf(node, start, count);
+        return;
+      }
+
+      // Binned SAH, all three axes are binned in a single pass
+      int bestAxis = -1;
+      int bestBin = -1;
+      float bestCost = Float.POSITIVE_INFINITY;
+      int[] binCounts = new int[3 * NUMBER_OF_BINS];
+      float[] binBounds = new float[3 * 6 * NUMBER_OF_BINS];
+      float[] rightArea = new float[NUMBER_OF_BINS];
+      float[] sweep = new float[6];
+      float[] scale = new float[3];
+      for (int axis = 0; axis < 3; axis++) {
+        float extent = centroidBounds[axis + 3] - centroidBounds[axis];
+        scale[axis] = extent > 1e-12f ? NUMBER_OF_BINS / extent : 0;
+      }
+      for (int b = 0; b < 3 * NUMBER_OF_BINS; b++) {
+        setEmpty(binBounds, 6 * b);
+      }
+      for (int i = start; i < end; i++) {
+        for (int axis = 0; axis < 3; axis++) {
+          int b = axis * NUMBER_OF_BINS + binIndex(centroids[3 * i + axis],
+                  centroidBounds[axis], scale[axis]);
+          binCounts[b]++;
+          grow(binBounds, 6 * b, triangleBounds, 6 * i);
+        }
+      }
+      for (int axis = 0; axis < 3; axis++) {
+        if (scale[axis] == 0) {
+          continue;
+        }
+        int firstBin = axis * NUMBER_OF_BINS;
+        // Sweep from the right: area of bins b..N-1
+        setEmpty(sweep, 0);
+        for (int b = NUMBER_OF_BINS - 1; b > 0; b--) {
+          grow(sweep, 0, binBounds, 6 * (firstBin + b));
+          rightArea[b] = halfArea(sweep, 0);
+        }
+        // Sweep from the left, split between bin b-1 and b
+        setEmpty(sweep, 0);
+        int leftCount = 0;
+        for (int b = 1; b < NUMBER_OF_BINS; b++) {
+          grow(sweep, 0, binBounds, 6 * (firstBin + b - 1));
+          leftCount += binCounts[firstBin + b - 1];
+          int rightCount = count - leftCount;
+          if (leftCount == 0 || rightCount == 0) {
+            continue;
+          }
+          float cost = halfArea(sweep, 0) * leftCount + rightArea[b] * rightCount;
+          if (cost < bestCost) {
+            bestCost = cost;
+            bestAxis = axis;
+            bestBin = b;
+          }
+        }
+      }
+
+      int mid;
+      if (bestAxis < 0) {
+        // All centroids coincide: split in the middle of the range
+        mid = (start + end) >>> 1;
+      } else {
+        float leafCost = count;
+        float splitCost = TRAVERSAL_COST + bestCost / halfArea(nodeBounds, o);
+        if (splitCost >= leafCost && count <= 4 * MAX_LEAF_SIZE) {
+          makeLeaf(node, start, count);
+          return;
+        }
+        float cMin = centroidBounds[bestAxis];
+        float axisScale = scale[bestAxis];
+        int i = start;
+        int j = end - 1;
+        while (i <= j) {
+          if (binIndex(centroids[3 * i + bestAxis], cMin, axisScale) < bestBin) {
+            i++;
+          } else {
+            swap(i, j);
+            j--;
+          }
+        }
+        mid = i;
+      }
+
+      int left = nodeCounter.getAndAdd(2);
+      nodeChildOrFirst[node] = left;
+      nodeCount[node] = 0;
+      if (count > PARALLEL_BUILD_THRESHOLD) {
+        invokeAll(new BuildTask(left, start, mid, depth + 1, triangleBounds,
+                        centroids, nodeCounter),
+                new BuildTask(left + 1, mid, end, depth + 1, triangleBounds,
+                        centroids, nodeCounter));
+      } else {
+        build(left, start, mid, depth + 1);
+        build(left + 1, mid, end, depth + 1);
+      }
+    }
+
+    /**
+     * Swap two entries of the triangle order together with their bounds and
+     * centroids (kept in the same order for sequential access).
+     */
+    private void swap(int i, int j) {
+      int t = triangleIndices[i];
+      triangleIndices[i] = triangleIndices[j];
+      triangleIndices[j] = t;
+      for (int k = 0; k < 6; k++) {
+        float f = triangleBounds[6 * i + k];
+        triangleBounds[6 * i + k] = triangleBounds[6 * j + k];
+        triangleBounds[6 * j + k] = f;
+      }
+      for (int k = 0; k < 3; k++) {
+        float f = centroids[3 * i + k];
+        centroids[3 * i + k] = centroids[3 * j + k];
+        centroids[3 * j + k] = f;
+      }
+    }
+
+    private void makeLeaf(int node, int start, int count) {
+      nodeChildOrFirst[node] = start;
+      nodeCount[node] = count;
+    }
+  }
+
+  private static int binIndex(float centroid, float cMin, float scale) {
+    int b = (int) ((centroid - cMin) * scale);
+    return Math.min(Math.max(b, 0), NUMBER_OF_BINS - 1);
+  }
+
+  // +++ BOX HELPERS +++++++++++++++++++++++++++
+
+  private static void computeTriangleBounds(float[] p, int[] indices, int t,
+                                            float[] store, int o) {
+    setEmpty(store, o);
+    for (int corner = 0; corner < 3; corner++) {
+      growPoint(store, o, p, 3 * indices[3 * t + corner]);
+    }
+  }
+
+  private static void setEmpty(float[] box, int o) {
+    box[o] = box[o + 1] = box[o + 2] = Float.POSITIVE_INFINITY;
+    box[o + 3] = box[o + 4] = box[o + 5] = Float.NEGATIVE_INFINITY;
+  }
+
+  private static void grow(float[] box, int o, float[] other, int oo) {
+    for (int axis = 0; axis < 3; axis++) {
+      float min = other[oo + axis];
+      float max = other[oo + 3 + axis];
+      if (min < box[o + axis]) {
+        box[o + axis] = min;
+      }
+      if (max > box[o + 3 + axis]) {
+        box[o + 3 + axis] = max;
+      }
+    }
+  }
+
+  private static void growPoint(float[] box, float[] points, int po) {
+    growPoint(box, 0, points, po);
+  }
+
+  private static void growPoint(float[] box, int o, float[] points, int po) {
+    for (int axis = 0; axis < 3; axis++) {
+      float value = points[po + axis];
+      if (value < box[o + axis]) {
+        box[o + axis] = value;
+      }
+      if (value > box[o + 3 + axis]) {
+        box[o + 3 + axis] = value;
+      }
+    }
+  }
+
+  /**
+   * Half of the surface area of the box (sufficient for SAH comparisons).
+   */
+  private static float halfArea(float[] box, int o) {
+    float x = box[o + 3] - box[o];
+    float y = box[o + 4] - box[o + 1];
+    float z = box[o + 5] - box[o + 2];
+    if (x < 0 || y < 0 || z < 0) {
+      return 0;
+    }
+    return x * y + y * z + z * x;
+  }
+
+  private static boolean overlaps(float[] box, int o, float minX, float minY,
+                                  float minZ, float maxX, float maxY,
+                                  float maxZ) {
+    return box[o] <= maxX && box[o + 3] >= minX
+            && box[o + 1] <= maxY && box[o + 4] >= minY
+            && box[o + 2] <= maxZ && box[o + 5] >= minZ;
+  }
+}
@@ -20,7 +20,6 @@
  */
 package wpcg.base.mesh;
 
-import com.jme3.math.Vector2f;
 import com.jme3.math.Vector3f;
 import wpcg.base.Logger;
 
@@ -36,24 +35,29 @@ public class TriangleMeshTools {
   public static void unite(TriangleMesh baseMesh, TriangleMesh otherMesh) {
     int vertexOffset = baseMesh.getNumberOfVertices();
     int texCoordOffset = baseMesh.getNumberOfTextureCoordinates();
+    int triangleOffset = baseMesh.getNumberOfTriangles();
 
     // Vertices
-    for (int i = 0; i < otherMesh.getNumberOfVertices(); i++) {
-      baseMesh.addVertex(new Vertex(otherMesh.getVertex(i)));
-    }
+    baseMesh.vertices.addAll(otherMesh.vertices);
     for (int i = 0; i < otherMesh.getNumberOfTextureCoordinates(); i++) {
-      baseMesh.addTextureCoordinate(
-              new Vector2f(otherMesh.getTextureCoordinate(i)));
+      baseMesh.addTextureCoordinate(otherMesh.textureCoordinates[2 * i],
+              otherMesh.textureCoordinates[2 * i + 1]);
     }
-    for (int i = 0; i < otherMesh.getNumberOfTriangles(); i++) {
-      Triangle t = new Triangle(otherMesh.getTriangle(i));
-      t.addVertexIndexOffset(vertexOffset);
-      t.addTexCoordOffset(texCoordOffset);
-      baseMesh.addTriangle(t);
+    // Triangles
+    baseMesh.triangles.addAll(otherMesh.triangles);
+    int[] vertexIndices = baseMesh.triangles.vertexIndices;
+    int[] texCoordIndices = baseMesh.triangles.texCoordIndices;
+    for (int i = 3 * triangleOffset; i < 3 * baseMesh.triangles.size; i++) {
+      vertexIndices[i] += vertexOffset;
+      texCoordIndices[i] += texCoordOffset;
+    }
+    // Groups
+    for (int i = 0; i < otherMesh.getNumberOfGroups(); i++) {
+      MeshGroup group = otherMesh.getGroup(i);
+      baseMesh.addGroup(new MeshGroup(group.getName(), group.getMaterial(),
+              group.getFirstTriangle() + triangleOffset,
+              group.getNumberOfTriangles()));
     }
-
-    vertexOffset += otherMesh.getNumberOfVertices();
-    texCoordOffset += otherMesh.getNumberOfTextureCoordinates();
   }
 
   /**
@@ -67,27 +71,15 @@ public class TriangleMeshTools {
     }
 
     TriangleMesh mesh = meshes.get(0);
-
-    int vertexOffset = mesh.getNumberOfVertices();
-    int texCoordOffset = mesh.getNumberOfTextureCoordinates();
+    int numberOfVertices = 0;
+    int numberOfTriangles = 0;
+    for (TriangleMesh m : meshes) {
+      numberOfVertices += m.getNumberOfVertices();
+      numberOfTriangles += m.getNumberOfTriangles();
+    }
+    mesh.ensureCapacity(numberOfVertices, numberOfTriangles);
     for (int meshIndex = 1; meshIndex < meshes.size(); meshIndex++) {
-      TriangleMesh m = meshes.get(meshIndex);
-      // Vertices
-      for (int i = 0; i < m.getNumberOfVertices(); i++) {
-        mesh.addVertex(new Vertex(m.getVertex(i)));
-      }
-      for (int i = 0; i < m.getNumberOfTextureCoordinates(); i++) {
-        mesh.addTextureCoordinate(new Vector2f(m.getTextureCoordinate(i)));
-      }
-      for (int i = 0; i < m.getNumberOfTriangles(); i++) {
-        Triangle t = new Triangle(m.getTriangle(i));
-        t.addVertexIndexOffset(vertexOffset);
-        t.addTexCoordOffset(texCoordOffset);
-        mesh.addTriangle(t);
-      }
-
-      vertexOffset += m.getNumberOfVertices();
-      texCoordOffset += m.getNumberOfTextureCoordinates();
+      unite(mesh, meshes.get(meshIndex));
     }
 
     return mesh;
@@ -98,11 +90,13 @@ public class TriangleMeshTools {
    * Move all vertices with the offset vector (x, y, z)
    */
   public static void translate(TriangleMesh mesh, float x, float y, float z) {
+    float[] p = mesh.vertices.positions;
     for (int i = 0; i < mesh.getNumberOfVertices(); i++) {
-      Vertex v = mesh.getVertex(i);
-      v.getPosition().set(v.getPosition().x + x, v.getPosition().y + y,
-              v.getPosition().z + z);
+      p[3 * i] += x;
+      p[3 * i + 1] += y;
+      p[3 * i + 2] += z;
     }
+    mesh.vertices.translateBounds(x, y, z);
   }
 
   /**
@@ -116,39 +110,140 @@ public class TriangleMeshTools {
    * Merge all vertices which are closer to one another than numerical accuracy.
    */
   public static void mergeVertices(TriangleMesh mesh) {
-    int numRemoved = 0;
-    for (int i = 0; i < mesh.getNumberOfVertices(); i++) {
-      for (int j = i + 1; j < mesh.getNumberOfVertices(); j++) {
-        if (mesh.getVertex(i).getPosition().subtract(
-                mesh.getVertex(j).getPosition()).length() < 1e-5) {
-          for (int t = 0; t < mesh.getNumberOfTriangles(); t++) {
-            Triangle triangle = mesh.getTriangle(t);
-            triangle.replaceVertexIndex(i, j);
+    int numRemoved = weldVertices(mesh, 1e-5f);
+    // Remove all degenerated triangles.
+    mesh.removeTrianglesIf(t -> isDegenerated(mesh, t, 1e-5));
+    Logger.getInstance().debug("Removed " + numRemoved
+            + " vertices with same position.");
+  }
+
+  /**
+   * Merge all vertices which are closer to one another than epsilon. The
+   * vertices are sorted into a uniform grid with cell size epsilon, so only
+   * the neighboring cells need to be searched. Merged vertices are removed
+   * from the vertex list (the remaining vertices keep their order) and the
+   * triangles are updated accordingly. Triangles may become degenerated.
+   * <p>
+   * Returns the number of merged (removed) vertices. Throws an
+   * IllegalArgumentException if epsilon is not a finite value greater than
+   * 0 (the grid needs a cell size).
+   */
+  public static int weldVertices(TriangleMesh mesh, float epsilon) {
+    if (!(epsilon > 0) || Float.isInfinite(epsilon)) {
+      throw new IllegalArgumentException("Invalid weld distance " + epsilon
+              + ", expected a finite value > 0.");
+    }
+    VertexArrays vertices = mesh.vertices;
+    int numberOfVertices = vertices.size;
+    float[] p = vertices.positions;
+    float epsilonSquared = epsilon * epsilon;
+    float cellScale = 1.0f / epsilon;
+
+    // Grid cell -> first representative vertex, next[] chains the
+    // representatives in the same cell.
+    LongIntHashMap cells = new LongIntHashMap(numberOfVertices);
+    int[] next = new int[numberOfVertices];
+    int[] remap = new int[numberOfVertices];
+    int numberOfRepresentatives = 0;
+    for (int v = 0; v < numberOfVertices; v++) {
+      float x = p[3 * v];
+      float y = p[3 * v + 1];
+      float z = p[3 * v + 2];
+      long cx = (long) Math.floor(x * cellScale);
+      long cy = (long) Math.floor(y * cellScale);
+      long cz = (long) Math.floor(z * cellScale);
+
+      int match = -1;
+      for (int dx = -1; dx <= 1 && match < 0; dx++) {
+        for (int dy = -1; dy <= 1 && match < 0; dy++) {
+          for (int dz = -1; dz <= 1 && match < 0; dz++) {
+            int r = cells.get(cellKey(cx + dx, cy + dy, cz + dz));
+            while (r >= 0) {
+              float ex = p[3 * r] - x;
+              float ey = p[3 * r + 1] - y;
+              float ez = p[3 * r + 2] - z;
+              if (ex * ex + ey * ey + ez * ez < epsilonSquared) {
+                match = r;
+                break;
+              }
+              r = next[r];
+            }
           }
-          // Deprecate vertex j
-          mesh.getVertex(j).getPosition().set(new Vector3f(Float.NaN, Float.NaN,
-                  Float.NaN));
-          numRemoved++;
         }
       }
-    }
-    // Remove all degenerated triangles.
-    for (int i = 0; i < mesh.getNumberOfTriangles(); i++) {
-      if (mesh.getTriangle(i).isDegenerated()) {
-        mesh.removeTriangle(i);
-        i--;
+
+      if (match >= 0) {
+        remap[v] = remap[match];
       } else {
-        Triangle t = mesh.getTriangle(i);
-        Vector3f a = mesh.getVertex(t.getVertexIndex(0)).position;
-        Vector3f b = mesh.getVertex(t.getVertexIndex(1)).position;
-        Vector3f c = mesh.getVertex(t.getVertexIndex(2)).position;
-        if (Triangle.getArea(a, b, c) < 1e-5) {
-          mesh.removeTriangle(i);
-          i--;
-        }
+        long key = cellKey(cx, cy, cz);
+        next[v] = cells.put(key, v);
+        remap[v] = numberOfRepresentatives++;
       }
     }
-    Logger.getInstance().debug("Removed " + numRemoved
-            + " vertices with same position.");
+
+    int numMerged = numberOfVertices - numberOfRepresentatives;
+    if (numMerged == 0) {
+      return 0;
+    }
+
+    // Compact the vertex storage: representatives got increasing new
+    // indices, merged vertices point to an earlier representative.
+    int target = 0;
+    for (int v = 0; v < numberOfVertices; v++) {
+      if (remap[v] != target) {
+        continue;
+      }
+      if (target != v) {
+        System.arraycopy(vertices.positions, 3 * v, vertices.positions,
+                3 * target, 3);
+        System.arraycopy(vertices.normals, 3 * v, vertices.normals,
+                3 * target, 3);
+        System.arraycopy(vertices.colors, 4 * v, vertices.colors,
+                4 * target, 4);
+      }
+      target++;
+    }
+    vertices.size = numberOfRepresentatives;
+    vertices.invalidateBounds();
+
+    // Remap triangles in one pass
+    int[] indices = mesh.triangles.vertexIndices;
+    for (int i = 0; i < 3 * mesh.triangles.size; i++) {
+      indices[i] = remap[indices[i]];
+    }
+    mesh.triangles.modCount++;
+    return numMerged;
+  }
+
+  /**
+   * Pack the grid cell coordinates into a single hash key.
+   */
+  private static long cellKey(long cx, long cy, long cz) {
+    return (cx & 0x1FFFFF) | ((cy & 0x1FFFFF) << 21) | ((cz & 0x1FFFFF) << 42);
+  }
+
+  /**
+   * Checks if the triangle has a duplicated vertex index or an area below
+   * minArea.
+   */
+  public static boolean isDegenerated(TriangleMesh mesh, Triangle triangle,
+                                      double minArea) {
+    if (triangle.isDegenerated()) {
+      return true;
+    }
+    float[] p = mesh.vertices.positions;
+    int a = 3 * triangle.getVertexIndex(0);
+    int b = 3 * triangle.getVertexIndex(1);
+    int c = 3 * triangle.getVertexIndex(2);
+    float ux = p[b] - p[a];
+    float uy = p[b + 1] - p[a + 1];
+    float uz = p[b + 2] - p[a + 2];
+    float vx = p[c] - p[a];
+    float vy = p[c + 1] - p[a + 1];
+    float vz = p[c + 2] - p[a + 2];
+    float nx = uy * vz - uz * vy;
+    float ny = uz * vx - ux * vz;
+    float nz = ux * vy - uy * vx;
+    return Math.sqrt(nx * nx + ny * ny + nz * nz) < minArea;
   }
 }
@@ -9,29 +9,27 @@ import com.jme3.math.ColorRGBA;
 import com.jme3.math.Vector3f;
 
 /**
- * Represents a vertex in 3-space with position and normal.
+ * Represents a vertex in 3-space with position and normal. The attributes are
+ * stored in packed arrays: a vertex obtained from a triangle mesh is a
+ * lightweight view on the mesh storage, all setters write through to the mesh.
+ * The getters return copies, use the setters to change a vertex.
  */
 public class Vertex {
 
   /**
-   * Vertex position in 3-space.
+   * Backing storage, either owned by this vertex or by a triangle mesh.
    */
-  protected Vector3f position;
+  VertexArrays data;
 
   /**
-   * Vertex normal in 3-space.
+   * Index of the vertex in the backing storage.
    */
-  protected Vector3f normal;
-
-  /**
-   * Color in RBGA format.
-   */
-  protected ColorRGBA color;
+  int index;
 
   public Vertex(Vector3f position, Vector3f normal, ColorRGBA color) {
-    this.position = new Vector3f(position);
-    this.normal = new Vector3f(normal);
-    this.color = new ColorRGBA(color);
+    data = new VertexArrays(1);
+    index = data.add(position.x, position.y, position.z,
+            normal.x, normal.y, normal.z, color.r, color.g, color.b, color.a);
   }
 
   public Vertex(Vector3f position, Vector3f normal) {
@@ -44,33 +42,72 @@ public class Vertex {
   }
 
   public Vertex(Vertex vertex) {
-    this(vertex.position, vertex.normal, new ColorRGBA(vertex.color));
+    data = new VertexArrays(1);
+    index = data.add(vertex.data, vertex.index);
+  }
+
+  /**
+   * View on the vertex with the given index in the storage.
+   */
+  Vertex(VertexArrays data, int index) {
+    this.data = data;
+    this.index = index;
+  }
+
+  /**
+   * Redirect the view to another storage (used when the vertex is added to a
+   * mesh).
+   */
+  void bind(VertexArrays data, int index) {
+    this.data = data;
+    this.index = index;
   }
 
   @Override
   public String toString() {
-    return position.toString();
+    return getPosition().toString();
   }
 
   // +++ GETTER/SETTER ++++++++++++++++++++++++++
 
   public Vector3f getPosition() {
-    return position;
+    return getPosition(new Vector3f());
+  }
+
+  /**
+   * Write the position into store and return it.
+   */
+  public Vector3f getPosition(Vector3f store) {
+    int o = index * VertexArrays.POSITION_STRIDE;
+    return store.set(data.positions[o], data.positions[o + 1],
+            data.positions[o + 2]);
+  }
+
+  public void setPosition(Vector3f position) {
+    data.setPosition(index, position.x, position.y, position.z);
+  }
+
+  public void setPosition(float x, float y, float z) {
+    data.setPosition(index, x, y, z);
   }
 
   public Vector3f getNormal() {
-    return normal;
+    int o = index * VertexArrays.NORMAL_STRIDE;
+    return new Vector3f(data.normals[o], data.normals[o + 1],
+            data.normals[o + 2]);
   }
 
   public void setNormal(Vector3f normal) {
-    this.normal = normal;
+    data.setNormal(index, normal.x, normal.y, normal.z);
   }
 
   public ColorRGBA getColor() {
-    return color;
+    int o = index * VertexArrays.COLOR_STRIDE;
+    return new ColorRGBA(data.colors[o], data.colors[o + 1],
+            data.colors[o + 2], data.colors[o + 3]);
   }
 
   public void setColor(ColorRGBA color) {
-    this.color = color;
+    data.setColor(index, color.r, color.g, color.b, color.a);
   }
 }
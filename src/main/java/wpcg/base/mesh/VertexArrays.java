@@ -0,0 +1,262 @@
+/**
+ * Diese Datei ist Teil der Vorgabe zur Lehrveranstaltung Einführung in die Computergrafik der Hochschule
+ * für Angewandte Wissenschaften Hamburg von Prof. Philipp Jenke (Informatik)
+ */
+
+package wpcg.base.mesh;
+
+import java.util.Arrays;
+
+/**
+ * Packed structure-of-arrays storage for vertex attributes. Vertex i occupies
+ * positions[3i..3i+2], normals[3i..3i+2] and colors[4i..4i+3]. The arrays grow
+ * automatically, so their length may exceed the number of used entries.
+ */
+final class VertexArrays {
+
+  static final int POSITION_STRIDE = 3;
+  static final int NORMAL_STRIDE = 3;
+  static final int COLOR_STRIDE = 4;
+
+  /**
+   * Vertex positions (x, y, z).
+   */
+  float[] positions;
+
+  /**
+   * Vertex normals (x, y, z).
+   */
+  float[] normals;
+
+  /**
+   * Vertex colors (r, g, b, a).
+   */
+  float[] colors;
+
+  /**
+   * Number of used vertices.
+   */
+  int size;
+
+  /**
+   * Cached axis-aligned bounds of the used positions (minX, minY, minZ, maxX,
+   * maxY, maxZ), only valid if boundsValid is set. NaN positions are ignored.
+   */
+  final float[] bounds = new float[6];
+  boolean boundsValid;
+
+  /**
+   * Cached bounding sphere radius around the center of the bounds, negative
+   * if unknown.
+   */
+  float sphereRadius;
+
+  VertexArrays(int capacity) {
+    capacity = Math.max(capacity, 1);
+    positions = new float[capacity * POSITION_STRIDE];
+    normals = new float[capacity * NORMAL_STRIDE];
+    colors = new float[capacity * COLOR_STRIDE];
+    size = 0;
+    resetBounds();
+  }
+
+  /**
+   * Copy constructor, only the used entries are copied.
+   */
+  VertexArrays(VertexArrays other) {
+    int capacity = Math.max(other.size, 1);
+    positions = Arrays.copyOf(other.positions, capacity * POSITION_STRIDE);
+    normals = Arrays.copyOf(other.normals, capacity * NORMAL_STRIDE);
+    colors = Arrays.copyOf(other.colors, capacity * COLOR_STRIDE);
+    size = other.size;
+    System.arraycopy(other.bounds, 0, bounds, 0, 6);
+    boundsValid = other.boundsValid;
+    sphereRadius = other.sphereRadius;
+  }
+
+  /**
+   * Make sure that the arrays can hold at least the given number of vertices.
+   */
+  void ensureCapacity(int capacity) {
+    int current = positions.length / POSITION_STRIDE;
+    if (capacity <= current) {
+      return;
+    }
+    int newCapacity = Math.max(capacity, current + (current >> 1) + 1);
+    positions = Arrays.copyOf(positions, newCapacity * POSITION_STRIDE);
+    normals = Arrays.copyOf(normals, newCapacity * NORMAL_STRIDE);
+    colors = Arrays.copyOf(colors, newCapacity * COLOR_STRIDE);
+  }
+
+  /**
+   * Shrink the arrays to the number of used vertices.
+   */
+  void trimToSize() {
+    int capacity = Math.max(size, 1);
+    if (positions.length == capacity * POSITION_STRIDE) {
+      return;
+    }
+    positions = Arrays.copyOf(positions, capacity * POSITION_STRIDE);
+    normals = Arrays.copyOf(normals, capacity * NORMAL_STRIDE);
+    colors = Arrays.copyOf(colors, capacity * COLOR_STRIDE);
+  }
+
+  /**
+   * Append a vertex, returns its index.
+   */
+  int add(float x, float y, float z, float nx, float ny, float nz,
+          float r, float g, float b, float a) {
+    ensureCapacity(size + 1);
+    int index = size++;
+    positions[3 * index] = x;
+    positions[3 * index + 1] = y;
+    positions[3 * index + 2] = z;
+    extendBounds(x, y, z);
+    setNormal(index, nx, ny, nz);
+    setColor(index, r, g, b, a);
+    return index;
+  }
+
+  /**
+   * Append a copy of vertex 'index' in 'other', returns the new index.
+   */
+  int add(VertexArrays other, int index) {
+    ensureCapacity(size + 1);
+    int newIndex = size++;
+    System.arraycopy(other.positions, index * POSITION_STRIDE, positions,
+            newIndex * POSITION_STRIDE, POSITION_STRIDE);
+    System.arraycopy(other.normals, index * NORMAL_STRIDE, normals,
+            newIndex * NORMAL_STRIDE, NORMAL_STRIDE);
+    System.arraycopy(other.colors, index * COLOR_STRIDE, colors,
+            newIndex * COLOR_STRIDE, COLOR_STRIDE);
+    int o = newIndex * POSITION_STRIDE;
+    extendBounds(positions[o], positions[o + 1], positions[o + 2]);
+    return newIndex;
+  }
+
+  /**
+   * Append all vertices of 'other'.
+   */
+  void addAll(VertexArrays other) {
+    ensureCapacity(size + other.size);
+    System.arraycopy(other.positions, 0, positions, size * POSITION_STRIDE,
+            other.size * POSITION_STRIDE);
+    System.arraycopy(other.normals, 0, normals, size * NORMAL_STRIDE,
+            other.size * NORMAL_STRIDE);
+    System.arraycopy(other.colors, 0, colors, size * COLOR_STRIDE,
+            other.size * COLOR_STRIDE);
+    size += other.size;
+    if (boundsValid && other.boundsValid) {
+      if (other.size > 0) {
+        extendBounds(other.bounds[0], other.bounds[1], other.bounds[2]);
+        extendBounds(other.bounds[3], other.bounds[4], other.bounds[5]);
+      }
+    } else {
+      invalidateBounds();
+    }
+  }
+
+  /**
+   * Reorder the vertices: new vertex i is the old vertex order[i] (order is a
+   * permutation of 0..size-1). The bounds do not change.
+   */
+  void reorder(int[] order) {
+    float[] oldPositions = Arrays.copyOf(positions, size * POSITION_STRIDE);
+    float[] oldNormals = Arrays.copyOf(normals, size * NORMAL_STRIDE);
+    float[] oldColors = Arrays.copyOf(colors, size * COLOR_STRIDE);
+    for (int i = 0; i < size; i++) {
+      System.arraycopy(oldPositions, order[i] * POSITION_STRIDE, positions,
+              i * POSITION_STRIDE, POSITION_STRIDE);
+      System.arraycopy(oldNormals, order[i] * NORMAL_STRIDE, normals,
+              i * NORMAL_STRIDE, NORMAL_STRIDE);
+      System.arraycopy(oldColors, order[i] * COLOR_STRIDE, colors,
+              i * COLOR_STRIDE, COLOR_STRIDE);
+    }
+  }
+
+  void setPosition(int index, float x, float y, float z) {
+    int o = index * POSITION_STRIDE;
+    positions[o] = x;
+    positions[o + 1] = y;
+    positions[o + 2] = z;
+    // The old position might have defined the bounds
+    invalidateBounds();
+  }
+
+  /**
+   * Mark the cached bounds as invalid (required after positions were changed
+   * or vertices were removed).
+   */
+  void invalidateBounds() {
+    boundsValid = false;
+    sphereRadius = -1;
+  }
+
+  /**
+   * Set the cached bounds to an empty box.
+   */
+  void resetBounds() {
+    bounds[0] = bounds[1] = bounds[2] = Float.POSITIVE_INFINITY;
+    bounds[3] = bounds[4] = bounds[5] = Float.NEGATIVE_INFINITY;
+    boundsValid = true;
+    sphereRadius = -1;
+  }
+
+  /**
+   * Grow the cached bounds (if valid) to contain the given point.
+   */
+  void extendBounds(float x, float y, float z) {
+    if (!boundsValid) {
+      return;
+    }
+    if (x < bounds[0]) {
+      bounds[0] = x;
+    }
+    if (y < bounds[1]) {
+      bounds[1] = y;
+    }
+    if (z < bounds[2]) {
+      bounds[2] = z;
+    }
+    if (x > bounds[3]) {
+      bounds[3] = x;
+    }
+    if (y > bounds[4]) {
+      bounds[4] = y;
+    }
+    if (z > bounds[5]) {
+      bounds[5] = z;
+    }
+    sphereRadius = -1;
+  }
+
+  /**
+   * Move the cached bounds (all positions were translated).
+   */
+  void translateBounds(float x, float y, float z) {
+    if (!boundsValid || size == 0) {
+      return;
+    }
+    bounds[0] += x;
+    bounds[1] += y;
+    bounds[2] += z;
+    bounds[3] += x;
+    bounds[4] += y;
+    bounds[5] += z;
+  }
+
+  void setNormal(int index, float x, float y, float z) {
+    int o = index * NORMAL_STRIDE;
+    normals[o] = x;
+    normals[o + 1] = y;
+    normals[o + 2] = z;
+  }
+
+  void setColor(int index, float r, float g, float b, float a) {
+    int o = index * COLOR_STRIDE;
+    colors[o] = r;
+    colors[o + 1] = g;
+    colors[o + 2] = b;
+    colors[o + 3] = a;
+  }
+}
@@ -63,6 +63,7 @@ public class ComputergraphicsJMEApp extends SimpleApplication implements CameraC
   public void simpleUpdate(float tpf) {
     scene.invokeRunlaterTasks();
     scene.update(tpf);
+    scene.updateLevelsOfDetail(cameraController);
   }
 
   @Override